@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atter.jedis;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONException;
+import com.alibaba.fastjson.JSONObject;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+/**
+ * Description:  CacheEnvelope
+ * 与数据一起保存的逻辑过期时间及上次查询数据源的耗时，存储为{"v":数据,"e":过期时间,"d":耗时}
+ * Copyright:  2018 CSNT. All rights reserved.
+ * Company:CSNT
+ *
+ * @author wangling
+ * @version 1.0
+ */
+class CacheEnvelope<T> {
+
+    private final T value;
+
+    private final long expireAtMillis;
+
+    private final long deltaMillis;
+
+    CacheEnvelope(T value, long expireAtMillis, long deltaMillis) {
+        this.value = value;
+        this.expireAtMillis = expireAtMillis;
+        this.deltaMillis = deltaMillis;
+    }
+
+    /**
+     * 开启前写入的普通JSON、数组或字符串都不是封装格式，视为未命中，重新加载后覆盖
+     *
+     * @return 封装的数据，不存在或不是封装格式时返回null
+     */
+    static <T> CacheEnvelope<T> parse(String json, Function<JSONObject, T> parser) {
+        if (json == null) {
+            return null;
+        }
+        Object parsed;
+        try {
+            parsed = JSON.parse(json);
+        } catch (JSONException e) {
+            return null;
+        }
+        if (!(parsed instanceof JSONObject)) {
+            return null;
+        }
+        JSONObject object = (JSONObject) parsed;
+        if (!object.containsKey("e") || !object.containsKey("d")) {
+            return null;
+        }
+        T value;
+        try {
+            value = parser.apply(object);
+        } catch (JSONException e) {
+            return null;
+        }
+        return value == null ? null : new CacheEnvelope<>(value, object.getLongValue("e"), object.getLongValue("d"));
+    }
+
+    static String toJson(Object value, long expireAtMillis, long deltaMillis) {
+        JSONObject object = new JSONObject();
+        object.put("v", value);
+        object.put("e", expireAtMillis);
+        object.put("d", deltaMillis);
+        return object.toJSONString();
+    }
+
+    T getValue() {
+        return value;
+    }
+
+    /**
+     * XFetch：剩余时间越短、查询数据源越慢，提前刷新的概率越大，逻辑过期后总是刷新
+     *
+     * @param nowMillis 当前时间
+     * @param beta      大于1时更早刷新
+     * @return 是否刷新
+     */
+    boolean shouldRefresh(long nowMillis, double beta) {
+        double random = 1 - ThreadLocalRandom.current().nextDouble();
+        return nowMillis - deltaMillis * beta * Math.log(random) >= expireAtMillis;
+    }
+}
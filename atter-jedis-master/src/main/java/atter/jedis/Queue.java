@@ -16,6 +16,9 @@
  */
 package atter.jedis;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Description:  Queue define
  * Copyright:  2018 CSNT. All rights reserved.
@@ -29,4 +32,19 @@ public interface Queue<E> {
     boolean push(E object);
 
     E lpop();
+
+    /**
+     * 一次取出最多count个元素，默认逐个调用{@link #lpop()}，实现类可以批量取出
+     */
+    default List<E> lpop(int count) {
+        List<E> list = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            E object = lpop();
+            if (object == null) {
+                break;
+            }
+            list.add(object);
+        }
+        return list;
+    }
 }
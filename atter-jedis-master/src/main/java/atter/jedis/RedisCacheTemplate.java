@@ -16,11 +16,34 @@
  */
 package atter.jedis;
 
+import atter.jedis.adapter.BinaryJedisAdapter;
 import atter.jedis.adapter.JedisAdapter;
+import atter.jedis.breaker.CircuitBreakerOpenException;
 import atter.jedis.cache.CacheTemplate;
+import atter.jedis.cache.InvalidationBus;
+import atter.jedis.cache.NearCache;
+import atter.jedis.cache.SingleFlight;
 import com.alibaba.fastjson.JSON;
-
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.RedisPipeline;
+import redis.clients.util.SafeEncoder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 /**
@@ -33,16 +56,366 @@ import java.util.function.Supplier;
  */
 public class RedisCacheTemplate implements CacheTemplate {
 
+    private static final Logger logger = LoggerFactory.getLogger(RedisCacheTemplate.class);
+
     private JedisAdapter jedisAdapter;
 
+    /**
+     * 对象直接序列化为byte[]读写，与字符串方式存储的UTF-8内容一致
+     */
+    private BinaryJedisAdapter binaryJedisAdapter;
+
+    private static final String LEASE_SUFFIX = ":lease";
+
+    private static final String STALE_SUFFIX = ":stale";
+
     private int lockTimeout;  //ip锁，默认超时10秒
 
+    /**
+     * begin与commit之间本线程缓冲的写操作
+     */
+    private final ThreadLocal<UnitOfWork> unitOfWork = new ThreadLocal<>();
+
+    /**
+     * 进程内一级缓存，为null时每次读取Redis
+     */
+    private NearCache nearCache;
+
+    /**
+     * 写操作通知其他进程删除一级缓存条目，为null时只删除本地条目
+     */
+    private InvalidationBus invalidationBus;
+
+    /**
+     * cacheQuery未命中时同一key的数据源查询在进程内合并，为null时不合并
+     */
+    private SingleFlight singleFlight = new SingleFlight();
+
+    /**
+     * 多进程共享的加载租约时长，0表示不启用
+     */
+    private long leaseMillis;
+
+    private long leaseWaitMillis = 1000;
+
+    private long leasePollMillis = 20;
+
+    /**
+     * 旧值副本在数据过期后保留的秒数，0表示不保留
+     */
+    private int staleSeconds;
+
+    /**
+     * 逻辑过期后数据继续可用的秒数，0表示不启用
+     */
+    private int revalidateSeconds;
+
+    private double earlyRefreshBeta = 1.0;
+
+    private ExecutorService refreshExecutor;
+
+    /**
+     * 正在后台刷新的key
+     */
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
     /**
      * @param jedisAdapter the jedisAdapter to set
      */
     public void setJedisAdapter(JedisAdapter jedisAdapter) {
         this.jedisAdapter = jedisAdapter;
+    }
+
+    /**
+     * 开启进程内一级缓存，get、cacheQuery缓存反序列化后的对象，经模板的写操作删除本地条目
+     *
+     * @param nearCache 一级缓存
+     */
+    public void setNearCache(NearCache nearCache) {
+        this.nearCache = nearCache;
+    }
+
+    public NearCache getNearCache() {
+        return nearCache;
+    }
+
+    /**
+     * 多进程各自使用一级缓存时，写操作经失效通知同步，一级缓存使用通知所在的缓存
+     *
+     * @param invalidationBus 失效通知，须已start
+     */
+    public void setInvalidationBus(InvalidationBus invalidationBus) {
+        this.invalidationBus = invalidationBus;
+        this.nearCache = invalidationBus.getNearCache();
+    }
+
+    /**
+     * @param singleFlight 合并同一key的数据源查询，为null时每个调用方各自查询
+     */
+    public void setSingleFlight(SingleFlight singleFlight) {
+        this.singleFlight = singleFlight;
+    }
+
+    public SingleFlight getSingleFlight() {
+        return singleFlight;
+    }
+
+    /**
+     * cacheQuery未命中时先以SET NX PX取得key的加载租约，只有持有租约的进程查询数据源；
+     * 其他进程返回旧值副本，没有副本时轮询等待新值，等待超时后自行查询
+     *
+     * @param leaseMillis 租约时长，应大于数据源查询耗时，0表示不启用
+     */
+    public void setLeaseMillis(long leaseMillis) {
+        this.leaseMillis = leaseMillis;
+    }
+
+    /**
+     * @param leaseWaitMillis 未取得租约时等待新值的最长时间
+     */
+    public void setLeaseWaitMillis(long leaseWaitMillis) {
+        this.leaseWaitMillis = leaseWaitMillis;
+    }
 
+    /**
+     * @param leasePollMillis 等待新值时的轮询间隔
+     */
+    public void setLeasePollMillis(long leasePollMillis) {
+        this.leasePollMillis = leasePollMillis;
+    }
+
+    /**
+     * 带超时写入cacheQuery结果时另存一份旧值副本，超时比数据多staleSeconds，
+     * 未取得租约的进程在重建期间返回该副本；del删除key时一并删除副本
+     *
+     * @param staleSeconds 副本多保留的秒数，0表示不保存副本
+     */
+    public void setStaleSeconds(int staleSeconds) {
+        this.staleSeconds = staleSeconds;
+    }
+
+    /**
+     * 带超时的cacheQuery与数据一起保存逻辑过期时间与查询耗时，Redis中的超时多出revalidateSeconds；
+     * 逻辑过期后仍返回旧值，同时在后台刷新；临近过期时按XFetch以一定概率提前刷新。
+     * 启用后这些key的内容为{"v":数据,"e":过期时间,"d":耗时}，只能经cacheQuery读取
+     *
+     * @param revalidateSeconds 逻辑过期后继续返回旧值的秒数，0表示不启用
+     */
+    public void setRevalidateSeconds(int revalidateSeconds) {
+        this.revalidateSeconds = revalidateSeconds;
+    }
+
+    /**
+     * @param earlyRefreshBeta 提前刷新的倾向，默认1，越大越早刷新
+     */
+    public void setEarlyRefreshBeta(double earlyRefreshBeta) {
+        this.earlyRefreshBeta = earlyRefreshBeta;
+    }
+
+    /**
+     * @param refreshExecutor 后台刷新使用的有界线程池，队列满时放弃本次刷新
+     */
+    public void setRefreshExecutor(ExecutorService refreshExecutor) {
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    private ExecutorService getRefreshExecutor() {
+        if (refreshExecutor == null) {
+            synchronized (this) {
+                if (refreshExecutor == null) {
+                    ThreadPoolExecutor executor = new ThreadPoolExecutor(2, 2, 60, TimeUnit.SECONDS,
+                            new ArrayBlockingQueue<>(1024), r -> {
+                        Thread thread = new Thread(r, "cache-refresh");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    executor.allowCoreThreadTimeOut(true);
+                    refreshExecutor = executor;
+                }
+            }
+        }
+        return refreshExecutor;
+    }
+
+    /**
+     * 读取数据及逻辑过期时间，未命中时同步查询；已过期或按XFetch需要提前刷新时后台刷新并返回当前值
+     *
+     * @param key           缓存key
+     * @param type          一级缓存中的类型标记
+     * @param parser        从存储内容中取出数据
+     * @param supplier      数据源查询
+     * @param expireSeconds 逻辑过期秒数
+     */
+    private <T> T revalidating(String key, Object type, Function<JSONObject, T> parser,
+                               Supplier<T> supplier, int expireSeconds) {
+        CacheEnvelope<T> envelope;
+        try {
+            envelope = getEnvelope(key, type, parser, expireSeconds);
+        } catch (CircuitBreakerOpenException e) {
+            // 缓存已熔断，直接查询数据源，不回写缓存
+            return load(key, type, supplier);
+        }
+        if (envelope != null) {
+            if (envelope.shouldRefresh(System.currentTimeMillis(), earlyRefreshBeta)) {
+                refreshAsync(key, supplier, expireSeconds);
+            }
+            return envelope.getValue();
+        }
+        long[] deltaMillis = new long[1];
+        Supplier<T> timed = () -> {
+            long start = System.nanoTime();
+            T value = supplier.get();
+            deltaMillis[0] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            return value;
+        };
+        Consumer<T> writer = value -> setEnvelope(key, value, deltaMillis[0], expireSeconds);
+        Supplier<T> loader = () -> {
+            T value = timed.get();
+            writer.accept(value);
+            return value;
+        };
+        if (leaseMillis > 0) {
+            // 数据本身在逻辑过期后仍保留revalidateSeconds，不另写旧值副本
+            loader = () -> loadLeased(key, () -> {
+                CacheEnvelope<T> current = getEnvelope(key, type, parser, expireSeconds);
+                return current == null ? null : current.getValue();
+            }, str -> null, timed, writer);
+        }
+        return load(key, type, loader);
+    }
+
+    private <T> CacheEnvelope<T> getEnvelope(String key, Object type, Function<JSONObject, T> parser,
+                                             int expireSeconds) {
+        if (nearCache == null) {
+            return CacheEnvelope.parse(jedisAdapter.get(key), parser);
+        }
+        List<Object> envelopeType = Arrays.asList(CacheEnvelope.class, type);
+        CacheEnvelope<T> envelope = nearCache.get(key, envelopeType);
+        if (envelope == null) {
+            long stamp = nearCache.stamp(key);
+            envelope = CacheEnvelope.parse(jedisAdapter.get(key), parser);
+            fill(key, envelopeType, envelope, stamp, expireSeconds + revalidateSeconds);
+        }
+        return envelope;
+    }
+
+    private void setEnvelope(String key, Object value, long deltaMillis, int expireSeconds) {
+        long expireAt = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(expireSeconds);
+        setex(key, CacheEnvelope.toJson(value, expireAt, deltaMillis), expireSeconds + revalidateSeconds);
+    }
+
+    /**
+     * 同一key同时只有一个后台刷新，启用租约时多个进程间也只有一个
+     */
+    private <T> void refreshAsync(String key, Supplier<T> supplier, int expireSeconds) {
+        if (!refreshing.add(key)) {
+            return;
+        }
+        try {
+            getRefreshExecutor().execute(() -> {
+                try {
+                    String leaseKey = key + LEASE_SUFFIX;
+                    String token = UUID.randomUUID().toString();
+                    if (leaseMillis > 0 && !"OK".equals(jedisAdapter.set(leaseKey, token, "NX", "PX", leaseMillis))) {
+                        return;
+                    }
+                    try {
+                        long start = System.nanoTime();
+                        T value = supplier.get();
+                        setEnvelope(key, value, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), expireSeconds);
+                    } finally {
+                        if (leaseMillis > 0) {
+                            jedisAdapter.compareAndDelete(leaseKey, token);
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    // 刷新失败时继续返回旧值，下次读取再次尝试
+                    logger.warn("refresh of cache key {} failed", key, e);
+                } finally {
+                    refreshing.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.remove(key);
+        }
+    }
+
+    /**
+     * 在加载租约下查询数据源
+     *
+     * @param key      缓存key
+     * @param reader   读取缓存
+     * @param parser   解析旧值副本
+     * @param supplier 数据源查询
+     * @param writer   写入缓存
+     * @return 新值、旧值副本或等待超时后自行查询的值
+     */
+    private <T> T loadLeased(String key, Supplier<T> reader, Function<String, T> parser,
+                             Supplier<T> supplier, Consumer<T> writer) {
+        String leaseKey = key + LEASE_SUFFIX;
+        String token = UUID.randomUUID().toString();
+        if ("OK".equals(jedisAdapter.set(leaseKey, token, "NX", "PX", leaseMillis))) {
+            try {
+                // 其他进程可能在本次未命中后刚写入
+                T value = reader.get();
+                if (value == null) {
+                    value = supplier.get();
+                    writer.accept(value);
+                }
+                return value;
+            } finally {
+                jedisAdapter.compareAndDelete(leaseKey, token);
+            }
+        }
+        if (staleSeconds > 0) {
+            T stale = parser.apply(jedisAdapter.get(key + STALE_SUFFIX));
+            if (stale != null) {
+                return stale;
+            }
+        }
+        long deadline = System.currentTimeMillis() + leaseWaitMillis;
+        try {
+            while (System.currentTimeMillis() < deadline) {
+                Thread.sleep(leasePollMillis);
+                T value = reader.get();
+                if (value != null) {
+                    return value;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        T value = supplier.get();
+        writer.accept(value);
+        return value;
+    }
+
+    /**
+     * 旧值副本比数据多保留staleSeconds，不过期的数据不需要副本
+     */
+    private void setStale(String key, String json, int expireSeconds) {
+        if (hasStaleCopy() && expireSeconds != -1) {
+            jedisAdapter.setex(key + STALE_SUFFIX, expireSeconds + staleSeconds, json);
+        }
+    }
+
+    /**
+     * 同一key与类型的加载合并执行
+     */
+    private <T> T load(String key, Object type, Supplier<T> loader) {
+        if (singleFlight == null) {
+            return loader.get();
+        }
+        return singleFlight.execute(key + '\0' + type, loader);
+    }
+
+    /**
+     * 设置后对象以UTF-8的JSON字节直接读写，通常传入jedisAdapter.binary()；未设置时以字符串读写
+     *
+     * @param binaryJedisAdapter the binaryJedisAdapter to set
+     */
+    public void setBinaryJedisAdapter(BinaryJedisAdapter binaryJedisAdapter) {
+        this.binaryJedisAdapter = binaryJedisAdapter;
     }
 
     /**
@@ -74,14 +447,31 @@ public class RedisCacheTemplate implements CacheTemplate {
      */
     @Override
     public <T> T cacheQuery(String key, Class<T> clazz, Supplier<T> supplier, int expireSeconds) {
-        T t = JSON.parseObject(get(key), clazz);
+        if (revalidateSeconds > 0 && expireSeconds != -1) {
+            return revalidating(key, clazz, object -> object.getObject("v", clazz), supplier, expireSeconds);
+        }
+        T t;
+        try {
+            t = get(key, clazz, expireSeconds);
+        } catch (CircuitBreakerOpenException e) {
+            // 缓存已熔断，直接查询数据源，不回写缓存
+            return load(key, clazz, supplier);
+        }
         if (t == null) {
-            t = supplier.get();
-            if (expireSeconds == -1) {
-                set(key, JSON.toJSONString(t));
-            } else {
-                setex(key, JSON.toJSONString(t), expireSeconds);
+            Consumer<T> writer = value -> {
+                setJson(key, value, expireSeconds);
+                setStale(key, JSON.toJSONString(value), expireSeconds);
+            };
+            Supplier<T> loader = () -> {
+                T value = supplier.get();
+                writer.accept(value);
+                return value;
+            };
+            if (leaseMillis > 0) {
+                loader = () -> loadLeased(key, () -> get(key, clazz, expireSeconds), str -> JSON.parseObject(str, clazz),
+                        supplier, writer);
             }
+            t = load(key, clazz, loader);
         }
         return t;
     }
@@ -97,7 +487,7 @@ public class RedisCacheTemplate implements CacheTemplate {
      * @return
      */
     @Override
-    public List cacheQueryList(String key, Class clazz, Supplier<List> supplier) {
+    public <T> List<T> cacheQueryList(String key, Class<T> clazz, Supplier<List<T>> supplier) {
         return cacheQueryList(key, clazz, supplier, -1);
     }
 
@@ -113,16 +503,46 @@ public class RedisCacheTemplate implements CacheTemplate {
      * @return
      */
     @Override
-    public List cacheQueryList(String key, Class clazz, Supplier<List> supplier, int expireSeconds) {
-        String str = get(key);
-        List t = JSON.parseArray(str, clazz);
+    public <T> List<T> cacheQueryList(String key, Class<T> clazz, Supplier<List<T>> supplier, int expireSeconds) {
+        if (revalidateSeconds > 0 && expireSeconds != -1) {
+            return revalidating(key, List.class, object -> {
+                JSONArray array = object.getJSONArray("v");
+                if (array == null) {
+                    return null;
+                }
+                List<T> list = new ArrayList<>(array.size());
+                for (int i = 0; i < array.size(); i++) {
+                    list.add(array.getObject(i, clazz));
+                }
+                return list;
+            }, supplier, expireSeconds);
+        }
+        List<T> t;
+        try {
+            t = getList(key, clazz, expireSeconds);
+        } catch (CircuitBreakerOpenException e) {
+            // 缓存已熔断，直接查询数据源，不回写缓存
+            return load(key, List.class, supplier);
+        }
         if (t == null) {
-            t = supplier.get();
-            if (expireSeconds == -1) {
-                set(key, JSON.toJSONString(t));
-            } else {
-                setex(key, JSON.toJSONString(t), expireSeconds);
+            Consumer<List<T>> writer = value -> {
+                if (expireSeconds == -1) {
+                    set(key, JSON.toJSONString(value));
+                } else {
+                    setex(key, JSON.toJSONString(value), expireSeconds);
+                }
+                setStale(key, JSON.toJSONString(value), expireSeconds);
+            };
+            Supplier<List<T>> loader = () -> {
+                List<T> value = supplier.get();
+                writer.accept(value);
+                return value;
+            };
+            if (leaseMillis > 0) {
+                loader = () -> loadLeased(key, () -> getList(key, clazz, expireSeconds), str -> JSON.parseArray(str, clazz),
+                        supplier, writer);
             }
+            t = load(key, List.class, loader);
         }
         return t;
     }
@@ -136,19 +556,51 @@ public class RedisCacheTemplate implements CacheTemplate {
         return redisList;
     }
 
+    /**
+     * 事务中缓冲写操作，返回值在提交后才可得，缓冲时返回null
+     */
     @Override
     public Long incr(String key) {
-        return jedisAdapter.incr(key);
+        if (buffered(key, pipeline -> pipeline.incr(key))) {
+            return null;
+        }
+        try {
+            return jedisAdapter.incr(key);
+        } finally {
+            invalidate(key);
+        }
     }
 
     @Override
     public Long decr(String key) {
-        return jedisAdapter.decr(key);
+        if (buffered(key, pipeline -> pipeline.decr(key))) {
+            return null;
+        }
+        try {
+            return jedisAdapter.decr(key);
+        } finally {
+            invalidate(key);
+        }
     }
 
     @Override
     public void mset(String... keys) {
-        jedisAdapter.mset(keys);
+        UnitOfWork unit = unitOfWork.get();
+        if (unit == null) {
+            try {
+                jedisAdapter.mset(keys);
+            } finally {
+                for (int i = 0; i < keys.length; i += 2) {
+                    invalidate(keys[i]);
+                }
+            }
+            return;
+        }
+        for (int i = 0; i < keys.length; i += 2) {
+            String key = keys[i];
+            String value = keys[i + 1];
+            unit.add(key, pipeline -> pipeline.set(key, value));
+        }
     }
 
     @Override
@@ -158,50 +610,224 @@ public class RedisCacheTemplate implements CacheTemplate {
 
     @Override
     public String get(String key) {
-        return jedisAdapter.get(key);
+        if (nearCache == null) {
+            return jedisAdapter.get(key);
+        }
+        String value = nearCache.get(key, String.class);
+        if (value == null) {
+            long stamp = nearCache.stamp(key);
+            value = jedisAdapter.get(key);
+            fill(key, String.class, value, stamp, 0);
+        }
+        return value;
     }
 
     @Override
     public <T> T get(String key, Class<T> clazz) {
-        return JSON.parseObject(get(key), clazz);
+        return get(key, clazz, 0);
+    }
+
+    /**
+     * @param expireSeconds key写入时的超时时间，-1表示不超时，0表示未知
+     */
+    private <T> T get(String key, Class<T> clazz, int expireSeconds) {
+        if (nearCache == null) {
+            return read(key, clazz);
+        }
+        T value = nearCache.get(key, clazz);
+        if (value == null) {
+            long stamp = nearCache.stamp(key);
+            value = read(key, clazz);
+            fill(key, clazz, value, stamp, expireSeconds);
+        }
+        return value;
+    }
+
+    /**
+     * 一级缓存中的存活时间不超过key在Redis中的超时时间；超时时间未知时不再查询key的剩余时间，
+     * 使用一级缓存的默认存活时间，由maxStalenessMillis限定上限
+     *
+     * @param expireSeconds key写入时的超时时间，-1表示不超时，0表示未知
+     */
+    private void fill(String key, Object type, Object value, long stamp, int expireSeconds) {
+        if (value == null || !nearCache.isEnabled()) {
+            return;
+        }
+        if (expireSeconds > 0) {
+            long ttlMillis = Math.min(nearCache.getTtlMillis(), TimeUnit.SECONDS.toMillis(expireSeconds));
+            nearCache.put(key, type, value, ttlMillis, stamp);
+        } else {
+            nearCache.put(key, type, value, stamp);
+        }
+    }
+
+    private <T> T read(String key, Class<T> clazz) {
+        if (binaryJedisAdapter == null) {
+            return JSON.parseObject(jedisAdapter.get(key), clazz);
+        }
+        byte[] bytes = binaryJedisAdapter.get(SafeEncoder.encode(key));
+        return bytes == null ? null : JSON.parseObject(bytes, clazz);
+    }
+
+    /**
+     * 列表在一级缓存中以元素类型区分
+     */
+    private <T> List<T> getList(String key, Class<T> clazz, int expireSeconds) {
+        if (nearCache == null) {
+            return JSON.parseArray(jedisAdapter.get(key), clazz);
+        }
+        List<Object> type = Arrays.asList(List.class, clazz);
+        List<T> value = nearCache.get(key, type);
+        if (value == null) {
+            long stamp = nearCache.stamp(key);
+            value = JSON.parseArray(jedisAdapter.get(key), clazz);
+            fill(key, type, value, stamp, expireSeconds);
+        }
+        return value;
+    }
+
+    /**
+     * 写操作后删除一级缓存中的条目，并通知其他进程
+     */
+    private void invalidate(String key) {
+        if (invalidationBus != null) {
+            invalidationBus.invalidate(key);
+        } else if (nearCache != null) {
+            nearCache.invalidate(key);
+        }
+    }
+
+    /**
+     * 是否保存旧值副本。写入新值后key本身存在，不会读取副本，只有删除key时需要一并删除副本
+     */
+    private boolean hasStaleCopy() {
+        return leaseMillis > 0 && staleSeconds > 0;
     }
 
     @Override
     public <T> void setnx(String key, T value) {
-        if (value == null)
-            jedisAdapter.setnx(key, null);
-        if (value instanceof String) {
-            jedisAdapter.setnx(key, String.valueOf(value));
-        } else {
-            jedisAdapter.setnx(key, JSON.toJSONString(value));
+        if (buffered(key, pipeline -> pipeline.setnx(key, toText(value)))) {
+            return;
+        }
+        try {
+            if (value == null)
+                jedisAdapter.setnx(key, null);
+            if (value instanceof String) {
+                jedisAdapter.setnx(key, String.valueOf(value));
+            } else {
+                jedisAdapter.setnx(key, JSON.toJSONString(value));
+            }
+        } finally {
+            invalidate(key);
         }
     }
 
     @Override
     public <T> void setex(String key, T value, int seconds) {
-        if (value == null)
-            jedisAdapter.setex(key, seconds, null);
-        if (value instanceof String) {
-            jedisAdapter.setex(key, seconds, String.valueOf(value));
-        } else {
-            jedisAdapter.setex(key, seconds, JSON.toJSONString(value));
+        if (buffered(key, pipeline -> pipeline.setex(key, seconds, toText(value)))) {
+            return;
+        }
+        try {
+            if (value == null)
+                jedisAdapter.setex(key, seconds, null);
+            if (value instanceof String) {
+                jedisAdapter.setex(key, seconds, String.valueOf(value));
+            } else if (binaryJedisAdapter != null) {
+                setJsonBytes(key, value, seconds);
+            } else {
+                jedisAdapter.setex(key, seconds, JSON.toJSONString(value));
+            }
+        } finally {
+            invalidate(key);
         }
     }
 
     @Override
     public <T> void set(String key, T value) {
-        if (value == null)
-            jedisAdapter.set(key, null);
-        if (value instanceof String) {
-            jedisAdapter.set(key, String.valueOf(value));
+        if (buffered(key, pipeline -> pipeline.set(key, toText(value)))) {
+            return;
+        }
+        try {
+            if (value == null)
+                jedisAdapter.set(key, null);
+            if (value instanceof String) {
+                jedisAdapter.set(key, String.valueOf(value));
+            } else if (binaryJedisAdapter != null) {
+                setJsonBytes(key, value, -1);
+            } else {
+                jedisAdapter.set(key, JSON.toJSONString(value));
+            }
+        } finally {
+            invalidate(key);
+        }
+    }
+
+    /**
+     * 事务中的写操作以字符串写入，与byte[]方式写入的UTF-8内容一致
+     */
+    private static String toText(Object value) {
+        return value instanceof String ? (String) value : JSON.toJSONString(value);
+    }
+
+    /**
+     * 当前线程有事务时缓冲写操作
+     *
+     * @return 是否已缓冲
+     */
+    private boolean buffered(String key, Consumer<RedisPipeline> command) {
+        UnitOfWork unit = unitOfWork.get();
+        if (unit == null) {
+            return false;
+        }
+        unit.add(key, command);
+        return true;
+    }
+
+    /**
+     * 以JSON写入，字符串同样加引号，与cacheQuery的读取一致；和set、setex一样缓冲于事务并删除一级缓存条目
+     */
+    private void setJson(String key, Object value, int expireSeconds) {
+        String json = JSON.toJSONString(value);
+        if (buffered(key, pipeline -> {
+            if (expireSeconds == -1) {
+                pipeline.set(key, json);
+            } else {
+                pipeline.setex(key, expireSeconds, json);
+            }
+        })) {
+            return;
+        }
+        try {
+            if (binaryJedisAdapter != null) {
+                setJsonBytes(key, value, expireSeconds);
+            } else if (expireSeconds == -1) {
+                jedisAdapter.set(key, json);
+            } else {
+                jedisAdapter.setex(key, expireSeconds, json);
+            }
+        } finally {
+            invalidate(key);
+        }
+    }
+
+    /**
+     * 对象直接序列化为UTF-8的JSON字节写入，省去中间的String
+     */
+    private void setJsonBytes(String key, Object value, int expireSeconds) {
+        byte[] bytes = JSON.toJSONBytes(value);
+        if (expireSeconds == -1) {
+            binaryJedisAdapter.set(SafeEncoder.encode(key), bytes);
         } else {
-            jedisAdapter.set(key, JSON.toJSONString(value));
+            binaryJedisAdapter.setex(SafeEncoder.encode(key), expireSeconds, bytes);
         }
     }
 
     @Override
     public RedisMap getMap(String key) {
         RedisMap redisMap = new RedisMap(jedisAdapter, key);
+        redisMap.setNearCache(nearCache);
+        redisMap.setInvalidationBus(invalidationBus);
+        redisMap.setSingleFlight(singleFlight);
         return redisMap;
     }
 
@@ -212,12 +838,8 @@ public class RedisCacheTemplate implements CacheTemplate {
 
         String value = business + "|" + actionName + "|" + actionName;
 
-        if (jedisAdapter.setnx(key, value) != 0) {
-            jedisAdapter.expire(key, lockTimeout);
-            return true;
-        } else {
-            return false;
-        }
+        // 写入与设置超时在一个脚本内完成，不会留下没有超时的锁
+        return jedisAdapter.lock(key, value, lockTimeout);
     }
 
     @Override
@@ -231,10 +853,7 @@ public class RedisCacheTemplate implements CacheTemplate {
 
         lockTimeout = second;
 
-        isExist = jedisAdapter.setnx(key, value) == 0;
-        if (!isExist) {
-            jedisAdapter.expire(key, lockTimeout);
-        }
+        isExist = !jedisAdapter.lock(key, value, lockTimeout);
         return isExist;
 
     }
@@ -256,10 +875,10 @@ public class RedisCacheTemplate implements CacheTemplate {
 
         String key = business + actionName + message;
 
-        if (jedisAdapter.del(key) > 0) {
-            return true;
-        } else {
-            return false;
+        try {
+            return jedisAdapter.del(key) > 0;
+        } finally {
+            invalidate(key);
         }
     }
 
@@ -284,27 +903,97 @@ public class RedisCacheTemplate implements CacheTemplate {
 
     @Override
     public Boolean begin() {
-        return false;
+        if (unitOfWork.get() != null) {
+            return false;
+        }
+        unitOfWork.set(new UnitOfWork());
+        return true;
     }
 
+    @Override
+    public void watch(String... keys) {
+        UnitOfWork unit = unitOfWork.get();
+        if (unit == null) {
+            throw new IllegalStateException("watch outside of begin/commit");
+        }
+        for (String key : keys) {
+            if (!unit.isWatched(key)) {
+                unit.watch(key, jedisAdapter.get(key));
+            }
+        }
+    }
+
+    /**
+     * 缓冲的写操作与watch的key须位于同一节点，分片与集群时可用相同的{tag}保证
+     */
     @Override
     public Boolean commit() {
-        return false;
+        UnitOfWork unit = unitOfWork.get();
+        if (unit == null) {
+            return false;
+        }
+        unitOfWork.remove();
+        if (unit.isEmpty()) {
+            return true;
+        }
+        try {
+            return jedisAdapter.transaction(unit.getKeys(), unit.getExpected(), unit::replay) != null;
+        } finally {
+            unit.getKeys().forEach(this::invalidate);
+        }
     }
 
     @Override
     public Boolean rollback() {
-        return false;
+        UnitOfWork unit = unitOfWork.get();
+        unitOfWork.remove();
+        return unit != null;
     }
 
+    /**
+     * 事务中缓冲，返回null；保存旧值副本时在同一次往返中删除副本，之后的租约等待不再返回删除前的值
+     */
     @Override
     public Boolean del(String key) {
-        return jedisAdapter.del(key) > 0;
+        boolean dropStale = hasStaleCopy();
+        if (buffered(key, pipeline -> {
+            pipeline.del(key);
+            if (dropStale) {
+                pipeline.del(key + STALE_SUFFIX);
+            }
+        })) {
+            return null;
+        }
+        try {
+            if (!dropStale) {
+                return jedisAdapter.del(key) > 0;
+            }
+            Object deleted = jedisAdapter.pipelined(pipeline -> {
+                pipeline.del(key);
+                pipeline.del(key + STALE_SUFFIX);
+            }).get(0);
+            if (deleted instanceof RuntimeException) {
+                throw (RuntimeException) deleted;
+            }
+            return (Long) deleted > 0;
+        } finally {
+            invalidate(key);
+        }
     }
 
+    /**
+     * 事务中缓冲，返回null
+     */
     @Override
     public Long expire(String key, int seconds) {
-        return jedisAdapter.expire(key, seconds);
+        if (buffered(key, pipeline -> pipeline.expire(key, seconds))) {
+            return null;
+        }
+        try {
+            return jedisAdapter.expire(key, seconds);
+        } finally {
+            invalidate(key);
+        }
     }
 
     @Override
@@ -17,10 +17,15 @@
 package atter.jedis;
 
 import atter.jedis.adapter.JedisAdapter;
+import atter.jedis.cache.InvalidationBus;
+import atter.jedis.cache.NearCache;
+import atter.jedis.cache.SingleFlight;
 import com.alibaba.fastjson.JSON;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 /**
@@ -37,6 +42,13 @@ public class RedisMap implements CacheMap, JedisAdapterAware, KeyedData {
     private JedisAdapter jedisAdapter;
     private String redisKey;
 
+    /**
+     * 字段在一级缓存中的key为redisKey与字段以\0连接，删除整个hash时不会删除字段的本地条目
+     */
+    private NearCache nearCache;
+    private InvalidationBus invalidationBus;
+    private SingleFlight singleFlight;
+
     public RedisMap(JedisAdapter jedisAdapter, String redisKey) {
         this.jedisAdapter = jedisAdapter;
         this.redisKey = redisKey;
@@ -57,14 +69,87 @@ public class RedisMap implements CacheMap, JedisAdapterAware, KeyedData {
         return redisKey;
     }
 
+    /**
+     * @param nearCache 缓存字段读取结果的一级缓存
+     */
+    public void setNearCache(NearCache nearCache) {
+        this.nearCache = nearCache;
+    }
+
+    /**
+     * 写操作经失效通知同步其他进程的一级缓存
+     *
+     * @param invalidationBus 失效通知
+     */
+    public void setInvalidationBus(InvalidationBus invalidationBus) {
+        this.invalidationBus = invalidationBus;
+        this.nearCache = invalidationBus == null ? nearCache : invalidationBus.getNearCache();
+    }
+
+    /**
+     * @param singleFlight 合并同一字段的数据源查询，为null时不合并
+     */
+    public void setSingleFlight(SingleFlight singleFlight) {
+        this.singleFlight = singleFlight;
+    }
+
+    /**
+     * 同一字段与类型的加载合并执行，与模板的key以\0与字段区分
+     */
+    private <T> T load(String field, Class<?> clazz, Supplier<T> loader) {
+        if (singleFlight == null) {
+            return loader.get();
+        }
+        return singleFlight.execute(localKey(field) + '\0' + clazz.getName(), loader);
+    }
+
+    private String localKey(String field) {
+        return redisKey + '\0' + field;
+    }
+
+    /**
+     * 先查一级缓存，未命中时读取字段并以type写入一级缓存
+     */
+    private <T> T cached(String field, Object type, Function<String, T> parser) {
+        if (nearCache == null) {
+            return parser.apply(jedisAdapter.hget(redisKey, field));
+        }
+        String local = localKey(field);
+        T value = nearCache.get(local, type);
+        if (value == null) {
+            long stamp = nearCache.stamp(local);
+            value = parser.apply(jedisAdapter.hget(redisKey, field));
+            nearCache.put(local, type, value, stamp);
+        }
+        return value;
+    }
+
+    private void invalidate(String... fields) {
+        for (String field : fields) {
+            if (invalidationBus != null) {
+                invalidationBus.invalidate(localKey(field));
+            } else if (nearCache != null) {
+                nearCache.invalidate(localKey(field));
+            }
+        }
+    }
+
 
     @Override
     public String get(String key) {
-        return jedisAdapter.hget(redisKey, key);
+        return cached(key, String.class, Function.identity());
     }
 
     @Override
     public Object put(String field, Object value) {
+        try {
+            return hset(field, value);
+        } finally {
+            invalidate(field);
+        }
+    }
+
+    private Object hset(String field, Object value) {
         Long l;
         if (value == null) {
             l = jedisAdapter.hset(redisKey, field, null);
@@ -80,19 +165,33 @@ public class RedisMap implements CacheMap, JedisAdapterAware, KeyedData {
 
     @Override
     public boolean delete(String key) {
-        Long result = jedisAdapter.hdel(redisKey, key);
+        try {
+            Long result = jedisAdapter.hdel(redisKey, key);
 
-        return result > 0;
+            return result > 0;
+        } finally {
+            invalidate(key);
+        }
     }
 
     public boolean deleteBatch(String... fields) {
-        Long result = jedisAdapter.hdel(redisKey, fields);
-        return result > 0;
+        try {
+            Long result = jedisAdapter.hdel(redisKey, fields);
+            return result > 0;
+        } finally {
+            invalidate(fields);
+        }
     }
 
     @Override
     public void putAll(Map map) {
-        jedisAdapter.hmset(redisKey, map);
+        try {
+            jedisAdapter.hmset(redisKey, map);
+        } finally {
+            for (Object field : map.keySet()) {
+                invalidate(String.valueOf(field));
+            }
+        }
     }
 
     public List<String> getAll(String... fields) {
@@ -110,10 +209,13 @@ public class RedisMap implements CacheMap, JedisAdapterAware, KeyedData {
      */
     @Override
     public <T> T cacheQuery(String key, Class<T> clazz, Supplier<T> supplier) {
-        T t = JSON.parseObject(get(key), clazz);
+        T t = cached(key, clazz, str -> JSON.parseObject(str, clazz));
         if (t == null) {
-            t = supplier.get();
-            put(key, JSON.toJSONString(t));
+            t = load(key, clazz, () -> {
+                T value = supplier.get();
+                put(key, JSON.toJSONString(value));
+                return value;
+            });
         }
         return t;
     }
@@ -130,11 +232,13 @@ public class RedisMap implements CacheMap, JedisAdapterAware, KeyedData {
      */
     @Override
     public List cacheQueryList(String key, Class clazz, Supplier<List> supplier) {
-        String str = get(key);
-        List t = JSON.parseArray(str, clazz);
+        List t = cached(key, Arrays.asList(List.class, clazz), str -> JSON.parseArray(str, clazz));
         if (t == null) {
-            t = supplier.get();
-            put(key, JSON.toJSONString(t));
+            t = load(key, List.class, () -> {
+                List value = supplier.get();
+                put(key, JSON.toJSONString(value));
+                return value;
+            });
         }
         return t;
     }
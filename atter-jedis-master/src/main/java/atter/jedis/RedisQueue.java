@@ -19,6 +19,8 @@ package atter.jedis;
 import atter.jedis.adapter.JedisAdapter;
 import com.alibaba.fastjson.JSON;
 
+import java.util.List;
+
 /**
  * Description:  RedisQueue define
  * Copyright:  2018 CSNT. All rights reserved.
@@ -71,4 +73,9 @@ public class RedisQueue<E> implements JedisAdapterAware, KeyedData, Queue<E> {
         return (E) jedisAdapter.lpop(redisKey);
     }
 
+    @Override
+    public List<E> lpop(int count) {
+        return (List<E>) jedisAdapter.popBatch(redisKey, count);
+    }
+
 }
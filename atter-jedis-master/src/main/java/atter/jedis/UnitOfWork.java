@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atter.jedis;
+
+import redis.clients.jedis.RedisPipeline;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Description:  UnitOfWork
+ * 一个线程在begin与commit之间缓冲的写操作及乐观检查的key
+ * Copyright:  2018 CSNT. All rights reserved.
+ * Company:CSNT
+ *
+ * @author wangling
+ * @version 1.0
+ */
+class UnitOfWork {
+
+    private final Set<String> keys = new LinkedHashSet<>();
+
+    private final Map<String, String> expected = new LinkedHashMap<>();
+
+    private final List<Consumer<RedisPipeline>> commands = new ArrayList<>();
+
+    void add(String key, Consumer<RedisPipeline> command) {
+        keys.add(key);
+        commands.add(command);
+    }
+
+    /**
+     * 同一个key只记录第一次watch时的值
+     */
+    void watch(String key, String value) {
+        if (!expected.containsKey(key)) {
+            expected.put(key, value);
+        }
+    }
+
+    boolean isWatched(String key) {
+        return expected.containsKey(key);
+    }
+
+    Set<String> getKeys() {
+        return keys;
+    }
+
+    Map<String, String> getExpected() {
+        return expected;
+    }
+
+    boolean isEmpty() {
+        return commands.isEmpty();
+    }
+
+    void replay(RedisPipeline pipeline) {
+        for (Consumer<RedisPipeline> command : commands) {
+            command.accept(pipeline);
+        }
+    }
+}
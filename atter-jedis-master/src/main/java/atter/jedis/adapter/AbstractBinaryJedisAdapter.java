@@ -0,0 +1,498 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atter.jedis.adapter;
+
+import redis.clients.jedis.*;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Description:  AbstractBinaryJedisAdapter
+ * Copyright:  2018 CSNT. All rights reserved.
+ * Company:CSNT
+ *
+ * @author wangling
+ * @version 1.0
+ */
+public abstract class AbstractBinaryJedisAdapter<J extends BinaryJedisCommands> implements BinaryJedisAdapter {
+
+    /**
+     * 与字符串适配器共用连接的获取与释放
+     *
+     * @param command 统计使用的命令名
+     * @param key     key或key数组
+     * @param args    参数，无参数时为null
+     * @param fun     执行表达式
+     * @param <T>     返回数据泛型
+     * @return
+     */
+    protected abstract <T> T eval(String command, Object key, Object args, Function<J, T> fun);
+
+    protected <T> T eval(String command, Function<J, T> fun) {
+        return eval(command, null, null, fun);
+    }
+
+    protected <T> T eval(String command, Object key, Function<J, T> fun) {
+        return eval(command, key, null, fun);
+    }
+
+    public String set(byte[] key, byte[] value) {
+        return eval("set", key, value, jedis -> jedis.set(key, value));
+    }
+
+    public byte[] get(byte[] key) {
+        return eval("get", key, jedis -> jedis.get(key));
+    }
+
+    public Boolean exists(byte[] key) {
+        return eval("exists", key, jedis -> jedis.exists(key));
+    }
+
+    public Long persist(byte[] key) {
+        return eval("persist", key, jedis -> jedis.persist(key));
+    }
+
+    public String type(byte[] key) {
+        return eval("type", key, jedis -> jedis.type(key));
+    }
+
+    public Long expire(byte[] key, int seconds) {
+        return eval("expire", key, jedis -> jedis.expire(key, seconds));
+    }
+
+    public Long expireAt(byte[] key, long unixTime) {
+        return eval("expireAt", key, jedis -> jedis.expireAt(key, unixTime));
+    }
+
+    public Long ttl(byte[] key) {
+        return eval("ttl", key, jedis -> jedis.ttl(key));
+    }
+
+    public Boolean setbit(byte[] key, long offset, boolean value) {
+        return eval("setbit", key, value, jedis -> jedis.setbit(key, offset, value));
+    }
+
+    public Boolean setbit(byte[] key, long offset, byte[] value) {
+        return eval("setbit", key, value, jedis -> jedis.setbit(key, offset, value));
+    }
+
+    public Boolean getbit(byte[] key, long offset) {
+        return eval("getbit", key, jedis -> jedis.getbit(key, offset));
+    }
+
+    public Long setrange(byte[] key, long offset, byte[] value) {
+        return eval("setrange", key, value, jedis -> jedis.setrange(key, offset, value));
+    }
+
+    public byte[] getrange(byte[] key, long startOffset, long endOffset) {
+        return eval("getrange", key, jedis -> jedis.getrange(key, startOffset, endOffset));
+    }
+
+    public byte[] getSet(byte[] key, byte[] value) {
+        return eval("getSet", key, value, jedis -> jedis.getSet(key, value));
+    }
+
+    public Long setnx(byte[] key, byte[] value) {
+        return eval("setnx", key, value, jedis -> jedis.setnx(key, value));
+    }
+
+    public String setex(byte[] key, int seconds, byte[] value) {
+        return eval("setex", key, value, jedis -> jedis.setex(key, seconds, value));
+    }
+
+    public Long decrBy(byte[] key, long integer) {
+        return eval("decrBy", key, jedis -> jedis.decrBy(key, integer));
+    }
+
+    public Long decr(byte[] key) {
+        return eval("decr", key, jedis -> jedis.decr(key));
+    }
+
+    public Long incrBy(byte[] key, long integer) {
+        return eval("incrBy", key, jedis -> jedis.incrBy(key, integer));
+    }
+
+    public Double incrByFloat(byte[] key, double value) {
+        return eval("incrByFloat", key, value, jedis -> jedis.incrByFloat(key, value));
+    }
+
+    public Long incr(byte[] key) {
+        return eval("incr", key, jedis -> jedis.incr(key));
+    }
+
+    public Long append(byte[] key, byte[] value) {
+        return eval("append", key, value, jedis -> jedis.append(key, value));
+    }
+
+    public byte[] substr(byte[] key, int start, int end) {
+        return eval("substr", key, jedis -> jedis.substr(key, start, end));
+    }
+
+    public Long hset(byte[] key, byte[] field, byte[] value) {
+        return eval("hset", key, value, jedis -> jedis.hset(key, field, value));
+    }
+
+    public byte[] hget(byte[] key, byte[] field) {
+        return eval("hget", key, jedis -> jedis.hget(key, field));
+    }
+
+    public Long hsetnx(byte[] key, byte[] field, byte[] value) {
+        return eval("hsetnx", key, value, jedis -> jedis.hsetnx(key, field, value));
+    }
+
+    public String hmset(byte[] key, Map<byte[], byte[]> hash) {
+        return eval("hmset", key, hash, jedis -> jedis.hmset(key, hash));
+    }
+
+    public List<byte[]> hmget(byte[] key, byte[]... fields) {
+        return eval("hmget", key, jedis -> jedis.hmget(key, fields));
+    }
+
+    public Long hincrBy(byte[] key, byte[] field, long value) {
+        return eval("hincrBy", key, value, jedis -> jedis.hincrBy(key, field, value));
+    }
+
+    public Double hincrByFloat(byte[] key, byte[] field, double value) {
+        return eval("hincrByFloat", key, value, jedis -> jedis.hincrByFloat(key, field, value));
+    }
+
+    public Boolean hexists(byte[] key, byte[] field) {
+        return eval("hexists", key, jedis -> jedis.hexists(key, field));
+    }
+
+    public Long hdel(byte[] key, byte[]... field) {
+        return eval("hdel", key, jedis -> jedis.hdel(key, field));
+    }
+
+    public Long hlen(byte[] key) {
+        return eval("hlen", key, jedis -> jedis.hlen(key));
+    }
+
+    public Set<byte[]> hkeys(byte[] key) {
+        return eval("hkeys", key, jedis -> jedis.hkeys(key));
+    }
+
+    public Collection<byte[]> hvals(byte[] key) {
+        return eval("hvals", key, jedis -> jedis.hvals(key));
+    }
+
+    public Map<byte[], byte[]> hgetAll(byte[] key) {
+        return eval("hgetAll", key, jedis -> jedis.hgetAll(key));
+    }
+
+    public Long rpush(byte[] key, byte[]... string) {
+        return eval("rpush", key, string, jedis -> jedis.rpush(key, string));
+    }
+
+    public Long lpush(byte[] key, byte[]... string) {
+        return eval("lpush", key, string, jedis -> jedis.lpush(key, string));
+    }
+
+    public Long llen(byte[] key) {
+        return eval("llen", key, jedis -> jedis.llen(key));
+    }
+
+    public List<byte[]> lrange(byte[] key, long start, long end) {
+        return eval("lrange", key, jedis -> jedis.lrange(key, start, end));
+    }
+
+    public String ltrim(byte[] key, long start, long end) {
+        return eval("ltrim", key, jedis -> jedis.ltrim(key, start, end));
+    }
+
+    public byte[] lindex(byte[] key, long index) {
+        return eval("lindex", key, jedis -> jedis.lindex(key, index));
+    }
+
+    public String lset(byte[] key, long index, byte[] value) {
+        return eval("lset", key, value, jedis -> jedis.lset(key, index, value));
+    }
+
+    public Long lrem(byte[] key, long count, byte[] value) {
+        return eval("lrem", key, value, jedis -> jedis.lrem(key, count, value));
+    }
+
+    public byte[] lpop(byte[] key) {
+        return eval("lpop", key, jedis -> jedis.lpop(key));
+    }
+
+    public byte[] rpop(byte[] key) {
+        return eval("rpop", key, jedis -> jedis.rpop(key));
+    }
+
+    public Long sadd(byte[] key, byte[]... member) {
+        return eval("sadd", key, member, jedis -> jedis.sadd(key, member));
+    }
+
+    public Set<byte[]> smembers(byte[] key) {
+        return eval("smembers", key, jedis -> jedis.smembers(key));
+    }
+
+    public Long srem(byte[] key, byte[]... member) {
+        return eval("srem", key, member, jedis -> jedis.srem(key, member));
+    }
+
+    public byte[] spop(byte[] key) {
+        return eval("spop", key, jedis -> jedis.spop(key));
+    }
+
+    public Long scard(byte[] key) {
+        return eval("scard", key, jedis -> jedis.scard(key));
+    }
+
+    public Boolean sismember(byte[] key, byte[] member) {
+        return eval("sismember", key, member, jedis -> jedis.sismember(key, member));
+    }
+
+    public byte[] srandmember(byte[] key) {
+        return eval("srandmember", key, jedis -> jedis.srandmember(key));
+    }
+
+    public List<byte[]> srandmember(byte[] key, int count) {
+        return eval("srandmember", key, jedis -> jedis.srandmember(key, count));
+    }
+
+    public Long strlen(byte[] key) {
+        return eval("strlen", key, jedis -> jedis.strlen(key));
+    }
+
+    public Long zadd(byte[] key, double score, byte[] member) {
+        return eval("zadd", key, member, jedis -> jedis.zadd(key, score, member));
+    }
+
+    public Long zadd(byte[] key, Map<byte[], Double> scoreMembers) {
+        return eval("zadd", key, scoreMembers, jedis -> jedis.zadd(key, scoreMembers));
+    }
+
+    public Set<byte[]> zrange(byte[] key, long start, long end) {
+        return eval("zrange", key, jedis -> jedis.zrange(key, start, end));
+    }
+
+    public Long zrem(byte[] key, byte[]... member) {
+        return eval("zrem", key, member, jedis -> jedis.zrem(key, member));
+    }
+
+    public Double zincrby(byte[] key, double score, byte[] member) {
+        return eval("zincrby", key, member, jedis -> jedis.zincrby(key, score, member));
+    }
+
+    public Long zrank(byte[] key, byte[] member) {
+        return eval("zrank", key, member, jedis -> jedis.zrank(key, member));
+    }
+
+    public Long zrevrank(byte[] key, byte[] member) {
+        return eval("zrevrank", key, member, jedis -> jedis.zrevrank(key, member));
+    }
+
+    public Set<byte[]> zrevrange(byte[] key, long start, long end) {
+        return eval("zrevrange", key, jedis -> jedis.zrevrange(key, start, end));
+    }
+
+    public Set<Tuple> zrangeWithScores(byte[] key, long start, long end) {
+        return eval("zrangeWithScores", key, jedis -> jedis.zrangeWithScores(key, start, end));
+    }
+
+    public Set<Tuple> zrevrangeWithScores(byte[] key, long start, long end) {
+        return eval("zrevrangeWithScores", key, jedis -> jedis.zrevrangeWithScores(key, start, end));
+    }
+
+    public Long zcard(byte[] key) {
+        return eval("zcard", key, jedis -> jedis.zcard(key));
+    }
+
+    public Double zscore(byte[] key, byte[] member) {
+        return eval("zscore", key, member, jedis -> jedis.zscore(key, member));
+    }
+
+    public List<byte[]> sort(byte[] key) {
+        return eval("sort", key, jedis -> jedis.sort(key));
+    }
+
+    public List<byte[]> sort(byte[] key, SortingParams sortingParameters) {
+        return eval("sort", key, jedis -> jedis.sort(key, sortingParameters));
+    }
+
+    public Long zcount(byte[] key, double min, double max) {
+        return eval("zcount", key, jedis -> jedis.zcount(key, min, max));
+    }
+
+    public Long zcount(byte[] key, byte[] min, byte[] max) {
+        return eval("zcount", key, jedis -> jedis.zcount(key, min, max));
+    }
+
+    public Set<byte[]> zrangeByScore(byte[] key, double min, double max) {
+        return eval("zrangeByScore", key, jedis -> jedis.zrangeByScore(key, min, max));
+    }
+
+    public Set<byte[]> zrangeByScore(byte[] key, byte[] min, byte[] max) {
+        return eval("zrangeByScore", key, jedis -> jedis.zrangeByScore(key, min, max));
+    }
+
+    public Set<byte[]> zrevrangeByScore(byte[] key, double max, double min) {
+        return eval("zrevrangeByScore", key, jedis -> jedis.zrevrangeByScore(key, max, min));
+    }
+
+    public Set<byte[]> zrangeByScore(byte[] key, double min, double max, int offset, int count) {
+        return eval("zrangeByScore", key, jedis -> jedis.zrangeByScore(key, min, max, offset, count));
+    }
+
+    public Set<byte[]> zrevrangeByScore(byte[] key, byte[] max, byte[] min) {
+        return eval("zrevrangeByScore", key, jedis -> jedis.zrevrangeByScore(key, max, min));
+    }
+
+    public Set<byte[]> zrangeByScore(byte[] key, byte[] min, byte[] max, int offset, int count) {
+        return eval("zrangeByScore", key, jedis -> jedis.zrangeByScore(key, min, max, offset, count));
+    }
+
+    public Set<byte[]> zrevrangeByScore(byte[] key, double max, double min, int offset, int count) {
+        return eval("zrevrangeByScore", key, jedis -> jedis.zrevrangeByScore(key, max, min, offset, count));
+    }
+
+    public Set<Tuple> zrangeByScoreWithScores(byte[] key, double min, double max) {
+        return eval("zrangeByScoreWithScores", key, jedis -> jedis.zrangeByScoreWithScores(key, min, max));
+    }
+
+    public Set<Tuple> zrevrangeByScoreWithScores(byte[] key, double max, double min) {
+        return eval("zrevrangeByScoreWithScores", key, jedis -> jedis.zrevrangeByScoreWithScores(key, max, min));
+    }
+
+    public Set<Tuple> zrangeByScoreWithScores(byte[] key, double min, double max, int offset, int count) {
+        return eval("zrangeByScoreWithScores", key, jedis -> jedis.zrangeByScoreWithScores(key, min, max, offset, count));
+    }
+
+    public Set<byte[]> zrevrangeByScore(byte[] key, byte[] max, byte[] min, int offset, int count) {
+        return eval("zrevrangeByScore", key, jedis -> jedis.zrevrangeByScore(key, max, min, offset, count));
+    }
+
+    public Set<Tuple> zrangeByScoreWithScores(byte[] key, byte[] min, byte[] max) {
+        return eval("zrangeByScoreWithScores", key, jedis -> jedis.zrangeByScoreWithScores(key, min, max));
+    }
+
+    public Set<Tuple> zrevrangeByScoreWithScores(byte[] key, byte[] max, byte[] min) {
+        return eval("zrevrangeByScoreWithScores", key, jedis -> jedis.zrevrangeByScoreWithScores(key, max, min));
+    }
+
+    public Set<Tuple> zrangeByScoreWithScores(byte[] key, byte[] min, byte[] max, int offset, int count) {
+        return eval("zrangeByScoreWithScores", key, jedis -> jedis.zrangeByScoreWithScores(key, min, max, offset, count));
+    }
+
+    public Set<Tuple> zrevrangeByScoreWithScores(byte[] key, double max, double min, int offset, int count) {
+        return eval("zrevrangeByScoreWithScores", key, jedis -> jedis.zrevrangeByScoreWithScores(key, max, min, offset, count));
+    }
+
+    public Set<Tuple> zrevrangeByScoreWithScores(byte[] key, byte[] max, byte[] min, int offset, int count) {
+        return eval("zrevrangeByScoreWithScores", key, jedis -> jedis.zrevrangeByScoreWithScores(key, max, min, offset, count));
+    }
+
+    public Long zremrangeByRank(byte[] key, long start, long end) {
+        return eval("zremrangeByRank", key, jedis -> jedis.zremrangeByRank(key, start, end));
+    }
+
+    public Long zremrangeByScore(byte[] key, double start, double end) {
+        return eval("zremrangeByScore", key, jedis -> jedis.zremrangeByScore(key, start, end));
+    }
+
+    public Long zremrangeByScore(byte[] key, byte[] start, byte[] end) {
+        return eval("zremrangeByScore", key, jedis -> jedis.zremrangeByScore(key, start, end));
+    }
+
+    public Long zlexcount(byte[] key, byte[] min, byte[] max) {
+        return eval("zlexcount", key, jedis -> jedis.zlexcount(key, min, max));
+    }
+
+    public Set<byte[]> zrangeByLex(byte[] key, byte[] min, byte[] max) {
+        return eval("zrangeByLex", key, jedis -> jedis.zrangeByLex(key, min, max));
+    }
+
+    public Set<byte[]> zrangeByLex(byte[] key, byte[] min, byte[] max, int offset, int count) {
+        return eval("zrangeByLex", key, jedis -> jedis.zrangeByLex(key, min, max, offset, count));
+    }
+
+    public Long zremrangeByLex(byte[] key, byte[] min, byte[] max) {
+        return eval("zremrangeByLex", key, jedis -> jedis.zremrangeByLex(key, min, max));
+    }
+
+    public Long linsert(byte[] key, BinaryClient.LIST_POSITION where, byte[] pivot, byte[] value) {
+        return eval("linsert", key, value, jedis -> jedis.linsert(key, where, pivot, value));
+    }
+
+    public Long lpushx(byte[] key, byte[]... string) {
+        return eval("lpushx", key, string, jedis -> jedis.lpushx(key, string));
+    }
+
+    public Long rpushx(byte[] key, byte[]... string) {
+        return eval("rpushx", key, string, jedis -> jedis.rpushx(key, string));
+    }
+
+    /**
+     * BinaryJedisCommands要求实现的blpop，Jedis中已废弃，仅为满足接口而保留
+     */
+    @Deprecated
+    @SuppressWarnings("deprecation")
+    public List<byte[]> blpop(byte[] arg) {
+        return eval("blpop", arg, jedis -> jedis.blpop(arg));
+    }
+
+    /**
+     * BinaryJedisCommands要求实现的brpop，Jedis中已废弃，仅为满足接口而保留
+     */
+    @Deprecated
+    @SuppressWarnings("deprecation")
+    public List<byte[]> brpop(byte[] arg) {
+        return eval("brpop", arg, jedis -> jedis.brpop(arg));
+    }
+
+    public Long del(byte[] key) {
+        return eval("del", key, jedis -> jedis.del(key));
+    }
+
+    public byte[] echo(byte[] string) {
+        return eval("echo", jedis -> jedis.echo(string));
+    }
+
+    public Long move(byte[] key, int dbIndex) {
+        return eval("move", key, jedis -> jedis.move(key, dbIndex));
+    }
+
+    public Long bitcount(byte[] key) {
+        return eval("bitcount", key, jedis -> jedis.bitcount(key));
+    }
+
+    public Long bitcount(byte[] key, long start, long end) {
+        return eval("bitcount", key, jedis -> jedis.bitcount(key, start, end));
+    }
+
+    public Long pfadd(byte[] key, byte[]... elements) {
+        return eval("pfadd", key, elements, jedis -> jedis.pfadd(key, elements));
+    }
+
+    public long pfcount(byte[] key) {
+        return eval("pfcount", key, jedis -> jedis.pfcount(key));
+    }
+
+//*********************************************
+
+    public abstract Long del(byte[]... keys);
+
+    public abstract List<byte[]> mget(byte[]... keys);
+
+    public abstract String mset(byte[]... keysvalues);
+}
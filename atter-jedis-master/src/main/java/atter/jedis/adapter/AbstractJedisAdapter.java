@@ -16,14 +16,32 @@
  */
 package atter.jedis.adapter;
 
+import atter.jedis.breaker.CircuitBreaker;
+import atter.jedis.breaker.CircuitBreakerOpenException;
+import atter.jedis.metrics.CommandMetrics;
+import atter.jedis.metrics.SlowLog;
 import redis.clients.jedis.*;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisException;
 import redis.clients.util.Pool;
 
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * Description:  AbstractJedisAdapter
@@ -35,7 +53,87 @@ import java.util.function.Function;
  */
 public abstract class AbstractJedisAdapter<J extends JedisCommands & AutoCloseable> implements JedisAdapter {
 
-    protected Pool<J> pool;
+    /**
+     * 只读命令，可以发往从节点，连接失败时可以重试
+     */
+    protected static final Set<String> READ_COMMANDS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "get", "exists", "type", "ttl", "getbit", "getrange", "substr", "strlen", "bitcount", "echo",
+            "hget", "hmget", "hexists", "hlen", "hkeys", "hvals", "hgetAll", "hscan",
+            "llen", "lrange", "lindex",
+            "smembers", "sismember", "scard", "srandmember", "sscan", "sinter", "sunion", "sdiff",
+            "zrange", "zrank", "zrevrank", "zrevrange", "zrangeWithScores", "zrevrangeWithScores", "zcard",
+            "zscore", "zcount", "zrangeByScore", "zrevrangeByScore", "zrangeByScoreWithScores",
+            "zrevrangeByScoreWithScores", "zlexcount", "zrangeByLex", "zscan",
+            "pfcount", "mget")));
+
+    /**
+     * 重复执行时结果与回复都不变的命令，连接失败时可以在新连接上重试；
+     * del、hset、sadd等重复执行后状态不变但回复不同（如删除数变为0），不重试；
+     * 带NX/XX的set使用单独的命令名，不重试
+     */
+    protected static final Set<String> IDEMPOTENT_COMMANDS;
+
+    static {
+        Set<String> idempotent = new HashSet<>(READ_COMMANDS);
+        idempotent.addAll(Arrays.asList("set", "setex", "mset", "expire", "expireAt", "setrange", "hmset",
+                "lset", "ltrim"));
+        IDEMPOTENT_COMMANDS = Collections.unmodifiableSet(idempotent);
+    }
+
+    protected volatile Pool<J> pool;
+
+    /**
+     * 延迟模式下首次使用时创建连接池
+     */
+    private Supplier<Pool<J>> poolSupplier;
+
+    /**
+     * 预热时同时打开的连接数，通常与连接池的minIdle一致
+     */
+    private int warmUpConnections;
+
+    private int warmUpParallelism = 8;
+
+    private boolean warmUpPing = true;
+
+    private volatile CompletableFuture<Integer> warmUp;
+
+    /**
+     * 幂等命令因连接断开失败时的重试次数
+     */
+    private int connectionRetries = 1;
+
+    private boolean retryOnTimeout;
+
+    /**
+     * 每次管道往返最多发送的命令数
+     */
+    private int pipelineBatchSize = 1000;
+
+    /**
+     * 多key命令按分片或槽并行执行所用的线程池
+     */
+    private volatile ExecutorService scatterExecutor;
+
+    /**
+     * 默认并行线程池的线程数上限
+     */
+    private int scatterThreads = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+    /**
+     * 按命令的耗时统计，为null时不统计
+     */
+    private volatile CommandMetrics metrics;
+
+    /**
+     * 慢命令日志，为null时不记录
+     */
+    private volatile SlowLog slowLog;
+
+    /**
+     * 连接池的熔断器，为null时不熔断
+     */
+    private volatile CircuitBreaker circuitBreaker;
 
     /**
      * @param pool the pool to set
@@ -44,6 +142,146 @@ public abstract class AbstractJedisAdapter<J extends JedisCommands & AutoCloseab
         this.pool = pool;
     }
 
+    /**
+     * 延迟创建连接池，首次使用时才调用supplier，加快应用启动
+     *
+     * @param poolSupplier 创建连接池
+     */
+    public void setPoolSupplier(Supplier<Pool<J>> poolSupplier) {
+        this.poolSupplier = poolSupplier;
+    }
+
+    /**
+     * @return 连接池，延迟模式下首次调用时创建
+     */
+    protected Pool<J> getPool() {
+        Pool<J> pool = this.pool;
+        if (pool == null && poolSupplier != null) {
+            synchronized (this) {
+                if (this.pool == null) {
+                    setPool(poolSupplier.get());
+                }
+                pool = this.pool;
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * 连接池不在借出时检测连接（testOnBorrow=false）时，失效的连接在首次使用失败后被丢弃，
+     * 幂等命令自动换一个连接重试，调用方无感知
+     *
+     * @param connectionRetries 幂等命令因连接断开失败时的重试次数，默认1，0表示不重试
+     */
+    public void setConnectionRetries(int connectionRetries) {
+        this.connectionRetries = connectionRetries;
+    }
+
+    /**
+     * @param retryOnTimeout 读取超时是否也重试，默认否，避免对已经变慢的节点加倍施压
+     */
+    public void setRetryOnTimeout(boolean retryOnTimeout) {
+        this.retryOnTimeout = retryOnTimeout;
+    }
+
+    /**
+     * @param warmUpConnections 预热时同时打开的连接数，通常与连接池的minIdle一致，0表示不预热；
+     *                          不能超过连接池的maxTotal，否则预热会一直等待可用连接
+     */
+    public void setWarmUpConnections(int warmUpConnections) {
+        this.warmUpConnections = warmUpConnections;
+    }
+
+    /**
+     * @param warmUpParallelism 预热时并行建立连接的线程数，默认8
+     */
+    public void setWarmUpParallelism(int warmUpParallelism) {
+        this.warmUpParallelism = warmUpParallelism;
+    }
+
+    /**
+     * @param warmUpPing 预热时是否在每个连接上PING，默认是
+     */
+    public void setWarmUpPing(boolean warmUpPing) {
+        this.warmUpPing = warmUpPing;
+    }
+
+    /**
+     * @param scatterExecutor 多key命令按分片或槽并行执行所用的线程池
+     */
+    public void setScatterExecutor(ExecutorService scatterExecutor) {
+        this.scatterExecutor = scatterExecutor;
+    }
+
+    /**
+     * @param scatterThreads 未设置线程池时，默认线程池的线程数上限；线程全忙时由调用方线程执行
+     */
+    public void setScatterThreads(int scatterThreads) {
+        this.scatterThreads = scatterThreads;
+    }
+
+    /**
+     * @param metrics 按命令的耗时统计，为null时关闭统计
+     */
+    public void setMetrics(CommandMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public CommandMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @param slowLog 慢命令日志，为null时不记录
+     */
+    public void setSlowLog(SlowLog slowLog) {
+        this.slowLog = slowLog;
+    }
+
+    public SlowLog getSlowLog() {
+        return slowLog;
+    }
+
+    /**
+     * @param circuitBreaker 连接池的熔断器，按等待连接的耗时与连接失败判断是否熔断
+     */
+    public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * 将连接池以外的设置复制到同类适配器，派生适配器（如其他库）与当前适配器行为一致
+     *
+     * @param target 派生的适配器
+     */
+    protected void copySettings(AbstractJedisAdapter<J> target) {
+        target.warmUpConnections = warmUpConnections;
+        target.warmUpParallelism = warmUpParallelism;
+        target.warmUpPing = warmUpPing;
+        target.connectionRetries = connectionRetries;
+        target.retryOnTimeout = retryOnTimeout;
+        target.pipelineBatchSize = pipelineBatchSize;
+        target.scatterExecutor = scatterExecutor;
+        target.scatterThreads = scatterThreads;
+        target.metrics = metrics;
+        target.slowLog = slowLog;
+        target.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * @param pipelineBatchSize the pipelineBatchSize to set
+     */
+    public void setPipelineBatchSize(int pipelineBatchSize) {
+        if (pipelineBatchSize <= 0) {
+            throw new IllegalArgumentException("pipelineBatchSize must be positive");
+        }
+        this.pipelineBatchSize = pipelineBatchSize;
+    }
+
     /**
      * 在python中eval代表有返回值的执行，所以改用eval
      *
@@ -51,9 +289,504 @@ public abstract class AbstractJedisAdapter<J extends JedisCommands & AutoCloseab
      * @param <T> 返回数据泛型
      * @return
      */
-    protected abstract <T> T eval(Function<J, T> fun);
+    public <T> T eval(Function<J, T> fun) {
+        return eval("custom", fun);
+    }
 
-    protected abstract void exec(Consumer<J> fun);
+    public void exec(Consumer<J> fun) {
+        eval("custom", jedis -> {
+            fun.accept(jedis);
+            return null;
+        });
+    }
+
+    protected <T> T eval(String command, Function<J, T> fun) {
+        return eval(command, null, null, fun);
+    }
+
+    protected <T> T eval(String command, Object key, Function<J, T> fun) {
+        return eval(command, key, null, fun);
+    }
+
+    /**
+     * 获取连接、执行并归还连接；开启统计或慢日志时分别记录等待连接与命令往返的耗时，
+     * key与参数只在慢日志记录时才使用；设置熔断器后，熔断打开或并发已满时不等待连接池，直接拒绝
+     *
+     * @param command 统计使用的命令名
+     * @param key     key或key数组
+     * @param args    参数，无参数时为null
+     * @param fun     执行表达式
+     * @param <T>     返回数据泛型
+     * @return
+     */
+    protected <T> T eval(String command, Object key, Object args, Function<J, T> fun) {
+        int retries = connectionRetries;
+        if (retries <= 0 || !IDEMPOTENT_COMMANDS.contains(command)) {
+            return execute(command, key, args, fun);
+        }
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return execute(command, key, args, fun);
+            } catch (JedisConnectionException e) {
+                if (attempt >= retries || !isRetryable(e)) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * 已借到连接、在连接上读写时断开才重试；借不到连接、熔断拒绝、连接被拒绝时不重试
+     */
+    private boolean isRetryable(JedisConnectionException e) {
+        if (e instanceof CircuitBreakerOpenException) {
+            return false;
+        }
+        for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof NoSuchElementException || cause instanceof ConnectException
+                    || (cause instanceof SocketTimeoutException && !retryOnTimeout)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 不重试地执行，记录统计、慢日志并经过熔断器
+     */
+    protected <T> T execute(String command, Object key, Object args, Function<J, T> fun) {
+        CommandMetrics metrics = this.metrics;
+        SlowLog slowLog = this.slowLog;
+        CircuitBreaker breaker = this.circuitBreaker;
+        if (metrics == null && slowLog == null && breaker == null) {
+            J jedis = borrow();
+            try {
+                prepare(jedis);
+                return fun.apply(jedis);
+            } finally {
+                release(jedis);
+            }
+        }
+        int probe = breaker != null ? breaker.acquire() : 0;
+        long start = System.nanoTime();
+        J jedis;
+        try {
+            jedis = borrow();
+        } catch (RuntimeException e) {
+            long borrowNanos = System.nanoTime() - start;
+            if (breaker != null) {
+                breaker.record(probe, borrowNanos, e);
+            }
+            if (metrics != null) {
+                metrics.record(command, borrowNanos, 0, e);
+            }
+            if (slowLog != null) {
+                slowLog.record(command, key, args, null, borrowNanos, 0, e);
+            }
+            throw e;
+        }
+        long borrowed = System.nanoTime();
+        if (metrics != null) {
+            metrics.started();
+        }
+        T result = null;
+        RuntimeException error = null;
+        try {
+            prepare(jedis);
+            result = fun.apply(jedis);
+            return result;
+        } catch (RuntimeException e) {
+            error = e;
+            throw e;
+        } finally {
+            long roundTripNanos = System.nanoTime() - borrowed;
+            if (metrics != null) {
+                metrics.finished(command, borrowed - start, roundTripNanos, error);
+            }
+            if (slowLog != null) {
+                slowLog.record(command, key, args, result, borrowed - start, roundTripNanos, error);
+            }
+            if (breaker != null) {
+                breaker.record(probe, borrowed - start, error);
+            }
+            release(jedis);
+        }
+    }
+
+    /**
+     * @return 从连接池借出的连接
+     */
+    protected J borrow() {
+        return getPool().getResource();
+    }
+
+    /**
+     * 预热时检查连接可用
+     *
+     * @param jedis 连接
+     */
+    protected void ping(J jedis) {
+    }
+
+    /**
+     * 并行打开warmUpConnections个连接，完成准备（如SELECT）及PING后全部归还连接池，
+     * 使首批请求不再承担建立连接与认证的开销。可作为Spring的init-method
+     *
+     * @return 成功预热的连接数
+     */
+    public int warmUp() {
+        try {
+            return warmUpAsync().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new JedisException(e.getCause());
+        }
+    }
+
+    /**
+     * 在后台预热，重复调用返回同一次预热
+     *
+     * @return 成功预热的连接数
+     */
+    public synchronized CompletableFuture<Integer> warmUpAsync() {
+        if (warmUp == null) {
+            warmUp = CompletableFuture.supplyAsync(this::openConnections, runnable -> {
+                Thread thread = new Thread(runnable, "jedis-warm-up");
+                thread.setDaemon(true);
+                thread.start();
+            });
+        }
+        return warmUp;
+    }
+
+    /**
+     * @return 预热已完成，或不需要预热
+     */
+    public boolean isReady() {
+        CompletableFuture<Integer> warmUp = this.warmUp;
+        return warmUp == null ? warmUpConnections <= 0 : warmUp.isDone();
+    }
+
+    /**
+     * 等待预热完成，尚未开始时先开始预热
+     *
+     * @param timeout 等待时长
+     * @param unit    时长单位
+     * @return 是否已就绪
+     */
+    public boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException {
+        try {
+            warmUpAsync().get(timeout, unit);
+        } catch (ExecutionException e) {
+            // 预热失败不影响就绪，连接在使用时再建立
+        } catch (TimeoutException e) {
+            return false;
+        }
+        return true;
+    }
+
+    private int openConnections() {
+        int connections = warmUpConnections;
+        if (connections <= 0) {
+            return 0;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(connections, warmUpParallelism),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "jedis-warm-up");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        List<J> opened = Collections.synchronizedList(new ArrayList<>(connections));
+        List<CompletableFuture<Void>> futures = new ArrayList<>(connections);
+        try {
+            for (int i = 0; i < connections; i++) {
+                futures.add(CompletableFuture.runAsync(() -> {
+                    // 连接在全部打开后才归还，保证打开的是不同的连接
+                    J jedis = borrow();
+                    opened.add(jedis);
+                    prepare(jedis);
+                    if (warmUpPing) {
+                        ping(jedis);
+                    }
+                }, executor));
+            }
+            int warmed = 0;
+            RuntimeException failure = null;
+            for (CompletableFuture<Void> future : futures) {
+                try {
+                    future.join();
+                    warmed++;
+                } catch (CompletionException e) {
+                    failure = e.getCause() instanceof RuntimeException
+                            ? (RuntimeException) e.getCause() : new JedisException(e.getCause());
+                }
+            }
+            if (warmed == 0 && failure != null) {
+                throw failure;
+            }
+            return warmed;
+        } finally {
+            for (J jedis : opened) {
+                release(jedis);
+            }
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * 连接借出后、执行命令前的准备
+     *
+     * @param jedis 连接
+     */
+    protected void prepare(J jedis) {
+    }
+
+    /**
+     * @param jedis 归还连接池的连接
+     */
+    protected void release(J jedis) {
+        try {
+            jedis.close();
+        } catch (Exception e) {
+            throw new JedisException(e);
+        }
+    }
+
+    /**
+     * 在一个连接的管道上执行命令并同步
+     *
+     * @param commands  在管道上排队的命令
+     * @param returnAll 是否收集全部结果，不收集时返回null
+     * @return 按命令顺序排列的结果
+     */
+    protected abstract List<Object> pipelined(Consumer<RedisPipeline> commands, boolean returnAll);
+
+    /**
+     * 取出分组内各key及其后续参数
+     *
+     * @param keys      key及其后续参数
+     * @param positions 分组内key的位置
+     * @param step      每个key占用的参数个数
+     * @return 分组的参数
+     */
+    protected <E> E[] select(E[] keys, List<Integer> positions, int step) {
+        E[] selected = Arrays.copyOf(keys, positions.size() * step);
+        for (int i = 0; i < positions.size(); i++) {
+            System.arraycopy(keys, positions.get(i), selected, i * step, step);
+        }
+        return selected;
+    }
+
+    /**
+     * 每个分组一次往返，多个分组并行执行，当前线程负责第一个分组
+     *
+     * @param groups 分组（分片或槽）与组内key的位置
+     * @param action 在一个分组上执行的操作
+     * @param <K>    分组类型
+     */
+    protected <K> void forEachGroup(Map<K, List<Integer>> groups, BiConsumer<K, List<Integer>> action) {
+        if (groups.isEmpty()) {
+            return;
+        }
+        if (groups.size() == 1) {
+            Map.Entry<K, List<Integer>> group = groups.entrySet().iterator().next();
+            action.accept(group.getKey(), group.getValue());
+            return;
+        }
+        ExecutorService executor = scatterExecutor();
+        List<CompletableFuture<Void>> futures = new ArrayList<>(groups.size());
+        Map.Entry<K, List<Integer>> first = null;
+        for (Map.Entry<K, List<Integer>> group : groups.entrySet()) {
+            if (first == null) {
+                first = group;
+            } else {
+                futures.add(CompletableFuture.runAsync(() -> action.accept(group.getKey(), group.getValue()), executor));
+            }
+        }
+        RuntimeException failure = null;
+        try {
+            action.accept(first.getKey(), first.getValue());
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+        // 当前线程的分组失败时也等待其他分组结束，调用方返回后不再有线程写入结果
+        for (CompletableFuture<Void> future : futures) {
+            try {
+                future.join();
+            } catch (CompletionException e) {
+                RuntimeException cause = e.getCause() instanceof RuntimeException
+                        ? (RuntimeException) e.getCause() : new JedisException(e.getCause());
+                if (failure == null) {
+                    failure = cause;
+                } else if (failure != cause) {
+                    failure.addSuppressed(cause);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private ExecutorService scatterExecutor() {
+        if (scatterExecutor == null) {
+            synchronized (this) {
+                if (scatterExecutor == null) {
+                    // 线程数有上限，全忙时由调用方线程执行该分组，不排队也不无限创建线程
+                    ThreadPoolExecutor executor = new ThreadPoolExecutor(scatterThreads, scatterThreads,
+                            60, TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
+                        Thread thread = new Thread(runnable, "jedis-scatter");
+                        thread.setDaemon(true);
+                        return thread;
+                    }, new ThreadPoolExecutor.CallerRunsPolicy());
+                    executor.allowCoreThreadTimeOut(true);
+                    scatterExecutor = executor;
+                }
+            }
+        }
+        return scatterExecutor;
+    }
+
+    /**
+     * 以byte[]读写的命令，与当前适配器共用连接池
+     *
+     * @return 二进制适配器，不支持时返回null
+     */
+    public BinaryJedisAdapter binary() {
+        return null;
+    }
+
+    /**
+     * 在所有节点上并行SCAN，以有界缓冲流式返回key
+     *
+     * @param options 匹配条件、批次及限速设置
+     * @return key迭代器，使用完毕需要close
+     */
+    public abstract KeyScanner scanKeys(ScanOptions options);
+
+    /**
+     * 以SCAN代替阻塞的KEYS命令收集匹配的key
+     *
+     * @param pattern 匹配条件
+     * @return 匹配的key
+     */
+    protected Set<String> scanAll(String pattern) {
+        Set<String> keys = new HashSet<>();
+        try (KeyScanner scanner = scanKeys(new ScanOptions().setMatch(pattern))) {
+            scanner.forEachRemaining(keys::add);
+        }
+        return keys;
+    }
+
+    @Override
+    public Object evalScript(LuaScript script, List<String> keys, List<String> args) {
+        Object key = keys.size() == 1 ? keys.get(0) : keys.toArray(new String[keys.size()]);
+        return eval("evalsha", key, args, jedis -> script.execute(keyNode(jedis, keys), keys, args));
+    }
+
+    /**
+     * 脚本或事务涉及的key所在的节点，不支持的适配器抛出UnsupportedOperationException
+     *
+     * @param jedis 借出的连接
+     * @param keys  脚本的KEYS或事务涉及的key
+     * @return 执行脚本或事务的节点连接
+     */
+    protected Jedis keyNode(J jedis, List<String> keys) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support scripts or transactions");
+    }
+
+    @Override
+    public List<Object> transaction(Collection<String> keys, Map<String, String> expected,
+                                    Consumer<RedisPipeline> commands) {
+        List<String> all = new ArrayList<>(keys);
+        for (String key : expected.keySet()) {
+            if (!keys.contains(key)) {
+                all.add(key);
+            }
+        }
+        Object key = all.size() == 1 ? all.get(0) : all.toArray(new String[all.size()]);
+        return eval("exec", key, expected, jedis -> transaction(keyNode(jedis, all), expected, commands));
+    }
+
+    /**
+     * 在节点连接上执行事务：有检查值时以一次管道往返发送WATCH与MGET，不符时放弃；
+     * 然后MULTI、排队的命令与EXEC在一次往返中发送
+     *
+     * @param node     节点连接
+     * @param expected 被WATCH的key及其应有的值
+     * @param commands 在事务上排队命令
+     * @return EXEC的结果，检查不通过或WATCH的key在提交前被修改时为null
+     */
+    protected static List<Object> transaction(Jedis node, Map<String, String> expected,
+                                              Consumer<RedisPipeline> commands) {
+        if (!expected.isEmpty()) {
+            String[] watched = expected.keySet().toArray(new String[expected.size()]);
+            Pipeline pipeline = node.pipelined();
+            pipeline.watch(watched);
+            Response<List<String>> current = pipeline.mget(watched);
+            pipeline.sync();
+            for (int i = 0; i < watched.length; i++) {
+                if (!Objects.equals(expected.get(watched[i]), current.get().get(i))) {
+                    node.unwatch();
+                    return null;
+                }
+            }
+        }
+        Transaction transaction = node.multi();
+        commands.accept(transaction);
+        return transaction.exec();
+    }
+
+    @Override
+    public Boolean lock(String key, String value, int seconds) {
+        return Long.valueOf(1).equals(evalScript(ScriptRegistry.LOCK,
+                Collections.singletonList(key), Arrays.asList(value, String.valueOf(seconds))));
+    }
+
+    @Override
+    public Boolean compareAndSet(String key, String expect, String update) {
+        return Long.valueOf(1).equals(evalScript(ScriptRegistry.COMPARE_AND_SET,
+                Collections.singletonList(key), Arrays.asList(expect, update)));
+    }
+
+    @Override
+    public Boolean compareAndDelete(String key, String expect) {
+        return Long.valueOf(1).equals(evalScript(ScriptRegistry.COMPARE_AND_DELETE,
+                Collections.singletonList(key), Collections.singletonList(expect)));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<String> popBatch(String key, int count) {
+        return (List<String>) evalScript(ScriptRegistry.POP_BATCH,
+                Collections.singletonList(key), Collections.singletonList(String.valueOf(count)));
+    }
+
+    @Override
+    public List<Object> pipelined(Consumer<RedisPipeline> commands) {
+        return pipelined(commands, true);
+    }
+
+    @Override
+    public <E, T> List<T> pipelined(Collection<E> items, BiFunction<RedisPipeline, E, Response<T>> command) {
+        List<T> results = new ArrayList<>(items.size());
+        List<Response<T>> responses = new ArrayList<>(Math.min(items.size(), pipelineBatchSize));
+        Iterator<E> iterator = items.iterator();
+        while (iterator.hasNext()) {
+            responses.clear();
+            pipelined(pipeline -> {
+                for (int i = 0; i < pipelineBatchSize && iterator.hasNext(); i++) {
+                    responses.add(command.apply(pipeline, iterator.next()));
+                }
+            }, false);
+            for (Response<T> response : responses) {
+                results.add(response.get());
+            }
+        }
+        return results;
+    }
 
 
     /**
@@ -61,459 +794,459 @@ public abstract class AbstractJedisAdapter<J extends JedisCommands & AutoCloseab
      */
     @Override
     public String set(String key, String value) {
-        return eval(jedis -> jedis.set(key, value));
+        return eval("set", key, value, jedis -> jedis.set(key, value));
     }
 
     @Override
     public String get(String key) {
-        return eval(jedis -> jedis.get(key));
+        return eval("get", key, jedis -> jedis.get(key));
     }
 
 
     @Override
     public String setex(String key, int seconds, String value) {
-        return eval(jedis -> jedis.setex(key, seconds, value));
+        return eval("setex", key, value, jedis -> jedis.setex(key, seconds, value));
     }
 
     @Override
     public Long setnx(String key, String value) {
-        return eval(jedis -> jedis.setnx(key, value));
+        return eval("setnx", key, value, jedis -> jedis.setnx(key, value));
     }
 
     public String set(String key, String value, String nxxx, String expx, long time) {
-        return eval(jedis -> jedis.set(key, value, nxxx, expx, time));
+        return eval("set" + nxxx.toUpperCase(), key, value, jedis -> jedis.set(key, value, nxxx, expx, time));
     }
 
     public Boolean exists(String key) {
-        return eval(jedis -> jedis.exists(key));
+        return eval("exists", key, jedis -> jedis.exists(key));
     }
 
     public Long persist(String key) {
-        return eval(jedis -> jedis.persist(key));
+        return eval("persist", key, jedis -> jedis.persist(key));
     }
 
     public String type(String key) {
-        return eval(jedis -> jedis.type(key));
+        return eval("type", key, jedis -> jedis.type(key));
     }
 
     public Long expire(String key, int seconds) {
-        return eval(jedis -> jedis.expire(key, seconds));
+        return eval("expire", key, jedis -> jedis.expire(key, seconds));
     }
 
     public Long expireAt(String key, long unixTime) {
-        return eval(jedis -> jedis.expireAt(key, unixTime));
+        return eval("expireAt", key, jedis -> jedis.expireAt(key, unixTime));
     }
 
     public Long ttl(String key) {
-        return eval(jedis -> jedis.ttl(key));
+        return eval("ttl", key, jedis -> jedis.ttl(key));
     }
 
     public Boolean setbit(String key, long offset, boolean value) {
-        return eval(jedis -> jedis.setbit(key, offset, value));
+        return eval("setbit", key, value, jedis -> jedis.setbit(key, offset, value));
     }
 
     public Boolean setbit(String key, long offset, String value) {
-        return eval(jedis -> jedis.setbit(key, offset, value));
+        return eval("setbit", key, value, jedis -> jedis.setbit(key, offset, value));
     }
 
     public Boolean getbit(String key, long offset) {
-        return eval(jedis -> jedis.getbit(key, offset));
+        return eval("getbit", key, jedis -> jedis.getbit(key, offset));
     }
 
     public Long setrange(String key, long offset, String value) {
-        return eval(jedis -> jedis.setrange(key, offset, value));
+        return eval("setrange", key, value, jedis -> jedis.setrange(key, offset, value));
     }
 
     public String getrange(String key, long startOffset, long endOffset) {
-        return eval(jedis -> jedis.getrange(key, startOffset, endOffset));
+        return eval("getrange", key, jedis -> jedis.getrange(key, startOffset, endOffset));
     }
 
     public String getSet(String key, String value) {
-        return eval(jedis -> jedis.getSet(key, value));
+        return eval("getSet", key, value, jedis -> jedis.getSet(key, value));
     }
 
     public Long decrBy(String key, long integer) {
-        return eval(jedis -> jedis.decrBy(key, integer));
+        return eval("decrBy", key, jedis -> jedis.decrBy(key, integer));
     }
 
     public Long decr(String key) {
-        return eval(jedis -> jedis.decr(key));
+        return eval("decr", key, jedis -> jedis.decr(key));
     }
 
     public Long incrBy(String key, long integer) {
-        return eval(jedis -> jedis.incrBy(key, integer));
+        return eval("incrBy", key, jedis -> jedis.incrBy(key, integer));
     }
 
     public Long incr(String key) {
-        return eval(jedis -> jedis.incr(key));
+        return eval("incr", key, jedis -> jedis.incr(key));
     }
 
     public Long append(String key, String value) {
-        return eval(jedis -> jedis.append(key, value));
+        return eval("append", key, value, jedis -> jedis.append(key, value));
     }
 
     public String substr(String key, int start, int end) {
-        return eval(jedis -> jedis.substr(key, start, end));
+        return eval("substr", key, jedis -> jedis.substr(key, start, end));
     }
 
     public Long hset(String key, String field, String value) {
-        return eval(jedis -> jedis.hset(key, field, value));
+        return eval("hset", key, value, jedis -> jedis.hset(key, field, value));
     }
 
     public String hget(String key, String field) {
-        return eval(jedis -> jedis.hget(key, field));
+        return eval("hget", key, jedis -> jedis.hget(key, field));
     }
 
     public Long hsetnx(String key, String field, String value) {
-        return eval(jedis -> jedis.hsetnx(key, field, value));
+        return eval("hsetnx", key, value, jedis -> jedis.hsetnx(key, field, value));
     }
 
     public String hmset(String key, Map<String, String> hash) {
-        return eval(jedis -> jedis.hmset(key, hash));
+        return eval("hmset", key, hash, jedis -> jedis.hmset(key, hash));
     }
 
     public List<String> hmget(String key, String... fields) {
-        return eval(jedis -> jedis.hmget(key, fields));
+        return eval("hmget", key, jedis -> jedis.hmget(key, fields));
     }
 
     public Long hincrBy(String key, String field, long value) {
-        return eval(jedis -> jedis.hincrBy(key, field, value));
+        return eval("hincrBy", key, value, jedis -> jedis.hincrBy(key, field, value));
     }
 
     public Boolean hexists(String key, String field) {
-        return eval(jedis -> jedis.hexists(key, field));
+        return eval("hexists", key, jedis -> jedis.hexists(key, field));
     }
 
     public Long hdel(String key, String... field) {
-        return eval(jedis -> jedis.hdel(key, field));
+        return eval("hdel", key, jedis -> jedis.hdel(key, field));
     }
 
     public Long hlen(String key) {
-        return eval(jedis -> jedis.hlen(key));
+        return eval("hlen", key, jedis -> jedis.hlen(key));
     }
 
     public Set<String> hkeys(String key) {
-        return eval(jedis -> jedis.hkeys(key));
+        return eval("hkeys", key, jedis -> jedis.hkeys(key));
     }
 
     public List<String> hvals(String key) {
-        return eval(jedis -> jedis.hvals(key));
+        return eval("hvals", key, jedis -> jedis.hvals(key));
     }
 
     public Map<String, String> hgetAll(String key) {
-        return eval(jedis -> jedis.hgetAll(key));
+        return eval("hgetAll", key, jedis -> jedis.hgetAll(key));
     }
 
     public Long rpush(String key, String... string) {
-        return eval(jedis -> jedis.rpush(key, string));
+        return eval("rpush", key, string, jedis -> jedis.rpush(key, string));
     }
 
     public Long lpush(String key, String... string) {
-        return eval(jedis -> jedis.lpush(key, string));
+        return eval("lpush", key, string, jedis -> jedis.lpush(key, string));
     }
 
     public Long llen(String key) {
-        return eval(jedis -> jedis.llen(key));
+        return eval("llen", key, jedis -> jedis.llen(key));
     }
 
     public List<String> lrange(String key, long start, long end) {
-        return eval(jedis -> jedis.lrange(key, start, end));
+        return eval("lrange", key, jedis -> jedis.lrange(key, start, end));
     }
 
     public String ltrim(String key, long start, long end) {
-        return eval(jedis -> jedis.ltrim(key, start, end));
+        return eval("ltrim", key, jedis -> jedis.ltrim(key, start, end));
     }
 
     public String lindex(String key, long index) {
-        return eval(jedis -> jedis.lindex(key, index));
+        return eval("lindex", key, jedis -> jedis.lindex(key, index));
     }
 
     public String lset(String key, long index, String value) {
-        return eval(jedis -> jedis.lset(key, index, value));
+        return eval("lset", key, value, jedis -> jedis.lset(key, index, value));
     }
 
     public Long lrem(String key, long count, String value) {
-        return eval(jedis -> jedis.lrem(key, count, value));
+        return eval("lrem", key, value, jedis -> jedis.lrem(key, count, value));
     }
 
     public String lpop(String key) {
-        return eval(jedis -> jedis.lpop(key));
+        return eval("lpop", key, jedis -> jedis.lpop(key));
     }
 
     public String rpop(String key) {
-        return eval(jedis -> jedis.rpop(key));
+        return eval("rpop", key, jedis -> jedis.rpop(key));
     }
 
     public Long sadd(String key, String... member) {
-        return eval(jedis -> jedis.sadd(key, member));
+        return eval("sadd", key, member, jedis -> jedis.sadd(key, member));
     }
 
     public Set<String> smembers(String key) {
-        return eval(jedis -> jedis.smembers(key));
+        return eval("smembers", key, jedis -> jedis.smembers(key));
     }
 
     public Long srem(String key, String... member) {
-        return eval(jedis -> jedis.srem(key, member));
+        return eval("srem", key, member, jedis -> jedis.srem(key, member));
     }
 
     public String spop(String key) {
-        return eval(jedis -> jedis.spop(key));
+        return eval("spop", key, jedis -> jedis.spop(key));
     }
 
     public Long scard(String key) {
-        return eval(jedis -> jedis.scard(key));
+        return eval("scard", key, jedis -> jedis.scard(key));
     }
 
     public Boolean sismember(String key, String member) {
-        return eval(jedis -> jedis.sismember(key, member));
+        return eval("sismember", key, member, jedis -> jedis.sismember(key, member));
     }
 
     public String srandmember(String key) {
-        return eval(jedis -> jedis.srandmember(key));
+        return eval("srandmember", key, jedis -> jedis.srandmember(key));
     }
 
     public List<String> srandmember(String key, int count) {
-        return eval(jedis -> jedis.srandmember(key, count));
+        return eval("srandmember", key, jedis -> jedis.srandmember(key, count));
     }
 
     public Long strlen(String key) {
-        return eval(jedis -> jedis.strlen(key));
+        return eval("strlen", key, jedis -> jedis.strlen(key));
     }
 
     public Long zadd(String key, double score, String member) {
-        return eval(jedis -> jedis.zadd(key, score, member));
+        return eval("zadd", key, member, jedis -> jedis.zadd(key, score, member));
     }
 
     public Long zadd(String key, Map<String, Double> scoreMembers) {
-        return eval(jedis -> jedis.zadd(key, scoreMembers));
+        return eval("zadd", key, scoreMembers, jedis -> jedis.zadd(key, scoreMembers));
     }
 
     public Set<String> zrange(String key, long start, long end) {
-        return eval(jedis -> jedis.zrange(key, start, end));
+        return eval("zrange", key, jedis -> jedis.zrange(key, start, end));
     }
 
     public Long zrem(String key, String... member) {
-        return eval(jedis -> jedis.zrem(key, member));
+        return eval("zrem", key, member, jedis -> jedis.zrem(key, member));
     }
 
     public Double zincrby(String key, double score, String member) {
-        return eval(jedis -> jedis.zincrby(key, score, member));
+        return eval("zincrby", key, member, jedis -> jedis.zincrby(key, score, member));
     }
 
     public Long zrank(String key, String member) {
-        return eval(jedis -> jedis.zrank(key, member));
+        return eval("zrank", key, member, jedis -> jedis.zrank(key, member));
     }
 
     public Long zrevrank(String key, String member) {
-        return eval(jedis -> jedis.zrevrank(key, member));
+        return eval("zrevrank", key, member, jedis -> jedis.zrevrank(key, member));
     }
 
     public Set<String> zrevrange(String key, long start, long end) {
-        return eval(jedis -> jedis.zrevrange(key, start, end));
+        return eval("zrevrange", key, jedis -> jedis.zrevrange(key, start, end));
     }
 
     public Set<Tuple> zrangeWithScores(String key, long start, long end) {
-        return eval(jedis -> jedis.zrangeWithScores(key, start, end));
+        return eval("zrangeWithScores", key, jedis -> jedis.zrangeWithScores(key, start, end));
     }
 
     public Set<Tuple> zrevrangeWithScores(String key, long start, long end) {
-        return eval(jedis -> jedis.zrevrangeWithScores(key, start, end));
+        return eval("zrevrangeWithScores", key, jedis -> jedis.zrevrangeWithScores(key, start, end));
     }
 
     public Long zcard(String key) {
-        return eval(jedis -> jedis.zcard(key));
+        return eval("zcard", key, jedis -> jedis.zcard(key));
     }
 
     public Double zscore(String key, String member) {
-        return eval(jedis -> jedis.zscore(key, member));
+        return eval("zscore", key, member, jedis -> jedis.zscore(key, member));
     }
 
     public List<String> sort(String key) {
-        return eval(jedis -> jedis.sort(key));
+        return eval("sort", key, jedis -> jedis.sort(key));
     }
 
     public List<String> sort(String key, SortingParams sortingParameters) {
-        return eval(jedis -> jedis.sort(key, sortingParameters));
+        return eval("sort", key, jedis -> jedis.sort(key, sortingParameters));
     }
 
     public Long zcount(String key, double min, double max) {
-        return eval(jedis -> jedis.zcount(key, min, max));
+        return eval("zcount", key, jedis -> jedis.zcount(key, min, max));
     }
 
     public Long zcount(String key, String min, String max) {
-        return eval(jedis -> jedis.zcount(key, min, max));
+        return eval("zcount", key, jedis -> jedis.zcount(key, min, max));
     }
 
     public Set<String> zrangeByScore(String key, double min, double max) {
-        return eval(jedis -> jedis.zrangeByScore(key, min, max));
+        return eval("zrangeByScore", key, jedis -> jedis.zrangeByScore(key, min, max));
     }
 
     public Set<String> zrangeByScore(String key, String min, String max) {
-        return eval(jedis -> jedis.zrangeByScore(key, min, max));
+        return eval("zrangeByScore", key, jedis -> jedis.zrangeByScore(key, min, max));
     }
 
     public Set<String> zrevrangeByScore(String key, double max, double min) {
-        return eval(jedis -> jedis.zrevrangeByScore(key, max, min));
+        return eval("zrevrangeByScore", key, jedis -> jedis.zrevrangeByScore(key, max, min));
     }
 
     public Set<String> zrangeByScore(String key, double min, double max, int offset, int count) {
-        return eval(jedis -> jedis.zrangeByScore(key, min, max, offset, count));
+        return eval("zrangeByScore", key, jedis -> jedis.zrangeByScore(key, min, max, offset, count));
     }
 
     public Set<String> zrevrangeByScore(String key, String max, String min) {
-        return eval(jedis -> jedis.zrevrangeByScore(key, max, min));
+        return eval("zrevrangeByScore", key, jedis -> jedis.zrevrangeByScore(key, max, min));
     }
 
     public Set<String> zrangeByScore(String key, String min, String max, int offset, int count) {
-        return eval(jedis -> jedis.zrangeByScore(key, min, max, offset, count));
+        return eval("zrangeByScore", key, jedis -> jedis.zrangeByScore(key, min, max, offset, count));
     }
 
     public Set<String> zrevrangeByScore(String key, double max, double min, int offset, int count) {
-        return eval(jedis -> jedis.zrevrangeByScore(key, max, min, offset, count));
+        return eval("zrevrangeByScore", key, jedis -> jedis.zrevrangeByScore(key, max, min, offset, count));
     }
 
     public Set<Tuple> zrangeByScoreWithScores(String key, double min, double max) {
-        return eval(jedis -> jedis.zrangeByScoreWithScores(key, min, max));
+        return eval("zrangeByScoreWithScores", key, jedis -> jedis.zrangeByScoreWithScores(key, min, max));
     }
 
     public Set<Tuple> zrevrangeByScoreWithScores(String key, double max, double min) {
-        return eval(jedis -> jedis.zrevrangeByScoreWithScores(key, max, min));
+        return eval("zrevrangeByScoreWithScores", key, jedis -> jedis.zrevrangeByScoreWithScores(key, max, min));
     }
 
     public Set<Tuple> zrangeByScoreWithScores(String key, double min, double max, int offset, int count) {
-        return eval(jedis -> jedis.zrangeByScoreWithScores(key, min, max, offset, count));
+        return eval("zrangeByScoreWithScores", key, jedis -> jedis.zrangeByScoreWithScores(key, min, max, offset, count));
     }
 
     public Set<String> zrevrangeByScore(String key, String max, String min, int offset, int count) {
-        return eval(jedis -> jedis.zrevrangeByScore(key, max, min, offset, count));
+        return eval("zrevrangeByScore", key, jedis -> jedis.zrevrangeByScore(key, max, min, offset, count));
     }
 
     public Set<Tuple> zrangeByScoreWithScores(String key, String min, String max) {
-        return eval(jedis -> jedis.zrangeByScoreWithScores(key, min, max));
+        return eval("zrangeByScoreWithScores", key, jedis -> jedis.zrangeByScoreWithScores(key, min, max));
     }
 
     public Set<Tuple> zrevrangeByScoreWithScores(String key, String max, String min) {
-        return eval(jedis -> jedis.zrevrangeByScoreWithScores(key, max, min));
+        return eval("zrevrangeByScoreWithScores", key, jedis -> jedis.zrevrangeByScoreWithScores(key, max, min));
     }
 
     public Set<Tuple> zrangeByScoreWithScores(String key, String min, String max, int offset, int count) {
-        return eval(jedis -> jedis.zrangeByScoreWithScores(key, min, max, offset, count));
+        return eval("zrangeByScoreWithScores", key, jedis -> jedis.zrangeByScoreWithScores(key, min, max, offset, count));
     }
 
     public Set<Tuple> zrevrangeByScoreWithScores(String key, double max, double min, int offset, int count) {
-        return eval(jedis -> jedis.zrevrangeByScoreWithScores(key, max, min, offset, count));
+        return eval("zrevrangeByScoreWithScores", key, jedis -> jedis.zrevrangeByScoreWithScores(key, max, min, offset, count));
     }
 
     public Set<Tuple> zrevrangeByScoreWithScores(String key, String max, String min, int offset, int count) {
-        return eval(jedis -> jedis.zrevrangeByScoreWithScores(key, max, min, offset, count));
+        return eval("zrevrangeByScoreWithScores", key, jedis -> jedis.zrevrangeByScoreWithScores(key, max, min, offset, count));
     }
 
     public Long zremrangeByRank(String key, long start, long end) {
-        return eval(jedis -> jedis.zremrangeByRank(key, start, end));
+        return eval("zremrangeByRank", key, jedis -> jedis.zremrangeByRank(key, start, end));
     }
 
     public Long zremrangeByScore(String key, double start, double end) {
-        return eval(jedis -> jedis.zremrangeByScore(key, start, end));
+        return eval("zremrangeByScore", key, jedis -> jedis.zremrangeByScore(key, start, end));
     }
 
     public Long zremrangeByScore(String key, String start, String end) {
-        return eval(jedis -> jedis.zremrangeByScore(key, start, end));
+        return eval("zremrangeByScore", key, jedis -> jedis.zremrangeByScore(key, start, end));
     }
 
     public Long zlexcount(String key, String min, String max) {
-        return eval(jedis -> jedis.zlexcount(key, min, max));
+        return eval("zlexcount", key, jedis -> jedis.zlexcount(key, min, max));
     }
 
     public Set<String> zrangeByLex(String key, String min, String max) {
-        return eval(jedis -> jedis.zrangeByLex(key, min, max));
+        return eval("zrangeByLex", key, jedis -> jedis.zrangeByLex(key, min, max));
     }
 
     public Set<String> zrangeByLex(String key, String min, String max, int offset, int count) {
-        return eval(jedis -> jedis.zrangeByLex(key, min, max, offset, count));
+        return eval("zrangeByLex", key, jedis -> jedis.zrangeByLex(key, min, max, offset, count));
     }
 
     public Long zremrangeByLex(String key, String min, String max) {
-        return eval(jedis -> jedis.zremrangeByLex(key, min, max));
+        return eval("zremrangeByLex", key, jedis -> jedis.zremrangeByLex(key, min, max));
     }
 
     public Long linsert(String key, BinaryClient.LIST_POSITION where, String pivot, String value) {
-        return eval(jedis -> jedis.linsert(key, where, pivot, value));
+        return eval("linsert", key, value, jedis -> jedis.linsert(key, where, pivot, value));
     }
 
     public Long lpushx(String key, String... string) {
-        return eval(jedis -> jedis.lpushx(key, string));
+        return eval("lpushx", key, string, jedis -> jedis.lpushx(key, string));
     }
 
     public Long rpushx(String key, String... string) {
-        return eval(jedis -> jedis.rpushx(key, string));
+        return eval("rpushx", key, string, jedis -> jedis.rpushx(key, string));
     }
 
     public List<String> blpop(String arg) {
-        return eval(jedis -> jedis.blpop(arg));
+        return eval("blpop", arg, jedis -> jedis.blpop(arg));
     }
 
     public List<String> blpop(int timeout, String key) {
-        return eval(jedis -> jedis.blpop(timeout, key));
+        return eval("blpop", key, jedis -> jedis.blpop(timeout, key));
     }
 
     public List<String> brpop(String arg) {
-        return eval(jedis -> jedis.brpop(arg));
+        return eval("brpop", arg, jedis -> jedis.brpop(arg));
     }
 
     public List<String> brpop(int timeout, String key) {
-        return eval(jedis -> jedis.brpop(timeout, key));
+        return eval("brpop", key, jedis -> jedis.brpop(timeout, key));
     }
 
     public Long del(String key) {
-        return eval(jedis -> jedis.del(key));
+        return eval("del", key, jedis -> jedis.del(key));
     }
 
     public String echo(String string) {
-        return eval(jedis -> jedis.echo(string));
+        return eval("echo", jedis -> jedis.echo(string));
     }
 
     public Long move(String key, int dbIndex) {
-        return eval(jedis -> jedis.move(key, dbIndex));
+        return eval("move", key, jedis -> jedis.move(key, dbIndex));
     }
 
     public Long bitcount(String key) {
-        return eval(jedis -> jedis.bitcount(key));
+        return eval("bitcount", key, jedis -> jedis.bitcount(key));
     }
 
     public Long bitcount(String key, long start, long end) {
-        return eval(jedis -> jedis.bitcount(key, start, end));
+        return eval("bitcount", key, jedis -> jedis.bitcount(key, start, end));
     }
 
     public ScanResult<Map.Entry<String, String>> hscan(String key, int cursor) {
-        return eval(jedis -> jedis.hscan(key, cursor));
+        return eval("hscan", key, jedis -> jedis.hscan(key, cursor));
     }
 
     public ScanResult<String> sscan(String key, int cursor) {
-        return eval(jedis -> jedis.sscan(key, cursor));
+        return eval("sscan", key, jedis -> jedis.sscan(key, cursor));
     }
 
     public ScanResult<Tuple> zscan(String key, int cursor) {
-        return eval(jedis -> jedis.zscan(key, cursor));
+        return eval("zscan", key, jedis -> jedis.zscan(key, cursor));
     }
 
     public ScanResult<Map.Entry<String, String>> hscan(String key, String cursor) {
-        return eval(jedis -> jedis.hscan(key, cursor));
+        return eval("hscan", key, jedis -> jedis.hscan(key, cursor));
     }
 
     public ScanResult<String> sscan(String key, String cursor) {
-        return eval(jedis -> jedis.sscan(key, cursor));
+        return eval("sscan", key, jedis -> jedis.sscan(key, cursor));
     }
 
     public ScanResult<Tuple> zscan(String key, String cursor) {
-        return eval(jedis -> jedis.zscan(key, cursor));
+        return eval("zscan", key, jedis -> jedis.zscan(key, cursor));
     }
 
     public Long pfadd(String key, String... elements) {
-        return eval(jedis -> jedis.pfadd(key, elements));
+        return eval("pfadd", key, elements, jedis -> jedis.pfadd(key, elements));
     }
 
     public long pfcount(String key) {
-        return eval(jedis -> jedis.pfcount(key));
+        return eval("pfcount", key, jedis -> jedis.pfcount(key));
     }
 
 //*********************************************
@@ -0,0 +1,679 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atter.jedis.adapter;
+
+import redis.clients.jedis.*;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Description:  AsyncJedisAdapter
+ * 与JedisAdapter命令一致的异步适配器，命令在有界执行器上执行并返回CompletableFuture，
+ * 多个查询可并行发出后再组合结果。
+ * 运行时支持虚拟线程时使用虚拟线程，并以信号量限制并发数。
+ * Jedis中已废弃的重载（无超时的blpop/brpop、int游标的scan）不提供异步版本。
+ * Copyright:  2018 CSNT. All rights reserved.
+ * Company:CSNT
+ *
+ * @author wangling
+ * @version 1.0
+ */
+public class AsyncJedisAdapter {
+
+    private final JedisAdapter jedisAdapter;
+
+    private final ExecutorService executor;
+
+    private final Semaphore permits;
+
+    /**
+     * @param jedisAdapter   实际执行命令的适配器
+     * @param maxConcurrency 同时执行的命令数上限，一般不超过连接池的maxTotal
+     */
+    public AsyncJedisAdapter(JedisAdapter jedisAdapter, int maxConcurrency) {
+        this.jedisAdapter = jedisAdapter;
+        ExecutorService virtualThreads = newVirtualThreadExecutor();
+        if (virtualThreads != null) {
+            this.executor = virtualThreads;
+            this.permits = new Semaphore(maxConcurrency);
+        } else {
+            this.executor = new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 60L, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(maxConcurrency * 16), daemonThreads(),
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+            this.permits = null;
+        }
+    }
+
+    /**
+     * 异步执行任意适配器操作
+     *
+     * @param command 在适配器上执行的操作
+     * @param <T>     返回数据泛型
+     * @return 操作结果
+     */
+    public <T> CompletableFuture<T> supply(Function<JedisAdapter, T> command) {
+        if (permits == null) {
+            return CompletableFuture.supplyAsync(() -> command.apply(jedisAdapter), executor);
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            permits.acquireUninterruptibly();
+            try {
+                return command.apply(jedisAdapter);
+            } finally {
+                permits.release();
+            }
+        }, executor);
+    }
+
+    /**
+     * @return 是否运行在虚拟线程上
+     */
+    public boolean isVirtualThreads() {
+        return permits != null;
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * 目标版本为1.8，通过反射使用Executors.newVirtualThreadPerTaskExecutor
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static ThreadFactory daemonThreads() {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "async-jedis-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    public CompletableFuture<String> set(String key, String value) {
+        return supply(adapter -> adapter.set(key, value));
+    }
+
+    public CompletableFuture<String> get(String key) {
+        return supply(adapter -> adapter.get(key));
+    }
+
+    public CompletableFuture<String> setex(String key, int seconds, String value) {
+        return supply(adapter -> adapter.setex(key, seconds, value));
+    }
+
+    public CompletableFuture<Long> setnx(String key, String value) {
+        return supply(adapter -> adapter.setnx(key, value));
+    }
+
+    public CompletableFuture<String> set(String key, String value, String nxxx, String expx, long time) {
+        return supply(adapter -> adapter.set(key, value, nxxx, expx, time));
+    }
+
+    public CompletableFuture<Boolean> exists(String key) {
+        return supply(adapter -> adapter.exists(key));
+    }
+
+    public CompletableFuture<Long> persist(String key) {
+        return supply(adapter -> adapter.persist(key));
+    }
+
+    public CompletableFuture<String> type(String key) {
+        return supply(adapter -> adapter.type(key));
+    }
+
+    public CompletableFuture<Long> expire(String key, int seconds) {
+        return supply(adapter -> adapter.expire(key, seconds));
+    }
+
+    public CompletableFuture<Long> expireAt(String key, long unixTime) {
+        return supply(adapter -> adapter.expireAt(key, unixTime));
+    }
+
+    public CompletableFuture<Long> ttl(String key) {
+        return supply(adapter -> adapter.ttl(key));
+    }
+
+    public CompletableFuture<Boolean> setbit(String key, long offset, boolean value) {
+        return supply(adapter -> adapter.setbit(key, offset, value));
+    }
+
+    public CompletableFuture<Boolean> setbit(String key, long offset, String value) {
+        return supply(adapter -> adapter.setbit(key, offset, value));
+    }
+
+    public CompletableFuture<Boolean> getbit(String key, long offset) {
+        return supply(adapter -> adapter.getbit(key, offset));
+    }
+
+    public CompletableFuture<Long> setrange(String key, long offset, String value) {
+        return supply(adapter -> adapter.setrange(key, offset, value));
+    }
+
+    public CompletableFuture<String> getrange(String key, long startOffset, long endOffset) {
+        return supply(adapter -> adapter.getrange(key, startOffset, endOffset));
+    }
+
+    public CompletableFuture<String> getSet(String key, String value) {
+        return supply(adapter -> adapter.getSet(key, value));
+    }
+
+    public CompletableFuture<Long> decrBy(String key, long integer) {
+        return supply(adapter -> adapter.decrBy(key, integer));
+    }
+
+    public CompletableFuture<Long> decr(String key) {
+        return supply(adapter -> adapter.decr(key));
+    }
+
+    public CompletableFuture<Long> incrBy(String key, long integer) {
+        return supply(adapter -> adapter.incrBy(key, integer));
+    }
+
+    public CompletableFuture<Long> incr(String key) {
+        return supply(adapter -> adapter.incr(key));
+    }
+
+    public CompletableFuture<Long> append(String key, String value) {
+        return supply(adapter -> adapter.append(key, value));
+    }
+
+    public CompletableFuture<String> substr(String key, int start, int end) {
+        return supply(adapter -> adapter.substr(key, start, end));
+    }
+
+    public CompletableFuture<Long> hset(String key, String field, String value) {
+        return supply(adapter -> adapter.hset(key, field, value));
+    }
+
+    public CompletableFuture<String> hget(String key, String field) {
+        return supply(adapter -> adapter.hget(key, field));
+    }
+
+    public CompletableFuture<Long> hsetnx(String key, String field, String value) {
+        return supply(adapter -> adapter.hsetnx(key, field, value));
+    }
+
+    public CompletableFuture<String> hmset(String key, Map<String, String> hash) {
+        return supply(adapter -> adapter.hmset(key, hash));
+    }
+
+    public CompletableFuture<List<String>> hmget(String key, String... fields) {
+        return supply(adapter -> adapter.hmget(key, fields));
+    }
+
+    public CompletableFuture<Long> hincrBy(String key, String field, long value) {
+        return supply(adapter -> adapter.hincrBy(key, field, value));
+    }
+
+    public CompletableFuture<Boolean> hexists(String key, String field) {
+        return supply(adapter -> adapter.hexists(key, field));
+    }
+
+    public CompletableFuture<Long> hdel(String key, String... field) {
+        return supply(adapter -> adapter.hdel(key, field));
+    }
+
+    public CompletableFuture<Long> hlen(String key) {
+        return supply(adapter -> adapter.hlen(key));
+    }
+
+    public CompletableFuture<Set<String>> hkeys(String key) {
+        return supply(adapter -> adapter.hkeys(key));
+    }
+
+    public CompletableFuture<List<String>> hvals(String key) {
+        return supply(adapter -> adapter.hvals(key));
+    }
+
+    public CompletableFuture<Map<String, String>> hgetAll(String key) {
+        return supply(adapter -> adapter.hgetAll(key));
+    }
+
+    public CompletableFuture<Long> rpush(String key, String... string) {
+        return supply(adapter -> adapter.rpush(key, string));
+    }
+
+    public CompletableFuture<Long> lpush(String key, String... string) {
+        return supply(adapter -> adapter.lpush(key, string));
+    }
+
+    public CompletableFuture<Long> llen(String key) {
+        return supply(adapter -> adapter.llen(key));
+    }
+
+    public CompletableFuture<List<String>> lrange(String key, long start, long end) {
+        return supply(adapter -> adapter.lrange(key, start, end));
+    }
+
+    public CompletableFuture<String> ltrim(String key, long start, long end) {
+        return supply(adapter -> adapter.ltrim(key, start, end));
+    }
+
+    public CompletableFuture<String> lindex(String key, long index) {
+        return supply(adapter -> adapter.lindex(key, index));
+    }
+
+    public CompletableFuture<String> lset(String key, long index, String value) {
+        return supply(adapter -> adapter.lset(key, index, value));
+    }
+
+    public CompletableFuture<Long> lrem(String key, long count, String value) {
+        return supply(adapter -> adapter.lrem(key, count, value));
+    }
+
+    public CompletableFuture<String> lpop(String key) {
+        return supply(adapter -> adapter.lpop(key));
+    }
+
+    public CompletableFuture<String> rpop(String key) {
+        return supply(adapter -> adapter.rpop(key));
+    }
+
+    public CompletableFuture<Long> sadd(String key, String... member) {
+        return supply(adapter -> adapter.sadd(key, member));
+    }
+
+    public CompletableFuture<Set<String>> smembers(String key) {
+        return supply(adapter -> adapter.smembers(key));
+    }
+
+    public CompletableFuture<Long> srem(String key, String... member) {
+        return supply(adapter -> adapter.srem(key, member));
+    }
+
+    public CompletableFuture<String> spop(String key) {
+        return supply(adapter -> adapter.spop(key));
+    }
+
+    public CompletableFuture<Long> scard(String key) {
+        return supply(adapter -> adapter.scard(key));
+    }
+
+    public CompletableFuture<Boolean> sismember(String key, String member) {
+        return supply(adapter -> adapter.sismember(key, member));
+    }
+
+    public CompletableFuture<String> srandmember(String key) {
+        return supply(adapter -> adapter.srandmember(key));
+    }
+
+    public CompletableFuture<List<String>> srandmember(String key, int count) {
+        return supply(adapter -> adapter.srandmember(key, count));
+    }
+
+    public CompletableFuture<Long> strlen(String key) {
+        return supply(adapter -> adapter.strlen(key));
+    }
+
+    public CompletableFuture<Long> zadd(String key, double score, String member) {
+        return supply(adapter -> adapter.zadd(key, score, member));
+    }
+
+    public CompletableFuture<Long> zadd(String key, Map<String, Double> scoreMembers) {
+        return supply(adapter -> adapter.zadd(key, scoreMembers));
+    }
+
+    public CompletableFuture<Set<String>> zrange(String key, long start, long end) {
+        return supply(adapter -> adapter.zrange(key, start, end));
+    }
+
+    public CompletableFuture<Long> zrem(String key, String... member) {
+        return supply(adapter -> adapter.zrem(key, member));
+    }
+
+    public CompletableFuture<Double> zincrby(String key, double score, String member) {
+        return supply(adapter -> adapter.zincrby(key, score, member));
+    }
+
+    public CompletableFuture<Long> zrank(String key, String member) {
+        return supply(adapter -> adapter.zrank(key, member));
+    }
+
+    public CompletableFuture<Long> zrevrank(String key, String member) {
+        return supply(adapter -> adapter.zrevrank(key, member));
+    }
+
+    public CompletableFuture<Set<String>> zrevrange(String key, long start, long end) {
+        return supply(adapter -> adapter.zrevrange(key, start, end));
+    }
+
+    public CompletableFuture<Set<Tuple>> zrangeWithScores(String key, long start, long end) {
+        return supply(adapter -> adapter.zrangeWithScores(key, start, end));
+    }
+
+    public CompletableFuture<Set<Tuple>> zrevrangeWithScores(String key, long start, long end) {
+        return supply(adapter -> adapter.zrevrangeWithScores(key, start, end));
+    }
+
+    public CompletableFuture<Long> zcard(String key) {
+        return supply(adapter -> adapter.zcard(key));
+    }
+
+    public CompletableFuture<Double> zscore(String key, String member) {
+        return supply(adapter -> adapter.zscore(key, member));
+    }
+
+    public CompletableFuture<List<String>> sort(String key) {
+        return supply(adapter -> adapter.sort(key));
+    }
+
+    public CompletableFuture<List<String>> sort(String key, SortingParams sortingParameters) {
+        return supply(adapter -> adapter.sort(key, sortingParameters));
+    }
+
+    public CompletableFuture<Long> zcount(String key, double min, double max) {
+        return supply(adapter -> adapter.zcount(key, min, max));
+    }
+
+    public CompletableFuture<Long> zcount(String key, String min, String max) {
+        return supply(adapter -> adapter.zcount(key, min, max));
+    }
+
+    public CompletableFuture<Set<String>> zrangeByScore(String key, double min, double max) {
+        return supply(adapter -> adapter.zrangeByScore(key, min, max));
+    }
+
+    public CompletableFuture<Set<String>> zrangeByScore(String key, String min, String max) {
+        return supply(adapter -> adapter.zrangeByScore(key, min, max));
+    }
+
+    public CompletableFuture<Set<String>> zrevrangeByScore(String key, double max, double min) {
+        return supply(adapter -> adapter.zrevrangeByScore(key, max, min));
+    }
+
+    public CompletableFuture<Set<String>> zrangeByScore(String key, double min, double max, int offset, int count) {
+        return supply(adapter -> adapter.zrangeByScore(key, min, max, offset, count));
+    }
+
+    public CompletableFuture<Set<String>> zrevrangeByScore(String key, String max, String min) {
+        return supply(adapter -> adapter.zrevrangeByScore(key, max, min));
+    }
+
+    public CompletableFuture<Set<String>> zrangeByScore(String key, String min, String max, int offset, int count) {
+        return supply(adapter -> adapter.zrangeByScore(key, min, max, offset, count));
+    }
+
+    public CompletableFuture<Set<String>> zrevrangeByScore(String key, double max, double min, int offset, int count) {
+        return supply(adapter -> adapter.zrevrangeByScore(key, max, min, offset, count));
+    }
+
+    public CompletableFuture<Set<Tuple>> zrangeByScoreWithScores(String key, double min, double max) {
+        return supply(adapter -> adapter.zrangeByScoreWithScores(key, min, max));
+    }
+
+    public CompletableFuture<Set<Tuple>> zrevrangeByScoreWithScores(String key, double max, double min) {
+        return supply(adapter -> adapter.zrevrangeByScoreWithScores(key, max, min));
+    }
+
+    public CompletableFuture<Set<Tuple>> zrangeByScoreWithScores(String key, double min, double max, int offset, int count) {
+        return supply(adapter -> adapter.zrangeByScoreWithScores(key, min, max, offset, count));
+    }
+
+    public CompletableFuture<Set<String>> zrevrangeByScore(String key, String max, String min, int offset, int count) {
+        return supply(adapter -> adapter.zrevrangeByScore(key, max, min, offset, count));
+    }
+
+    public CompletableFuture<Set<Tuple>> zrangeByScoreWithScores(String key, String min, String max) {
+        return supply(adapter -> adapter.zrangeByScoreWithScores(key, min, max));
+    }
+
+    public CompletableFuture<Set<Tuple>> zrevrangeByScoreWithScores(String key, String max, String min) {
+        return supply(adapter -> adapter.zrevrangeByScoreWithScores(key, max, min));
+    }
+
+    public CompletableFuture<Set<Tuple>> zrangeByScoreWithScores(String key, String min, String max, int offset, int count) {
+        return supply(adapter -> adapter.zrangeByScoreWithScores(key, min, max, offset, count));
+    }
+
+    public CompletableFuture<Set<Tuple>> zrevrangeByScoreWithScores(String key, double max, double min, int offset, int count) {
+        return supply(adapter -> adapter.zrevrangeByScoreWithScores(key, max, min, offset, count));
+    }
+
+    public CompletableFuture<Set<Tuple>> zrevrangeByScoreWithScores(String key, String max, String min, int offset, int count) {
+        return supply(adapter -> adapter.zrevrangeByScoreWithScores(key, max, min, offset, count));
+    }
+
+    public CompletableFuture<Long> zremrangeByRank(String key, long start, long end) {
+        return supply(adapter -> adapter.zremrangeByRank(key, start, end));
+    }
+
+    public CompletableFuture<Long> zremrangeByScore(String key, double start, double end) {
+        return supply(adapter -> adapter.zremrangeByScore(key, start, end));
+    }
+
+    public CompletableFuture<Long> zremrangeByScore(String key, String start, String end) {
+        return supply(adapter -> adapter.zremrangeByScore(key, start, end));
+    }
+
+    public CompletableFuture<Long> zlexcount(String key, String min, String max) {
+        return supply(adapter -> adapter.zlexcount(key, min, max));
+    }
+
+    public CompletableFuture<Set<String>> zrangeByLex(String key, String min, String max) {
+        return supply(adapter -> adapter.zrangeByLex(key, min, max));
+    }
+
+    public CompletableFuture<Set<String>> zrangeByLex(String key, String min, String max, int offset, int count) {
+        return supply(adapter -> adapter.zrangeByLex(key, min, max, offset, count));
+    }
+
+    public CompletableFuture<Long> zremrangeByLex(String key, String min, String max) {
+        return supply(adapter -> adapter.zremrangeByLex(key, min, max));
+    }
+
+    public CompletableFuture<Long> linsert(String key, BinaryClient.LIST_POSITION where, String pivot, String value) {
+        return supply(adapter -> adapter.linsert(key, where, pivot, value));
+    }
+
+    public CompletableFuture<Long> lpushx(String key, String... string) {
+        return supply(adapter -> adapter.lpushx(key, string));
+    }
+
+    public CompletableFuture<Long> rpushx(String key, String... string) {
+        return supply(adapter -> adapter.rpushx(key, string));
+    }
+
+    public CompletableFuture<List<String>> blpop(int timeout, String key) {
+        return supply(adapter -> adapter.blpop(timeout, key));
+    }
+
+    public CompletableFuture<List<String>> brpop(int timeout, String key) {
+        return supply(adapter -> adapter.brpop(timeout, key));
+    }
+
+    public CompletableFuture<Long> del(String key) {
+        return supply(adapter -> adapter.del(key));
+    }
+
+    public CompletableFuture<String> echo(String string) {
+        return supply(adapter -> adapter.echo(string));
+    }
+
+    public CompletableFuture<Long> move(String key, int dbIndex) {
+        return supply(adapter -> adapter.move(key, dbIndex));
+    }
+
+    public CompletableFuture<Long> bitcount(String key) {
+        return supply(adapter -> adapter.bitcount(key));
+    }
+
+    public CompletableFuture<Long> bitcount(String key, long start, long end) {
+        return supply(adapter -> adapter.bitcount(key, start, end));
+    }
+
+    public CompletableFuture<ScanResult<Map.Entry<String, String>>> hscan(String key, String cursor) {
+        return supply(adapter -> adapter.hscan(key, cursor));
+    }
+
+    public CompletableFuture<ScanResult<String>> sscan(String key, String cursor) {
+        return supply(adapter -> adapter.sscan(key, cursor));
+    }
+
+    public CompletableFuture<ScanResult<Tuple>> zscan(String key, String cursor) {
+        return supply(adapter -> adapter.zscan(key, cursor));
+    }
+
+    public CompletableFuture<Long> pfadd(String key, String... elements) {
+        return supply(adapter -> adapter.pfadd(key, elements));
+    }
+
+    public CompletableFuture<Long> pfcount(String key) {
+        return supply(adapter -> adapter.pfcount(key));
+    }
+
+    public CompletableFuture<Long> del(String... keys) {
+        return supply(adapter -> adapter.del(keys));
+    }
+
+    public CompletableFuture<List<String>> blpop(int timeout, String... keys) {
+        return supply(adapter -> adapter.blpop(timeout, keys));
+    }
+
+    public CompletableFuture<List<String>> brpop(int timeout, String... keys) {
+        return supply(adapter -> adapter.brpop(timeout, keys));
+    }
+
+    public CompletableFuture<List<String>> blpop(String... args) {
+        return supply(adapter -> adapter.blpop(args));
+    }
+
+    public CompletableFuture<List<String>> brpop(String... args) {
+        return supply(adapter -> adapter.brpop(args));
+    }
+
+    public CompletableFuture<Set<String>> keys(String pattern) {
+        return supply(adapter -> adapter.keys(pattern));
+    }
+
+    public CompletableFuture<List<String>> mget(String... keys) {
+        return supply(adapter -> adapter.mget(keys));
+    }
+
+    public CompletableFuture<String> mset(String... keysvalues) {
+        return supply(adapter -> adapter.mset(keysvalues));
+    }
+
+    public CompletableFuture<Long> msetnx(String... keysvalues) {
+        return supply(adapter -> adapter.msetnx(keysvalues));
+    }
+
+    public CompletableFuture<String> rename(String oldkey, String newkey) {
+        return supply(adapter -> adapter.rename(oldkey, newkey));
+    }
+
+    public CompletableFuture<Long> renamenx(String oldkey, String newkey) {
+        return supply(adapter -> adapter.renamenx(oldkey, newkey));
+    }
+
+    public CompletableFuture<String> rpoplpush(String srckey, String dstkey) {
+        return supply(adapter -> adapter.rpoplpush(srckey, dstkey));
+    }
+
+    public CompletableFuture<Set<String>> sdiff(String... keys) {
+        return supply(adapter -> adapter.sdiff(keys));
+    }
+
+    public CompletableFuture<Long> sdiffstore(String dstkey, String... keys) {
+        return supply(adapter -> adapter.sdiffstore(dstkey, keys));
+    }
+
+    public CompletableFuture<Set<String>> sinter(String... keys) {
+        return supply(adapter -> adapter.sinter(keys));
+    }
+
+    public CompletableFuture<Long> sinterstore(String dstkey, String... keys) {
+        return supply(adapter -> adapter.sinterstore(dstkey, keys));
+    }
+
+    public CompletableFuture<Long> smove(String srckey, String dstkey, String member) {
+        return supply(adapter -> adapter.smove(srckey, dstkey, member));
+    }
+
+    public CompletableFuture<Long> sort(String key, SortingParams sortingParameters, String dstkey) {
+        return supply(adapter -> adapter.sort(key, sortingParameters, dstkey));
+    }
+
+    public CompletableFuture<Long> sort(String key, String dstkey) {
+        return supply(adapter -> adapter.sort(key, dstkey));
+    }
+
+    public CompletableFuture<Set<String>> sunion(String... keys) {
+        return supply(adapter -> adapter.sunion(keys));
+    }
+
+    public CompletableFuture<Long> sunionstore(String dstkey, String... keys) {
+        return supply(adapter -> adapter.sunionstore(dstkey, keys));
+    }
+
+    public CompletableFuture<Long> zinterstore(String dstkey, String... sets) {
+        return supply(adapter -> adapter.zinterstore(dstkey, sets));
+    }
+
+    public CompletableFuture<Long> zinterstore(String dstkey, ZParams params, String... sets) {
+        return supply(adapter -> adapter.zinterstore(dstkey, params, sets));
+    }
+
+    public CompletableFuture<Long> zunionstore(String dstkey, String... sets) {
+        return supply(adapter -> adapter.zunionstore(dstkey, sets));
+    }
+
+    public CompletableFuture<Long> zunionstore(String dstkey, ZParams params, String... sets) {
+        return supply(adapter -> adapter.zunionstore(dstkey, params, sets));
+    }
+
+    public CompletableFuture<String> brpoplpush(String source, String destination, int timeout) {
+        return supply(adapter -> adapter.brpoplpush(source, destination, timeout));
+    }
+
+    public CompletableFuture<Long> publish(String channel, String message) {
+        return supply(adapter -> adapter.publish(channel, message));
+    }
+
+    public CompletableFuture<String> randomKey() {
+        return supply(adapter -> adapter.randomKey());
+    }
+
+    public CompletableFuture<Long> bitop(BitOP op, String destKey, String... srcKeys) {
+        return supply(adapter -> adapter.bitop(op, destKey, srcKeys));
+    }
+
+    public CompletableFuture<ScanResult<String>> scan(String cursor) {
+        return supply(adapter -> adapter.scan(cursor));
+    }
+
+    public CompletableFuture<String> pfmerge(String destkeyexecute, String... sourcekeys) {
+        return supply(adapter -> adapter.pfmerge(destkeyexecute, sourcekeys));
+    }
+
+    public CompletableFuture<Long> pfcount(String... keys) {
+        return supply(adapter -> adapter.pfcount(keys));
+    }
+}
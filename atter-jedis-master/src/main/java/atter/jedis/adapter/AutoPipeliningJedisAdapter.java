@@ -0,0 +1,563 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atter.jedis.adapter;
+
+import redis.clients.jedis.*;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Description:  AutoPipeliningJedisAdapter
+ * 将并发调用方的单条命令在时间窗口或批次大小内合并，由少量连接以管道方式发送，
+ * 应答到达后分别完成各调用方的结果。
+ * 单key命令在委托适配器的管道上执行，多key、阻塞命令、脚本与事务直接交给委托适配器。
+ * 每条命令与其他适配器一样记录统计与慢日志并经过熔断器，耗时为从排队到收到应答。
+ * 等待超时时尚未发出的命令从批次中撤回，抛出JedisConnectionException；
+ * 已经发出的命令可能已经执行，抛出{@link UnknownOutcomeException}
+ * Copyright:  2018 CSNT. All rights reserved.
+ * Company:CSNT
+ *
+ * @author wangling
+ * @version 1.0
+ */
+public class AutoPipeliningJedisAdapter extends AbstractJedisAdapter<AutoPipeliningJedisAdapter.QueuedCommands> {
+
+    /**
+     * 记录调用的命令，实际不访问redis
+     */
+    public interface QueuedCommands extends JedisCommands, AutoCloseable {
+    }
+
+    private static final ThreadLocal<Command> RECORDED = new ThreadLocal<>();
+
+    private static final ConcurrentMap<Method, Optional<Method>> PIPELINE_METHODS = new ConcurrentHashMap<>();
+
+    private final QueuedCommands recorder = (QueuedCommands) Proxy.newProxyInstance(
+            QueuedCommands.class.getClassLoader(), new Class<?>[]{QueuedCommands.class}, (proxy, method, args) -> {
+                if (method.getDeclaringClass() == Object.class) {
+                    return method.invoke(this, args);
+                }
+                RECORDED.set(new Command(method, args));
+                return defaultValue(method.getReturnType());
+            });
+
+    private final BlockingQueue<Command> queue = new LinkedBlockingQueue<>();
+
+    private AbstractJedisAdapter<?> delegate;
+
+    private int maxBatchSize = 128;
+
+    private long windowMicros = 200;
+
+    private int connections = 4;
+
+    private long timeoutMillis = 1000;
+
+    private volatile boolean running;
+
+    /**
+     * 关闭后不再启动，之后提交的命令直接失败
+     */
+    private volatile boolean shutdown;
+
+    private Thread dispatcher;
+
+    private ExecutorService flushExecutor;
+
+    private Semaphore flushPermits;
+
+    /**
+     * @param delegate 实际发送管道的适配器
+     */
+    public void setDelegate(AbstractJedisAdapter<?> delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * @param maxBatchSize 单次管道最多合并的命令数
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * @param windowMicros 收到首条命令后等待更多命令的时间窗口（微秒）
+     */
+    public void setWindowMicros(long windowMicros) {
+        this.windowMicros = windowMicros;
+    }
+
+    /**
+     * @param connections 同时用于发送管道的连接数
+     */
+    public void setConnections(int connections) {
+        this.connections = connections;
+    }
+
+    /**
+     * @param timeoutMillis 调用方等待应答的超时时间
+     */
+    public void setTimeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * 排队等待应答期间不占用连接，连接由委托适配器在发送管道时借出
+     */
+    @Override
+    protected QueuedCommands borrow() {
+        return recorder;
+    }
+
+    @Override
+    protected void release(QueuedCommands jedis) {
+    }
+
+    /**
+     * 合并发送的命令不重试，超时后无法确定是否已经执行；
+     * 不能进入管道的命令直接交给委托适配器，由其记录统计并经过熔断器，避免同一命令计两次
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    protected <T> T eval(String name, Object key, Object args, Function<QueuedCommands, T> fun) {
+        fun.apply(recorder);
+        Command command = RECORDED.get();
+        RECORDED.remove();
+        if (command == null) {
+            throw new IllegalStateException("no redis command recorded");
+        }
+        Method target = pipelineMethod(command.method);
+        if (target == null) {
+            return (T) invoke(command.method, delegate, command.args);
+        }
+        command.target = target;
+        return execute(name, key, args, commands -> submit(command));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T submit(Command command) {
+        start();
+        queue.add(command);
+        if (shutdown && command.state.compareAndSet(Command.QUEUED, Command.WITHDRAWN)) {
+            // 与shutdown并发时，排空队列之后加入的命令不会再被发送
+            throw new JedisConnectionException("adapter is shut down");
+        }
+        try {
+            return (T) command.future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw abandon(command, "auto pipelined command interrupted", e);
+        } catch (TimeoutException e) {
+            throw abandon(command, "auto pipelined command timed out after " + timeoutMillis + "ms", e);
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        }
+    }
+
+    /**
+     * 调用方放弃等待：尚未发出的命令撤回，不会再执行
+     */
+    private static JedisConnectionException abandon(Command command, String message, Exception cause) {
+        if (command.state.compareAndSet(Command.QUEUED, Command.WITHDRAWN)) {
+            return new JedisConnectionException(message + ", not sent", cause);
+        }
+        return new UnknownOutcomeException(message + ", it may have been executed", cause);
+    }
+
+    @Override
+    protected List<Object> pipelined(Consumer<RedisPipeline> commands, boolean returnAll) {
+        return delegate.pipelined(commands, returnAll);
+    }
+
+    @Override
+    public KeyScanner scanKeys(ScanOptions options) {
+        return delegate.scanKeys(options);
+    }
+
+    /**
+     * 脚本须在key所在节点的连接上执行，不进入管道，交给委托适配器；
+     * lock、compareAndSet、compareAndDelete、popBatch均经由此处
+     */
+    @Override
+    public Object evalScript(LuaScript script, List<String> keys, List<String> args) {
+        return delegate.evalScript(script, keys, args);
+    }
+
+    /**
+     * WATCH与MULTI/EXEC须独占一个连接，交给委托适配器
+     */
+    @Override
+    public List<Object> transaction(Collection<String> keys, Map<String, String> expected,
+                                    Consumer<RedisPipeline> commands) {
+        return delegate.transaction(keys, expected, commands);
+    }
+
+    /**
+     * 停止合并发送，未发送的命令以异常结束；关闭后不能再次使用
+     */
+    public synchronized void shutdown() {
+        shutdown = true;
+        if (!running) {
+            return;
+        }
+        running = false;
+        dispatcher.interrupt();
+        flushExecutor.shutdown();
+        List<Command> pending = new ArrayList<>();
+        queue.drainTo(pending);
+        for (Command command : pending) {
+            command.future.completeExceptionally(new JedisConnectionException("adapter is shut down"));
+        }
+    }
+
+    private void start() {
+        if (running) {
+            return;
+        }
+        synchronized (this) {
+            if (shutdown) {
+                throw new JedisConnectionException("adapter is shut down");
+            }
+            if (running) {
+                return;
+            }
+            flushPermits = new Semaphore(connections);
+            flushExecutor = Executors.newFixedThreadPool(connections, daemonThreads("auto-pipelining-flush"));
+            dispatcher = daemonThreads("auto-pipelining-dispatcher").newThread(this::dispatch);
+            running = true;
+            dispatcher.start();
+        }
+    }
+
+    /**
+     * 取得首条命令后在时间窗口内继续收集，直到达到批次大小；
+     * 没有空闲连接时继续等待，等待期间到达的命令并入同一批次
+     */
+    private void dispatch() {
+        long windowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+        while (running) {
+            List<Command> batch = new ArrayList<>(maxBatchSize);
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch, maxBatchSize - batch.size());
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    Command next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                }
+                flushPermits.acquire();
+                queue.drainTo(batch, maxBatchSize - batch.size());
+            } catch (InterruptedException e) {
+                for (Command command : batch) {
+                    command.future.completeExceptionally(new JedisConnectionException("adapter is shut down"));
+                }
+                return;
+            }
+            try {
+                flushExecutor.execute(() -> flush(batch));
+            } catch (RejectedExecutionException e) {
+                flushPermits.release();
+                for (Command command : batch) {
+                    command.future.completeExceptionally(new JedisConnectionException("adapter is shut down"));
+                }
+            }
+        }
+    }
+
+    private void flush(List<Command> queued) {
+        List<Command> batch = new ArrayList<>(queued.size());
+        for (Command command : queued) {
+            // 已撤回的命令不再发送
+            if (command.state.compareAndSet(Command.QUEUED, Command.SENT)) {
+                batch.add(command);
+            }
+        }
+        try {
+            if (batch.isEmpty()) {
+                return;
+            }
+            List<Response<?>> responses = new ArrayList<>(batch.size());
+            delegate.pipelined(pipeline -> {
+                for (Command command : batch) {
+                    responses.add((Response<?>) invoke(command.target, pipeline, command.args));
+                }
+            }, false);
+            for (int i = 0; i < batch.size(); i++) {
+                CompletableFuture<Object> future = batch.get(i).future;
+                try {
+                    future.complete(responses.get(i).get());
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            }
+        } catch (RuntimeException e) {
+            for (Command command : batch) {
+                command.future.completeExceptionally(e);
+            }
+        } finally {
+            flushPermits.release();
+        }
+    }
+
+    /**
+     * 找到管道上同名同参的命令；阻塞命令会拖住整批应答，不进入管道
+     */
+    private static Method pipelineMethod(Method method) {
+        return PIPELINE_METHODS.computeIfAbsent(method, m -> {
+            if (m.getName().equals("blpop") || m.getName().equals("brpop")) {
+                return Optional.empty();
+            }
+            try {
+                return Optional.of(RedisPipeline.class.getMethod(m.getName(), m.getParameterTypes()));
+            } catch (NoSuchMethodException e) {
+                return Optional.empty();
+            }
+        }).orElse(null);
+    }
+
+    private static Object invoke(Method method, Object target, Object[] args) {
+        try {
+            return method.invoke(target, args);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            throw unwrap(e.getCause());
+        }
+    }
+
+    private static RuntimeException unwrap(Throwable cause) {
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        return new JedisException(cause);
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (!type.isPrimitive() || type == void.class) {
+            return null;
+        }
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == char.class) {
+            return '\0';
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type == double.class) {
+            return 0d;
+        }
+        if (type == float.class) {
+            return 0f;
+        }
+        return 0;
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static final class Command {
+        private static final int QUEUED = 0;
+        private static final int SENT = 1;
+        private static final int WITHDRAWN = 2;
+        private final Method method;
+        private final Object[] args;
+        private final CompletableFuture<Object> future = new CompletableFuture<>();
+        private final AtomicInteger state = new AtomicInteger(QUEUED);
+        private Method target;
+
+        private Command(Method method, Object[] args) {
+            this.method = method;
+            this.args = args;
+        }
+    }
+
+
+    public Long del(String... keys) {
+        return delegate.del(keys);
+    }
+
+    public List<String> blpop(int timeout, String... keys) {
+        return delegate.blpop(timeout, keys);
+    }
+
+    public List<String> brpop(int timeout, String... keys) {
+        return delegate.brpop(timeout, keys);
+    }
+
+    public List<String> blpop(String... args) {
+        return delegate.blpop(args);
+    }
+
+    public List<String> brpop(String... args) {
+        return delegate.brpop(args);
+    }
+
+    public Set<String> keys(String pattern) {
+        return delegate.keys(pattern);
+    }
+
+    public List<String> mget(String... keys) {
+        return delegate.mget(keys);
+    }
+
+    public String mset(String... keysvalues) {
+        return delegate.mset(keysvalues);
+    }
+
+    public Long msetnx(String... keysvalues) {
+        return delegate.msetnx(keysvalues);
+    }
+
+    public String rename(String oldkey, String newkey) {
+        return delegate.rename(oldkey, newkey);
+    }
+
+    public Long renamenx(String oldkey, String newkey) {
+        return delegate.renamenx(oldkey, newkey);
+    }
+
+    public String rpoplpush(String srckey, String dstkey) {
+        return delegate.rpoplpush(srckey, dstkey);
+    }
+
+    public Set<String> sdiff(String... keys) {
+        return delegate.sdiff(keys);
+    }
+
+    public Long sdiffstore(String dstkey, String... keys) {
+        return delegate.sdiffstore(dstkey, keys);
+    }
+
+    public Set<String> sinter(String... keys) {
+        return delegate.sinter(keys);
+    }
+
+    public Long sinterstore(String dstkey, String... keys) {
+        return delegate.sinterstore(dstkey, keys);
+    }
+
+    public Long smove(String srckey, String dstkey, String member) {
+        return delegate.smove(srckey, dstkey, member);
+    }
+
+    public Long sort(String key, SortingParams sortingParameters, String dstkey) {
+        return delegate.sort(key, sortingParameters, dstkey);
+    }
+
+    public Long sort(String key, String dstkey) {
+        return delegate.sort(key, dstkey);
+    }
+
+    public Set<String> sunion(String... keys) {
+        return delegate.sunion(keys);
+    }
+
+    public Long sunionstore(String dstkey, String... keys) {
+        return delegate.sunionstore(dstkey, keys);
+    }
+
+    public String watch(String... keys) {
+        return delegate.watch(keys);
+    }
+
+    public String unwatch() {
+        return delegate.unwatch();
+    }
+
+    public Long zinterstore(String dstkey, String... sets) {
+        return delegate.zinterstore(dstkey, sets);
+    }
+
+    public Long zinterstore(String dstkey, ZParams params, String... sets) {
+        return delegate.zinterstore(dstkey, params, sets);
+    }
+
+    public Long zunionstore(String dstkey, String... sets) {
+        return delegate.zunionstore(dstkey, sets);
+    }
+
+    public Long zunionstore(String dstkey, ZParams params, String... sets) {
+        return delegate.zunionstore(dstkey, params, sets);
+    }
+
+    public String brpoplpush(String source, String destination, int timeout) {
+        return delegate.brpoplpush(source, destination, timeout);
+    }
+
+    public Long publish(String channel, String message) {
+        return delegate.publish(channel, message);
+    }
+
+    public void subscribe(JedisPubSub jedisPubSub, String... channels) {
+        delegate.subscribe(jedisPubSub, channels);
+    }
+
+    public void psubscribe(JedisPubSub jedisPubSub, String... patterns) {
+        delegate.psubscribe(jedisPubSub, patterns);
+    }
+
+    public String randomKey() {
+        return delegate.randomKey();
+    }
+
+    public Long bitop(BitOP op, String destKey, String... srcKeys) {
+        return delegate.bitop(op, destKey, srcKeys);
+    }
+
+    public ScanResult<String> scan(int cursor) {
+        return delegate.scan(cursor);
+    }
+
+    public ScanResult<String> scan(String cursor) {
+        return delegate.scan(cursor);
+    }
+
+    public String pfmerge(String destkey, String... sourcekeys) {
+        return delegate.pfmerge(destkey, sourcekeys);
+    }
+
+    public long pfcount(String... keys) {
+        return delegate.pfcount(keys);
+    }
+
+}
@@ -0,0 +1,39 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atter.jedis.adapter;
+
+import redis.clients.jedis.BinaryJedisCommands;
+
+import java.util.List;
+
+/**
+ * Description:  BinaryJedisAdapter
+ * 以byte[]读写的命令，省去String与UTF-8之间的编解码
+ * Copyright:  2018 CSNT. All rights reserved.
+ * Company:CSNT
+ *
+ * @author wangling
+ * @version 1.0
+ */
+public interface BinaryJedisAdapter extends BinaryJedisCommands {
+
+    Long del(byte[]... keys);
+
+    List<byte[]> mget(byte[]... keys);
+
+    String mset(byte[]... keysvalues);
+}
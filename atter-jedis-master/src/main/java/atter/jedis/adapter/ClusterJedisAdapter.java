@@ -0,0 +1,721 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atter.jedis.adapter;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import redis.clients.jedis.*;
+import redis.clients.jedis.exceptions.*;
+import redis.clients.util.JedisClusterCRC16;
+import redis.clients.util.SafeEncoder;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Description:  ClusterJedisAdapter
+ * Redis Cluster适配器。单key命令由JedisCluster按槽表路由并处理MOVED/ASK重定向；
+ * 多key命令按槽拆分，各槽直接发往所属节点并行执行，按调用方顺序合并结果；
+ * 管道命令按节点分组，每个节点一次往返；多key、管道、脚本与事务与单key命令一样记录统计并经过熔断器。
+ * Copyright:  2018 CSNT. All rights reserved.
+ * Company:CSNT
+ *
+ * @author wangling
+ * @version 1.0
+ */
+public class ClusterJedisAdapter extends AbstractJedisAdapter<JedisCluster> {
+
+    private static final ConcurrentMap<Method, Method> JEDIS_METHODS = new ConcurrentHashMap<>();
+
+    private final JedisCluster jedisCluster;
+
+    private final GenericObjectPoolConfig poolConfig;
+
+    private final int timeout;
+
+    private final int maxRedirections;
+
+    /**
+     * 节点地址与连接池，与JedisCluster共用
+     */
+    private final ConcurrentMap<String, JedisPool> nodes = new ConcurrentHashMap<>();
+
+    /**
+     * 槽与所属主节点的连接池
+     */
+    private volatile JedisPool[] slots = new JedisPool[JedisCluster.HASHSLOTS];
+
+    private volatile long slotsRefreshedAt;
+
+    /**
+     * 进行中的槽表刷新，同一时刻只有一次CLUSTER NODES请求，调用方共享其结果
+     */
+    private final AtomicReference<CompletableFuture<Void>> refreshing = new AtomicReference<>();
+
+    /**
+     * 在后台线程读取CLUSTER NODES，空闲时线程退出
+     */
+    private final ThreadPoolExecutor refresher = new ThreadPoolExecutor(0, 1, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), runnable -> {
+        Thread thread = new Thread(runnable, "jedis-cluster-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ClusterJedisAdapter(Set<HostAndPort> clusterNodes, GenericObjectPoolConfig poolConfig) {
+        this(clusterNodes, Protocol.DEFAULT_TIMEOUT, 5, poolConfig);
+    }
+
+    public ClusterJedisAdapter(Set<HostAndPort> clusterNodes, int timeout, int maxRedirections,
+                               GenericObjectPoolConfig poolConfig) {
+        this.jedisCluster = new JedisCluster(clusterNodes, timeout, maxRedirections, poolConfig);
+        this.poolConfig = poolConfig;
+        this.timeout = timeout;
+        this.maxRedirections = maxRedirections;
+        this.nodes.putAll(jedisCluster.getClusterNodes());
+        loadSlots();
+    }
+
+    /**
+     * JedisCluster在每个命令内部按槽借用连接，适配器只共用同一实例
+     */
+    @Override
+    protected JedisCluster borrow() {
+        return jedisCluster;
+    }
+
+    @Override
+    protected void release(JedisCluster jedis) {
+    }
+
+    public void close() {
+        refresher.shutdown();
+        jedisCluster.close();
+    }
+
+    //////////////////  槽路由
+
+    /**
+     * 重建槽表并等待完成，已有刷新在进行时等待同一次刷新，不另发请求
+     */
+    public void refreshSlots() {
+        try {
+            scheduleRefresh().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 在后台刷新槽表，短时间内的重复刷新合并为一次；调用方可不等待，继续使用当前槽表
+     *
+     * @return 本次刷新，完成时槽表已替换
+     */
+    protected CompletableFuture<Void> scheduleRefresh() {
+        while (true) {
+            CompletableFuture<Void> current = refreshing.get();
+            if (current != null) {
+                return current;
+            }
+            if (System.currentTimeMillis() - slotsRefreshedAt < 100) {
+                return CompletableFuture.completedFuture(null);
+            }
+            CompletableFuture<Void> refresh = new CompletableFuture<>();
+            if (!refreshing.compareAndSet(null, refresh)) {
+                continue;
+            }
+            try {
+                refresher.execute(() -> {
+                    try {
+                        loadSlots();
+                        refresh.complete(null);
+                    } catch (RuntimeException e) {
+                        refresh.completeExceptionally(e);
+                    } finally {
+                        refreshing.compareAndSet(refresh, null);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                refreshing.compareAndSet(refresh, null);
+                refresh.completeExceptionally(new JedisClusterException("cluster adapter is closed", e));
+            }
+            return refresh;
+        }
+    }
+
+    /**
+     * 从任一可用节点读取CLUSTER NODES重建槽表
+     */
+    private void loadSlots() {
+        JedisClusterException failure = null;
+        for (Map.Entry<String, JedisPool> node : new ArrayList<>(nodes.entrySet())) {
+            try (Jedis jedis = node.getValue().getResource()) {
+                slots = parseSlots(jedis.clusterNodes(), node.getKey());
+                slotsRefreshedAt = System.currentTimeMillis();
+                return;
+            } catch (JedisException e) {
+                failure = new JedisClusterException("unable to load cluster slots", e);
+            }
+        }
+        throw failure != null ? failure : new JedisClusterException("no reachable cluster node");
+    }
+
+    /**
+     * CLUSTER NODES每行格式：id host:port[@cport] flags master ping pong epoch link slot...
+     */
+    private JedisPool[] parseSlots(String clusterNodes, String queriedNode) {
+        JedisPool[] table = new JedisPool[JedisCluster.HASHSLOTS];
+        for (String line : clusterNodes.split("\n")) {
+            String[] fields = line.trim().split(" ");
+            if (fields.length < 9 || !fields[2].contains("master") || fields[2].contains("fail")) {
+                continue;
+            }
+            String address = fields[1];
+            int at = address.indexOf('@');
+            if (at >= 0) {
+                address = address.substring(0, at);
+            }
+            if (address.startsWith(":")) {
+                address = queriedNode;
+            }
+            JedisPool pool = nodePool(address);
+            for (int i = 8; i < fields.length; i++) {
+                String range = fields[i];
+                if (range.startsWith("[")) {
+                    continue;
+                }
+                int dash = range.indexOf('-');
+                int from = Integer.parseInt(dash < 0 ? range : range.substring(0, dash));
+                int to = dash < 0 ? from : Integer.parseInt(range.substring(dash + 1));
+                for (int slot = from; slot <= to; slot++) {
+                    table[slot] = pool;
+                }
+            }
+        }
+        return table;
+    }
+
+    private JedisPool nodePool(String address) {
+        return nodes.computeIfAbsent(address, node -> {
+            int colon = node.lastIndexOf(':');
+            return new JedisPool(poolConfig, node.substring(0, colon), Integer.parseInt(node.substring(colon + 1)), timeout);
+        });
+    }
+
+    private JedisPool nodePool(HostAndPort node) {
+        return nodePool(node.getHost() + ":" + node.getPort());
+    }
+
+    private JedisPool slotPool(int slot) {
+        JedisPool pool = slots[slot];
+        if (pool == null) {
+            refreshSlots();
+            pool = slots[slot];
+        }
+        if (pool == null) {
+            throw new JedisClusterException("slot " + slot + " is not served by any node");
+        }
+        return pool;
+    }
+
+    /**
+     * 在槽所属节点上执行，MOVED时转向目标节点并在后台刷新槽表，ASK时先发送ASKING再在目标节点执行；
+     * 连接失败时等待槽表刷新后重试一次，节点故障转移后不必等待永远不会到来的MOVED；
+     * 命令可能已送达旧节点，只有幂等命令才重试，其余命令在后台刷新槽表后抛出
+     *
+     * @param command 命令名，决定连接失败时能否重试
+     * @param slot    槽
+     * @param fun     在节点连接上执行的操作
+     * @param <T>     返回数据泛型
+     * @return 操作结果
+     */
+    protected <T> T evalOnSlot(String command, int slot, Function<Jedis, T> fun) {
+        JedisPool pool = slotPool(slot);
+        boolean asking = false;
+        boolean reconnected = false;
+        for (int redirections = 0; redirections <= maxRedirections; redirections++) {
+            try (Jedis jedis = pool.getResource()) {
+                if (asking) {
+                    jedis.asking();
+                }
+                return fun.apply(jedis);
+            } catch (JedisMovedDataException e) {
+                scheduleRefresh();
+                pool = nodePool(e.getTargetNode());
+                asking = false;
+            } catch (JedisAskDataException e) {
+                pool = nodePool(e.getTargetNode());
+                asking = true;
+            } catch (JedisConnectionException e) {
+                if (reconnected || !IDEMPOTENT_COMMANDS.contains(command)) {
+                    scheduleRefresh();
+                    throw e;
+                }
+                reconnected = true;
+                try {
+                    refreshSlots();
+                } catch (JedisException refreshFailure) {
+                    e.addSuppressed(refreshFailure);
+                    throw e;
+                }
+                pool = slotPool(slot);
+                asking = false;
+            }
+        }
+        throw new JedisClusterMaxRedirectionsException("Too many Cluster redirections?");
+    }
+
+    /**
+     * 多key命令要求全部key位于同一个槽，可用{tag}使相关key落在同一槽
+     */
+    private int sameSlot(String... keys) {
+        int slot = JedisClusterCRC16.getSlot(keys[0]);
+        for (int i = 1; i < keys.length; i++) {
+            if (JedisClusterCRC16.getSlot(keys[i]) != slot) {
+                throw new JedisClusterException("CROSSSLOT Keys in request don't hash to the same slot");
+            }
+        }
+        return slot;
+    }
+
+    /**
+     * 经过统计、慢日志、熔断器与重试策略，在key所在槽的节点上执行
+     */
+    private <T> T evalOnKeys(String command, Function<Jedis, T> fun, String... keys) {
+        int slot = sameSlot(keys);
+        return eval(command, keys, cluster -> evalOnSlot(command, slot, fun));
+    }
+
+    private Map<Integer, List<Integer>> groupBySlot(String[] keys, int step) {
+        Map<Integer, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < keys.length; i += step) {
+            groups.computeIfAbsent(JedisClusterCRC16.getSlot(keys[i]), slot -> new ArrayList<>()).add(i);
+        }
+        return groups;
+    }
+
+    private List<JedisPool> masters() {
+        Set<JedisPool> masters = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (JedisPool pool : slots) {
+            if (pool != null) {
+                masters.add(pool);
+            }
+        }
+        return new ArrayList<>(masters);
+    }
+
+    private JedisPool anyMaster() {
+        List<JedisPool> masters = masters();
+        if (masters.isEmpty()) {
+            throw new JedisClusterException("no master node available");
+        }
+        return masters.get(ThreadLocalRandom.current().nextInt(masters.size()));
+    }
+
+    private static String[] concat(String first, String... rest) {
+        String[] keys = new String[rest.length + 1];
+        keys[0] = first;
+        System.arraycopy(rest, 0, keys, 1, rest.length);
+        return keys;
+    }
+
+    //////////////////  管道
+
+    /**
+     * 按key所在节点分组排队，每个节点一个管道并行同步；
+     * 重定向的命令单独按槽重试，结果按排队顺序返回
+     */
+    @Override
+    protected List<Object> pipelined(Consumer<RedisPipeline> commands, boolean returnAll) {
+        return eval("pipelined", cluster -> pipelinedOnNodes(commands, returnAll));
+    }
+
+    private List<Object> pipelinedOnNodes(Consumer<RedisPipeline> commands, boolean returnAll) {
+        List<QueuedCall> calls = new ArrayList<>();
+        commands.accept((RedisPipeline) Proxy.newProxyInstance(RedisPipeline.class.getClassLoader(),
+                new Class<?>[]{RedisPipeline.class}, (proxy, method, args) -> {
+                    if (method.getDeclaringClass() == Object.class) {
+                        return method.invoke(calls, args);
+                    }
+                    QueuedCall call = new QueuedCall(method, args);
+                    calls.add(call);
+                    return call.response;
+                }));
+        Map<JedisPool, List<Integer>> byNode = new IdentityHashMap<>();
+        for (int i = 0; i < calls.size(); i++) {
+            QueuedCall call = calls.get(i);
+            JedisPool pool = call.slot < 0 ? anyMaster() : slotPool(call.slot);
+            byNode.computeIfAbsent(pool, node -> new ArrayList<>()).add(i);
+        }
+        forEachGroup(byNode, (node, positions) -> {
+            try (Jedis jedis = node.getResource()) {
+                Pipeline pipeline = jedis.pipelined();
+                List<Response<?>> responses = new ArrayList<>(positions.size());
+                for (int position : positions) {
+                    QueuedCall call = calls.get(position);
+                    responses.add((Response<?>) invoke(call.method, pipeline, call.args));
+                }
+                pipeline.sync();
+                for (int i = 0; i < positions.size(); i++) {
+                    calls.get(positions.get(i)).resolve(responses.get(i));
+                }
+            }
+        });
+        for (QueuedCall call : calls) {
+            if (call.response.error instanceof JedisRedirectionException) {
+                call.response.error = null;
+                try {
+                    call.response.value = evalOnSlot(call.method.getName(), call.slot, jedis -> invoke(jedisMethod(call.method), jedis, call.args));
+                } catch (RuntimeException e) {
+                    call.response.error = e;
+                }
+            }
+        }
+        if (!returnAll) {
+            return null;
+        }
+        List<Object> results = new ArrayList<>(calls.size());
+        for (QueuedCall call : calls) {
+            results.add(call.response.error != null ? call.response.error : call.response.value);
+        }
+        return results;
+    }
+
+    private static Method jedisMethod(Method pipelineMethod) {
+        return JEDIS_METHODS.computeIfAbsent(pipelineMethod, m -> {
+            try {
+                return Jedis.class.getMethod(m.getName(), m.getParameterTypes());
+            } catch (NoSuchMethodException e) {
+                throw new JedisClusterException("command " + m.getName() + " cannot be redirected", e);
+            }
+        });
+    }
+
+    private static Object invoke(Method method, Object target, Object[] args) {
+        try {
+            return method.invoke(target, args);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new JedisException(e.getCause());
+        }
+    }
+
+    private static final class QueuedCall {
+        private final Method method;
+        private final Object[] args;
+        private final int slot;
+        private final DeferredResponse response = new DeferredResponse();
+
+        private QueuedCall(Method method, Object[] args) {
+            this.method = method;
+            this.args = args;
+            Object key = args != null && args.length > 0 ? args[0] : null;
+            if (key instanceof String) {
+                this.slot = JedisClusterCRC16.getSlot((String) key);
+            } else if (key instanceof byte[]) {
+                this.slot = JedisClusterCRC16.getSlot(SafeEncoder.encode((byte[]) key));
+            } else {
+                this.slot = -1;
+            }
+        }
+
+        private void resolve(Response<?> actual) {
+            try {
+                response.value = actual.get();
+            } catch (RuntimeException e) {
+                response.error = e;
+            }
+        }
+    }
+
+    /**
+     * 排队时返回给调用方的响应，同步后填入所在节点的实际结果
+     */
+    private static final class DeferredResponse extends Response<Object> {
+        private Object value;
+        private RuntimeException error;
+
+        private DeferredResponse() {
+            super(null);
+        }
+
+        @Override
+        public Object get() {
+            if (error != null) {
+                throw error;
+            }
+            return value;
+        }
+    }
+
+    //////////////////  扫描
+
+    /**
+     * 每个主节点借出一个连接并行扫描
+     */
+    @Override
+    public KeyScanner scanKeys(ScanOptions options) {
+        List<Jedis> connections = new ArrayList<>();
+        AutoCloseable release = () -> connections.forEach(Jedis::close);
+        try {
+            for (JedisPool master : masters()) {
+                connections.add(master.getResource());
+            }
+            return new KeyScanner(connections, release, options);
+        } catch (RuntimeException e) {
+            connections.forEach(Jedis::close);
+            throw e;
+        }
+    }
+
+    /**
+     * 脚本在KEYS所在槽的节点上执行，KEYS须位于同一个槽
+     */
+    @Override
+    public Object evalScript(LuaScript script, List<String> keys, List<String> args) {
+        if (keys.isEmpty()) {
+            throw new JedisClusterException("script without keys cannot be routed to a cluster node");
+        }
+        return evalOnKeys("evalsha", jedis -> script.execute(jedis, keys, args), keys.toArray(new String[keys.size()]));
+    }
+
+    /**
+     * 事务在key所在槽的节点上执行，key须位于同一个槽
+     */
+    @Override
+    public List<Object> transaction(Collection<String> keys, Map<String, String> expected,
+                                    Consumer<RedisPipeline> commands) {
+        Set<String> all = new LinkedHashSet<>(keys);
+        all.addAll(expected.keySet());
+        if (all.isEmpty()) {
+            throw new JedisClusterException("transaction without keys cannot be routed to a cluster node");
+        }
+        return evalOnKeys("exec", jedis -> transaction(jedis, expected, commands), all.toArray(new String[all.size()]));
+    }
+
+    //////////////////  多key命令
+
+
+    public Long del(String... keys) {
+        return eval("del", keys, cluster -> {
+            LongAdder deleted = new LongAdder();
+            forEachGroup(groupBySlot(keys, 1), (slot, positions) ->
+                    deleted.add(evalOnSlot("del", slot, jedis -> jedis.del(select(keys, positions, 1)))));
+            return deleted.sum();
+        });
+    }
+
+    public List<String> blpop(int timeout, String... keys) {
+        return evalOnKeys("blpop", jedis -> jedis.blpop(timeout, keys), keys);
+    }
+
+    public List<String> brpop(int timeout, String... keys) {
+        return evalOnKeys("brpop", jedis -> jedis.brpop(timeout, keys), keys);
+    }
+
+    public List<String> blpop(String... args) {
+        return evalOnKeys("blpop", jedis -> jedis.blpop(args), Arrays.copyOf(args, args.length - 1));
+    }
+
+    public List<String> brpop(String... args) {
+        return evalOnKeys("brpop", jedis -> jedis.brpop(args), Arrays.copyOf(args, args.length - 1));
+    }
+
+    public Set<String> keys(String pattern) {
+        return scanAll(pattern);
+    }
+
+    public List<String> mget(String... keys) {
+        return eval("mget", keys, cluster -> {
+            String[] values = new String[keys.length];
+            forEachGroup(groupBySlot(keys, 1), (slot, positions) -> {
+                List<String> slotValues = evalOnSlot("mget", slot, jedis -> jedis.mget(select(keys, positions, 1)));
+                for (int i = 0; i < positions.size(); i++) {
+                    values[positions.get(i)] = slotValues.get(i);
+                }
+            });
+            return Arrays.asList(values);
+        });
+    }
+
+    public String mset(String... keysvalues) {
+        return eval("mset", keysvalues, cluster -> {
+            forEachGroup(groupBySlot(keysvalues, 2), (slot, positions) ->
+                    evalOnSlot("mset", slot, jedis -> jedis.mset(select(keysvalues, positions, 2))));
+            return "OK";
+        });
+    }
+
+    /**
+     * msetnx要求全部key不存在时整体写入，只能在单个槽上保证
+     */
+    public Long msetnx(String... keysvalues) {
+        Map<Integer, List<Integer>> groups = groupBySlot(keysvalues, 2);
+        if (groups.size() > 1) {
+            throw new JedisClusterException("CROSSSLOT Keys in request don't hash to the same slot");
+        }
+        if (groups.isEmpty()) {
+            return 0L;
+        }
+        int slot = groups.keySet().iterator().next();
+        return eval("msetnx", keysvalues, cluster -> evalOnSlot("msetnx", slot, jedis -> jedis.msetnx(keysvalues)));
+    }
+
+    public String rename(String oldkey, String newkey) {
+        return evalOnKeys("rename", jedis -> jedis.rename(oldkey, newkey), oldkey, newkey);
+    }
+
+    public Long renamenx(String oldkey, String newkey) {
+        return evalOnKeys("renamenx", jedis -> jedis.renamenx(oldkey, newkey), oldkey, newkey);
+    }
+
+    public String rpoplpush(String srckey, String dstkey) {
+        return evalOnKeys("rpoplpush", jedis -> jedis.rpoplpush(srckey, dstkey), srckey, dstkey);
+    }
+
+    public Set<String> sdiff(String... keys) {
+        return evalOnKeys("sdiff", jedis -> jedis.sdiff(keys), keys);
+    }
+
+    public Long sdiffstore(String dstkey, String... keys) {
+        return evalOnKeys("sdiffstore", jedis -> jedis.sdiffstore(dstkey, keys), concat(dstkey, keys));
+    }
+
+    public Set<String> sinter(String... keys) {
+        return evalOnKeys("sinter", jedis -> jedis.sinter(keys), keys);
+    }
+
+    public Long sinterstore(String dstkey, String... keys) {
+        return evalOnKeys("sinterstore", jedis -> jedis.sinterstore(dstkey, keys), concat(dstkey, keys));
+    }
+
+    public Long smove(String srckey, String dstkey, String member) {
+        return evalOnKeys("smove", jedis -> jedis.smove(srckey, dstkey, member), srckey, dstkey);
+    }
+
+    public Long sort(String key, SortingParams sortingParameters, String dstkey) {
+        return evalOnKeys("sort", jedis -> jedis.sort(key, sortingParameters, dstkey), key, dstkey);
+    }
+
+    public Long sort(String key, String dstkey) {
+        return evalOnKeys("sort", jedis -> jedis.sort(key, dstkey), key, dstkey);
+    }
+
+    public Set<String> sunion(String... keys) {
+        return evalOnKeys("sunion", jedis -> jedis.sunion(keys), keys);
+    }
+
+    public Long sunionstore(String dstkey, String... keys) {
+        return evalOnKeys("sunionstore", jedis -> jedis.sunionstore(dstkey, keys), concat(dstkey, keys));
+    }
+
+    public String watch(String... keys) {
+        throw new UnsupportedOperationException();
+    }
+
+    public String unwatch() {
+        throw new UnsupportedOperationException();
+    }
+
+    public Long zinterstore(String dstkey, String... sets) {
+        return evalOnKeys("zinterstore", jedis -> jedis.zinterstore(dstkey, sets), concat(dstkey, sets));
+    }
+
+    public Long zinterstore(String dstkey, ZParams params, String... sets) {
+        return evalOnKeys("zinterstore", jedis -> jedis.zinterstore(dstkey, params, sets), concat(dstkey, sets));
+    }
+
+    public Long zunionstore(String dstkey, String... sets) {
+        return evalOnKeys("zunionstore", jedis -> jedis.zunionstore(dstkey, sets), concat(dstkey, sets));
+    }
+
+    public Long zunionstore(String dstkey, ZParams params, String... sets) {
+        return evalOnKeys("zunionstore", jedis -> jedis.zunionstore(dstkey, params, sets), concat(dstkey, sets));
+    }
+
+    public String brpoplpush(String source, String destination, int timeout) {
+        return evalOnKeys("brpoplpush", jedis -> jedis.brpoplpush(source, destination, timeout), source, destination);
+    }
+
+    /**
+     * 集群内消息会广播到所有节点，任选一个主节点发布
+     */
+    public Long publish(String channel, String message) {
+        return eval("publish", channel, message, cluster -> {
+            try (Jedis jedis = anyMaster().getResource()) {
+                return jedis.publish(channel, message);
+            }
+        });
+    }
+
+    public void subscribe(JedisPubSub jedisPubSub, String... channels) {
+        try (Jedis jedis = anyMaster().getResource()) {
+            jedis.subscribe(jedisPubSub, channels);
+        }
+    }
+
+    public void psubscribe(JedisPubSub jedisPubSub, String... patterns) {
+        try (Jedis jedis = anyMaster().getResource()) {
+            jedis.psubscribe(jedisPubSub, patterns);
+        }
+    }
+
+    public String randomKey() {
+        return eval("randomKey", cluster -> {
+            try (Jedis jedis = anyMaster().getResource()) {
+                return jedis.randomKey();
+            }
+        });
+    }
+
+    public Long bitop(BitOP op, String destKey, String... srcKeys) {
+        return evalOnKeys("bitop", jedis -> jedis.bitop(op, destKey, srcKeys), concat(destKey, srcKeys));
+    }
+
+    /**
+     * 游标只对单个节点有效，集群内请使用scanKeys
+     */
+    public ScanResult<String> scan(int cursor) {
+        throw new UnsupportedOperationException();
+    }
+
+    public ScanResult<String> scan(String cursor) {
+        throw new UnsupportedOperationException();
+    }
+
+    public String pfmerge(String destkey, String... sourcekeys) {
+        return evalOnKeys("pfmerge", jedis -> jedis.pfmerge(destkey, sourcekeys), concat(destkey, sourcekeys));
+    }
+
+    public long pfcount(String... keys) {
+        return evalOnKeys("pfcount", jedis -> jedis.pfcount(keys), keys);
+    }
+
+}
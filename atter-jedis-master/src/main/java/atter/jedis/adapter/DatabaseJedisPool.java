@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atter.jedis.adapter;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Protocol;
+
+/**
+ * Description:  绑定数据库的连接池
+ * 连接在创建时即执行SELECT，归还后保留所选库，借出时无需再次SELECT
+ * Copyright:  2018 CSNT. All rights reserved.
+ * Company:CSNT
+ *
+ * @author wangling
+ * @version 1.0
+ */
+public class DatabaseJedisPool extends JedisPool {
+
+    private final int database;
+
+    public DatabaseJedisPool(GenericObjectPoolConfig poolConfig, String host, int port, int database) {
+        this(poolConfig, host, port, Protocol.DEFAULT_TIMEOUT, null, database);
+    }
+
+    public DatabaseJedisPool(GenericObjectPoolConfig poolConfig, String host, int port, int timeout,
+                             String password, int database) {
+        super(poolConfig, host, port, timeout, password, database);
+        this.database = database;
+    }
+
+    /**
+     * @return 连接池绑定的数据库
+     */
+    public int getDatabase() {
+        return database;
+    }
+}
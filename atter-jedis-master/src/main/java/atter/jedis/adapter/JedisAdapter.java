@@ -18,6 +18,14 @@ package atter.jedis.adapter;
 
 import redis.clients.jedis.JedisCommands;
 import redis.clients.jedis.MultiKeyCommands;
+import redis.clients.jedis.RedisPipeline;
+import redis.clients.jedis.Response;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
 
 /**
  * Description:  JedisAdapter
@@ -29,4 +37,71 @@ import redis.clients.jedis.MultiKeyCommands;
  */
 public interface JedisAdapter extends JedisCommands, MultiKeyCommands {
 
+    /**
+     * 在脚本KEYS所在的节点上以EVALSHA执行脚本，节点未缓存时自动载入
+     *
+     * @param script 脚本，参见{@link ScriptRegistry}
+     * @param keys   脚本的KEYS，分片时须位于同一分片
+     * @param args   脚本的ARGV
+     * @return 脚本返回值
+     */
+    Object evalScript(LuaScript script, List<String> keys, List<String> args);
+
+    /**
+     * 在一个连接上以MULTI/EXEC执行事务，命令在一次往返中发送；
+     * expected中的key先被WATCH并检查当前值，值不符或提交前被其他连接修改时事务不执行
+     *
+     * @param keys     事务写入的key，分片时与expected中的key须位于同一分片
+     * @param expected 乐观检查的字符串key及其应有的值，null表示应不存在
+     * @param commands 在事务上排队命令
+     * @return 按命令顺序排列的结果，事务未执行时为null
+     */
+    List<Object> transaction(Collection<String> keys, Map<String, String> expected, Consumer<RedisPipeline> commands);
+
+    /**
+     * key不存在时写入并设置超时，一次往返完成
+     *
+     * @return 是否写入成功
+     */
+    Boolean lock(String key, String value, int seconds);
+
+    /**
+     * key的值等于expect时改为update
+     *
+     * @return 是否修改成功
+     */
+    Boolean compareAndSet(String key, String expect, String update);
+
+    /**
+     * key的值等于expect时删除，用于只释放自己持有的锁
+     *
+     * @return 是否删除成功
+     */
+    Boolean compareAndDelete(String key, String expect);
+
+    /**
+     * 从列表头部一次取出最多count个元素
+     *
+     * @return 取出的元素，列表为空时为空列表
+     */
+    List<String> popBatch(String key, int count);
+
+    /**
+     * 管道批量执行，一次借出连接、一次往返发送全部命令
+     *
+     * @param commands 在管道上排队的命令
+     * @return 按命令顺序排列的结果
+     */
+    List<Object> pipelined(Consumer<RedisPipeline> commands);
+
+    /**
+     * 管道批量执行，每个元素排队一条命令，按批次大小分段往返
+     *
+     * @param items   批量处理的元素
+     * @param command 为单个元素排队命令，返回该命令的响应
+     * @param <E>     元素类型
+     * @param <T>     命令结果类型
+     * @return 与元素顺序一致的结果
+     */
+    <E, T> List<T> pipelined(Collection<E> items, BiFunction<RedisPipeline, E, Response<T>> command);
 }
@@ -0,0 +1,262 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atter.jedis.adapter;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Description:  KeyScanner
+ * 在所有节点上并行执行SCAN，结果经有界缓冲合并为一个迭代器。
+ * 消费跟不上时扫描线程阻塞在缓冲上，内存占用不随key总数增长。
+ * 使用完毕或提前结束时需要close，归还扫描占用的连接。
+ * Copyright:  2018 CSNT. All rights reserved.
+ * Company:CSNT
+ *
+ * @author wangling
+ * @version 1.0
+ */
+public class KeyScanner implements Iterator<String>, AutoCloseable {
+
+    /**
+     * 节点扫描结束的标记，按引用比较
+     */
+    private static final String END = new String("END");
+
+    private final List<Jedis> nodes;
+
+    private final AutoCloseable resource;
+
+    private final ScanOptions options;
+
+    private final BlockingQueue<String> buffer;
+
+    private final Thread[] scanners;
+
+    private final AtomicInteger runningScanners;
+
+    private final AtomicInteger completedNodes = new AtomicInteger();
+
+    private final AtomicLong scannedKeys = new AtomicLong();
+
+    private final AtomicLong scanCalls = new AtomicLong();
+
+    private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+    private final long startNanos = System.nanoTime();
+
+    private volatile boolean closed;
+
+    private int endedNodes;
+
+    private String next;
+
+    /**
+     * @param nodes    每个节点一个连接，扫描期间独占
+     * @param resource 扫描结束后释放的连接资源
+     * @param options  扫描选项
+     */
+    KeyScanner(List<Jedis> nodes, AutoCloseable resource, ScanOptions options) {
+        this.nodes = nodes;
+        this.resource = resource;
+        this.options = options;
+        this.buffer = new ArrayBlockingQueue<>(Math.max(options.getBufferSize(), nodes.size() + 1));
+        this.scanners = new Thread[nodes.size()];
+        this.runningScanners = new AtomicInteger(nodes.size());
+        for (int i = 0; i < nodes.size(); i++) {
+            Jedis node = nodes.get(i);
+            scanners[i] = new Thread(() -> scan(node), "key-scanner-" + i);
+            scanners[i].setDaemon(true);
+        }
+        if (nodes.isEmpty()) {
+            releaseResource();
+        }
+        for (Thread scanner : scanners) {
+            scanner.start();
+        }
+    }
+
+    private void scan(Jedis node) {
+        try {
+            ScanParams params = new ScanParams().match(options.getMatch()).count(options.getCount());
+            String cursor = ScanParams.SCAN_POINTER_START;
+            do {
+                ScanResult<String> result = node.scan(cursor, params);
+                scanCalls.incrementAndGet();
+                for (String key : result.getResult()) {
+                    buffer.put(key);
+                }
+                scannedKeys.addAndGet(result.getResult().size());
+                cursor = result.getStringCursor();
+                throttle();
+            } while (!closed && !ScanParams.SCAN_POINTER_START.equals(cursor));
+            if (ScanParams.SCAN_POINTER_START.equals(cursor)) {
+                // 提前关闭时游标尚未回到0，该节点没有扫描完成
+                completedNodes.incrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            failure.compareAndSet(null, e);
+        } finally {
+            if (!closed) {
+                try {
+                    buffer.put(END);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (runningScanners.decrementAndGet() == 0) {
+                releaseResource();
+            }
+        }
+    }
+
+    private void throttle() throws InterruptedException {
+        long pause = options.getPauseMillis();
+        long rate = options.getMaxKeysPerSecond();
+        if (rate > 0) {
+            long expectedNanos = TimeUnit.SECONDS.toNanos(scannedKeys.get()) / rate;
+            long elapsedNanos = System.nanoTime() - startNanos;
+            pause = Math.max(pause, TimeUnit.NANOSECONDS.toMillis(expectedNanos - elapsedNanos));
+        }
+        if (pause > 0 && !closed) {
+            Thread.sleep(pause);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (next == null) {
+            if (closed || endedNodes == nodes.size()) {
+                checkFailure();
+                return false;
+            }
+            String key;
+            try {
+                key = buffer.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new JedisException(e);
+            }
+            if (key == END) {
+                endedNodes++;
+                checkFailure();
+            } else {
+                next = key;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        String key = next;
+        next = null;
+        return key;
+    }
+
+    private void checkFailure() {
+        RuntimeException e = failure.get();
+        if (e != null) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return 顺序流，关闭流时结束扫描
+     */
+    public Stream<String> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this,
+                Spliterator.NONNULL), false).onClose(this::close);
+    }
+
+    /**
+     * @return 已扫描的key数
+     */
+    public long getScannedKeys() {
+        return scannedKeys.get();
+    }
+
+    /**
+     * @return 已发出的SCAN调用次数
+     */
+    public long getScanCalls() {
+        return scanCalls.get();
+    }
+
+    /**
+     * @return 已扫描完成的节点数
+     */
+    public int getCompletedNodes() {
+        return completedNodes.get();
+    }
+
+    public int getNodeCount() {
+        return nodes.size();
+    }
+
+    /**
+     * @return 所有节点是否已扫描完成
+     */
+    public boolean isDone() {
+        return completedNodes.get() == nodes.size();
+    }
+
+    /**
+     * 停止扫描，扫描线程退出后归还连接
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (Thread scanner : scanners) {
+            scanner.interrupt();
+        }
+        buffer.clear();
+    }
+
+    private void releaseResource() {
+        try {
+            resource.close();
+        } catch (Exception e) {
+            throw new JedisException(e);
+        }
+    }
+}
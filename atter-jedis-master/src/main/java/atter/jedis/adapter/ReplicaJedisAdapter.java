@@ -0,0 +1,503 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atter.jedis.adapter;
+
+import atter.jedis.breaker.CircuitBreaker;
+import atter.jedis.metrics.CommandMetrics;
+import atter.jedis.metrics.SlowLog;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.util.Pool;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Description:  ReplicaJedisAdapter
+ * 主从读写分离：只读命令发往从节点，其余命令发往主节点。
+ * 开启读己之写窗口后，线程或会话写入后的一段时间内读取仍走主节点，避免读到复制延迟前的旧值。
+ * 开启对冲读取后，读取超过近期耗时的分位数仍未返回时，向另一个节点发出同样的读取，取先返回的结果
+ * Copyright:  2018 CSNT. All rights reserved.
+ * Company:CSNT
+ *
+ * @author wangling
+ * @version 1.0
+ */
+public class ReplicaJedisAdapter extends SingleJedisAdapter {
+
+    public enum Routing {
+        /**
+         * 依次轮流
+         */
+        ROUND_ROBIN,
+        /**
+         * 选择未完成请求最少的从节点
+         */
+        LEAST_OUTSTANDING
+    }
+
+    private volatile List<Replica> replicas = Collections.emptyList();
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    private Routing routing = Routing.ROUND_ROBIN;
+
+    private long readYourWritesNanos;
+
+    private final ThreadLocal<Session> sessions = ThreadLocal.withInitial(Session::new);
+
+    private boolean hedgedReads;
+
+    private double hedgePercentile = 0.95;
+
+    private long minHedgeDelayNanos = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private volatile ExecutorService hedgeExecutor;
+
+    private int maxHedgeThreads = 64;
+
+    private final RecentLatencies latencies = new RecentLatencies(1024);
+
+    private final LongAdder hedgesSent = new LongAdder();
+
+    private final LongAdder hedgesWon = new LongAdder();
+
+    /**
+     * @param replicaPools 从节点连接池
+     */
+    public void setReplicaPools(List<Pool<Jedis>> replicaPools) {
+        List<Replica> replicas = new ArrayList<>(replicaPools.size());
+        for (Pool<Jedis> replicaPool : replicaPools) {
+            SingleJedisAdapter adapter = new SingleJedisAdapter();
+            adapter.setPool(replicaPool);
+            replicas.add(new Replica(adapter));
+        }
+        this.replicas = Collections.unmodifiableList(replicas);
+        configureReplicas();
+    }
+
+    /**
+     * @param routing 从节点的选择方式，默认轮流
+     */
+    public void setRouting(Routing routing) {
+        this.routing = routing;
+    }
+
+    /**
+     * @param readYourWritesMillis 写入后读取仍走主节点的时长，0表示不开启
+     */
+    public void setReadYourWritesMillis(long readYourWritesMillis) {
+        this.readYourWritesNanos = TimeUnit.MILLISECONDS.toNanos(readYourWritesMillis);
+    }
+
+    /**
+     * @param hedgedReads 是否对冲读取，读取改在hedgeExecutor上执行，调用线程等待先返回的结果
+     */
+    public void setHedgedReads(boolean hedgedReads) {
+        this.hedgedReads = hedgedReads;
+    }
+
+    /**
+     * @param hedgePercentile 发出对冲读取前等待的近期读取耗时分位，默认0.95
+     */
+    public void setHedgePercentile(double hedgePercentile) {
+        if (hedgePercentile <= 0 || hedgePercentile >= 1) {
+            throw new IllegalArgumentException("hedgePercentile must be between 0 and 1");
+        }
+        this.hedgePercentile = hedgePercentile;
+    }
+
+    /**
+     * @param minHedgeDelayMicros 发出对冲读取前的最短等待，默认1毫秒
+     */
+    public void setMinHedgeDelayMicros(long minHedgeDelayMicros) {
+        this.minHedgeDelayNanos = TimeUnit.MICROSECONDS.toNanos(minHedgeDelayMicros);
+    }
+
+    /**
+     * 游标只在发出它的节点上有效，这些命令按key固定在一个从节点上，不对冲
+     */
+    private static final Set<String> CURSOR_COMMANDS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "hscan", "sscan", "zscan")));
+
+    /**
+     * @param maxHedgeThreads 内部对冲线程池的线程上限，默认64；线程用尽时读取在调用线程上执行，不再对冲
+     */
+    public void setMaxHedgeThreads(int maxHedgeThreads) {
+        this.maxHedgeThreads = maxHedgeThreads;
+    }
+
+    /**
+     * @param hedgeExecutor 执行对冲读取的有界线程池，拒绝任务时读取在调用线程上执行；未设置时使用内部的守护线程池
+     */
+    public void setHedgeExecutor(ExecutorService hedgeExecutor) {
+        this.hedgeExecutor = hedgeExecutor;
+    }
+
+    /**
+     * @return 发出的对冲读取次数
+     */
+    public long getHedgesSent() {
+        return hedgesSent.sum();
+    }
+
+    /**
+     * @return 对冲读取先于原读取返回的次数
+     */
+    public long getHedgesWon() {
+        return hedgesWon.sum();
+    }
+
+    /**
+     * @return 当前的对冲等待时长（微秒）
+     */
+    public long getHedgeDelayMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(hedgeDelayNanos());
+    }
+
+    @Override
+    public void setDatabase(int database) {
+        super.setDatabase(database);
+        configureReplicas();
+    }
+
+    @Override
+    public void setPool(Pool<Jedis> pool) {
+        super.setPool(pool);
+        configureReplicas();
+    }
+
+    @Override
+    public void setMetrics(CommandMetrics metrics) {
+        super.setMetrics(metrics);
+        configureReplicas();
+    }
+
+    @Override
+    public void setSlowLog(SlowLog slowLog) {
+        super.setSlowLog(slowLog);
+        configureReplicas();
+    }
+
+    @Override
+    public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        super.setCircuitBreaker(circuitBreaker);
+        configureReplicas();
+    }
+
+    /**
+     * 从节点与主节点使用同一个库，统计与慢日志也记在一起；熔断器按主节点的设置为每个从节点单独创建
+     */
+    private void configureReplicas() {
+        CircuitBreaker breaker = getCircuitBreaker();
+        for (int i = 0; i < replicas.size(); i++) {
+            SingleJedisAdapter adapter = replicas.get(i).adapter;
+            adapter.setDatabase(getDatabase());
+            adapter.setMetrics(getMetrics());
+            adapter.setSlowLog(getSlowLog());
+            adapter.setCircuitBreaker(breaker == null ? null : breaker.copy(breaker.getName() + "-replica-" + i));
+        }
+    }
+
+    /**
+     * 在会话中执行，会话内任一线程写入后，窗口期内会话的读取都走主节点
+     *
+     * @param session 会话，通常与用户或请求对应
+     * @param action  在会话中执行的操作
+     * @param <T>     返回数据泛型
+     * @return 操作的结果
+     */
+    public <T> T inSession(Session session, Supplier<T> action) {
+        Session previous = sessions.get();
+        sessions.set(session);
+        try {
+            return action.get();
+        } finally {
+            sessions.set(previous);
+        }
+    }
+
+    @Override
+    protected <T> T eval(String command, Object key, Object args, Function<Jedis, T> fun) {
+        List<Replica> replicas = this.replicas;
+        if (replicas.isEmpty() || !READ_COMMANDS.contains(command)) {
+            T result = super.eval(command, key, args, fun);
+            if (readYourWritesNanos > 0) {
+                sessions.get().written(readYourWritesNanos);
+            }
+            return result;
+        }
+        if (readYourWritesNanos > 0 && sessions.get().isReadingOwnWrites()) {
+            return super.eval(command, key, args, fun);
+        }
+        if (CURSOR_COMMANDS.contains(command)) {
+            // 改走主节点后从节点的游标失效，失败时直接抛出，由调用方从头扫描
+            int hash = key instanceof byte[] ? Arrays.hashCode((byte[]) key) : key.hashCode();
+            return read(replicas.get((hash & Integer.MAX_VALUE) % replicas.size()), command, key, args, fun);
+        }
+        if (hedgedReads) {
+            try {
+                return hedged(command, key, args, fun, replicas);
+            } catch (RejectedExecutionException e) {
+                // 对冲线程已用尽，按普通读取执行
+            }
+        }
+        Replica replica = choose(replicas);
+        replica.outstanding.incrementAndGet();
+        try {
+            return replica.adapter.eval(command, key, args, fun);
+        } catch (JedisConnectionException e) {
+            // 从节点不可用时读取改走主节点
+            return super.eval(command, key, args, fun);
+        } finally {
+            replica.outstanding.decrementAndGet();
+        }
+    }
+
+    /**
+     * 先向选中的从节点读取，等待超过对冲时长仍未返回时向另一个从节点（只有一个从节点时为主节点）读取，
+     * 返回先成功的结果；从节点连接失败时与不对冲时一样改走主节点，其他异常抛出后失败的异常
+     *
+     * @throws RejectedExecutionException 线程池已满，首个读取未能发出
+     */
+    private <T> T hedged(String command, Object key, Object args, Function<Jedis, T> fun, List<Replica> replicas) {
+        ExecutorService executor = hedgeExecutor();
+        Replica primary = choose(replicas);
+        CompletableFuture<T> first = CompletableFuture.supplyAsync(() -> read(primary, command, key, args, fun),
+                executor);
+        try {
+            return first.get(hedgeDelayNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            // 超过对冲时长，继续发出对冲读取
+        } catch (ExecutionException e) {
+            return fallback(unwrap(e.getCause()), command, key, args, fun);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JedisException(e);
+        }
+        Replica backup = replicas.size() > 1 ? replicas.get((replicas.indexOf(primary) + 1) % replicas.size()) : null;
+        CompletableFuture<T> second;
+        try {
+            second = CompletableFuture.supplyAsync(() -> backup == null
+                    ? ReplicaJedisAdapter.super.eval(command, key, args, fun)
+                    : read(backup, command, key, args, fun), executor);
+        } catch (RejectedExecutionException e) {
+            // 对冲线程已用尽，只等待首个读取
+            second = null;
+        }
+        if (second == null) {
+            try {
+                return first.get();
+            } catch (ExecutionException e) {
+                return fallback(unwrap(e.getCause()), command, key, args, fun);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new JedisException(e);
+            }
+        }
+        hedgesSent.increment();
+        CompletableFuture<T> winner = new CompletableFuture<>();
+        AtomicInteger failures = new AtomicInteger();
+        first.whenComplete((result, error) -> complete(winner, result, error, failures, false));
+        second.whenComplete((result, error) -> complete(winner, result, error, failures, true));
+        try {
+            return winner.get();
+        } catch (ExecutionException e) {
+            RuntimeException error = unwrap(e.getCause());
+            if (backup == null) {
+                // 对冲读取已经发往主节点
+                throw error;
+            }
+            return fallback(error, command, key, args, fun);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JedisException(e);
+        }
+    }
+
+    /**
+     * 从节点连接失败时读取改走主节点，其他异常抛出
+     */
+    private <T> T fallback(RuntimeException error, String command, Object key, Object args, Function<Jedis, T> fun) {
+        if (!(error instanceof JedisConnectionException)) {
+            throw error;
+        }
+        return super.eval(command, key, args, fun);
+    }
+
+    private <T> void complete(CompletableFuture<T> winner, T result, Throwable error, AtomicInteger failures,
+                              boolean hedge) {
+        if (error == null) {
+            if (winner.complete(result) && hedge) {
+                hedgesWon.increment();
+            }
+        } else if (failures.incrementAndGet() == 2) {
+            winner.completeExceptionally(error);
+        }
+    }
+
+    private RuntimeException unwrap(Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error instanceof RuntimeException ? (RuntimeException) error : new JedisException(error);
+    }
+
+    /**
+     * 在从节点上读取，并记录成功读取的耗时
+     */
+    private <T> T read(Replica replica, String command, Object key, Object args, Function<Jedis, T> fun) {
+        long start = System.nanoTime();
+        replica.outstanding.incrementAndGet();
+        try {
+            T result = replica.adapter.eval(command, key, args, fun);
+            latencies.record(System.nanoTime() - start);
+            return result;
+        } finally {
+            replica.outstanding.decrementAndGet();
+        }
+    }
+
+    private long hedgeDelayNanos() {
+        return Math.max(minHedgeDelayNanos, latencies.percentile(hedgePercentile));
+    }
+
+    private ExecutorService hedgeExecutor() {
+        if (hedgeExecutor == null) {
+            synchronized (this) {
+                if (hedgeExecutor == null) {
+                    // 不排队：从节点卡住时线程数不超过上限，超出的读取由调用方在当前线程执行
+                    hedgeExecutor = new ThreadPoolExecutor(0, maxHedgeThreads, 60, TimeUnit.SECONDS,
+                            new SynchronousQueue<>(), runnable -> {
+                        Thread thread = new Thread(runnable, "jedis-hedge");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+            }
+        }
+        return hedgeExecutor;
+    }
+
+    private Replica choose(List<Replica> replicas) {
+        if (routing == Routing.LEAST_OUTSTANDING) {
+            Replica chosen = null;
+            int start = next.getAndIncrement() & Integer.MAX_VALUE;
+            for (int i = 0; i < replicas.size(); i++) {
+                Replica replica = replicas.get((start + i) % replicas.size());
+                if (chosen == null || replica.outstanding.get() < chosen.outstanding.get()) {
+                    chosen = replica;
+                }
+            }
+            return chosen;
+        }
+        return replicas.get((next.getAndIncrement() & Integer.MAX_VALUE) % replicas.size());
+    }
+
+    /**
+     * @return 各从节点未完成的请求数
+     */
+    public int[] getOutstanding() {
+        List<Replica> replicas = this.replicas;
+        int[] outstanding = new int[replicas.size()];
+        for (int i = 0; i < outstanding.length; i++) {
+            outstanding[i] = replicas.get(i).outstanding.get();
+        }
+        return outstanding;
+    }
+
+    private static final class Replica {
+
+        private final SingleJedisAdapter adapter;
+
+        private final AtomicInteger outstanding = new AtomicInteger();
+
+        Replica(SingleJedisAdapter adapter) {
+            this.adapter = adapter;
+        }
+    }
+
+    /**
+     * 最近若干次读取的耗时，分位数按固定间隔重新计算
+     */
+    private static final class RecentLatencies {
+
+        private static final int RECALCULATE_INTERVAL = 128;
+
+        private final long[] samples;
+
+        private final AtomicLong count = new AtomicLong();
+
+        private volatile double quantile;
+
+        private volatile long percentile;
+
+        RecentLatencies(int size) {
+            this.samples = new long[size];
+        }
+
+        void record(long nanos) {
+            long n = count.getAndIncrement();
+            samples[(int) (n % samples.length)] = nanos;
+            if (n % RECALCULATE_INTERVAL == RECALCULATE_INTERVAL - 1) {
+                recalculate(quantile);
+            }
+        }
+
+        long percentile(double quantile) {
+            if (quantile != this.quantile) {
+                recalculate(quantile);
+            }
+            return percentile;
+        }
+
+        private void recalculate(double quantile) {
+            int size = (int) Math.min(count.get(), samples.length);
+            this.quantile = quantile;
+            if (size == 0) {
+                return;
+            }
+            long[] sorted = Arrays.copyOf(samples, size);
+            Arrays.sort(sorted);
+            percentile = sorted[Math.min(size - 1, (int) (size * quantile))];
+        }
+    }
+
+    /**
+     * 读己之写的会话，未指定会话时每个线程使用自己的会话
+     */
+    public static final class Session {
+
+        private volatile long deadline;
+
+        void written(long windowNanos) {
+            long deadline = System.nanoTime() + windowNanos;
+            this.deadline = deadline == 0 ? 1 : deadline;
+        }
+
+        boolean isReadingOwnWrites() {
+            long deadline = this.deadline;
+            return deadline != 0 && System.nanoTime() - deadline < 0;
+        }
+    }
+}
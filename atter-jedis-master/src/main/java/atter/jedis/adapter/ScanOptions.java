@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atter.jedis.adapter;
+
+/**
+ * Description:  ScanOptions
+ * 全库SCAN的匹配条件、每批数量、缓冲大小及限速设置
+ * Copyright:  2018 CSNT. All rights reserved.
+ * Company:CSNT
+ *
+ * @author wangling
+ * @version 1.0
+ */
+public class ScanOptions {
+
+    private String match = "*";
+
+    private int count = 1000;
+
+    private int bufferSize = 10000;
+
+    private long pauseMillis;
+
+    private long maxKeysPerSecond;
+
+    public String getMatch() {
+        return match;
+    }
+
+    /**
+     * @param match SCAN的MATCH条件
+     */
+    public ScanOptions setMatch(String match) {
+        this.match = match;
+        return this;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @param count SCAN的COUNT提示，每次调用大致扫描的key数
+     */
+    public ScanOptions setCount(int count) {
+        this.count = count;
+        return this;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @param bufferSize 已扫描未消费的key上限，缓冲满时暂停扫描
+     */
+    public ScanOptions setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+        return this;
+    }
+
+    public long getPauseMillis() {
+        return pauseMillis;
+    }
+
+    /**
+     * @param pauseMillis 每个节点两次SCAN调用之间的停顿
+     */
+    public ScanOptions setPauseMillis(long pauseMillis) {
+        this.pauseMillis = pauseMillis;
+        return this;
+    }
+
+    public long getMaxKeysPerSecond() {
+        return maxKeysPerSecond;
+    }
+
+    /**
+     * @param maxKeysPerSecond 所有节点合计每秒扫描的key上限，0表示不限
+     */
+    public ScanOptions setMaxKeysPerSecond(long maxKeysPerSecond) {
+        this.maxKeysPerSecond = maxKeysPerSecond;
+        return this;
+    }
+}
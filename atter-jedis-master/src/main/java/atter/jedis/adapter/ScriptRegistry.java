@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atter.jedis.adapter;
+
+import redis.clients.jedis.Jedis;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Description:  ScriptRegistry
+ * 按名称登记Lua脚本，内置加锁、比较后写入、比较后删除、批量出队等常用原子操作
+ * Copyright:  2018 CSNT. All rights reserved.
+ * Company:CSNT
+ *
+ * @author wangling
+ * @version 1.0
+ */
+public class ScriptRegistry {
+
+    /**
+     * KEYS[1]不存在时写入ARGV[1]并设置ARGV[2]秒超时，返回1；已存在返回0
+     */
+    public static final LuaScript LOCK = new LuaScript("lock",
+            "if redis.call('setnx', KEYS[1], ARGV[1]) == 1 then "
+                    + "redis.call('expire', KEYS[1], ARGV[2]) return 1 end return 0");
+
+    /**
+     * KEYS[1]的值等于ARGV[1]时改为ARGV[2]，返回1；否则返回0
+     */
+    public static final LuaScript COMPARE_AND_SET = new LuaScript("compareAndSet",
+            "if redis.call('get', KEYS[1]) == ARGV[1] then "
+                    + "redis.call('set', KEYS[1], ARGV[2]) return 1 end return 0");
+
+    /**
+     * KEYS[1]的值等于ARGV[1]时删除，返回1；否则返回0
+     */
+    public static final LuaScript COMPARE_AND_DELETE = new LuaScript("compareAndDelete",
+            "if redis.call('get', KEYS[1]) == ARGV[1] then "
+                    + "return redis.call('del', KEYS[1]) end return 0");
+
+    /**
+     * 从列表KEYS[1]头部一次取出最多ARGV[1]个元素
+     */
+    public static final LuaScript POP_BATCH = new LuaScript("popBatch",
+            "local items = redis.call('lrange', KEYS[1], 0, ARGV[1] - 1) "
+                    + "if #items > 0 then redis.call('ltrim', KEYS[1], #items, -1) end return items");
+
+    private final ConcurrentMap<String, LuaScript> scripts = new ConcurrentHashMap<>();
+
+    public ScriptRegistry() {
+        for (LuaScript script : new LuaScript[]{LOCK, COMPARE_AND_SET, COMPARE_AND_DELETE, POP_BATCH}) {
+            scripts.put(script.getName(), script);
+        }
+    }
+
+    /**
+     * 登记脚本，同名脚本已存在且内容相同时返回已有的脚本
+     *
+     * @param name   脚本名称
+     * @param source 脚本内容
+     * @return 登记的脚本
+     * @throws IllegalArgumentException 同名脚本内容不同
+     */
+    public LuaScript register(String name, String source) {
+        LuaScript script = scripts.computeIfAbsent(name, n -> new LuaScript(n, source));
+        if (!script.getSource().equals(source)) {
+            throw new IllegalArgumentException("script " + name + " already registered with different source");
+        }
+        return script;
+    }
+
+    /**
+     * @return 名称对应的脚本，未登记时为null
+     */
+    public LuaScript get(String name) {
+        return scripts.get(name);
+    }
+
+    public Collection<LuaScript> getScripts() {
+        return Collections.unmodifiableCollection(scripts.values());
+    }
+
+    /**
+     * 将节点上尚未缓存的脚本一次载入，可在预热时调用，避免首次执行时的NOSCRIPT往返
+     *
+     * @param node 节点连接
+     * @return 新载入的脚本数
+     */
+    public int load(Jedis node) {
+        List<LuaScript> all = new ArrayList<>(scripts.values());
+        String[] shas = new String[all.size()];
+        for (int i = 0; i < shas.length; i++) {
+            shas[i] = all.get(i).getSha1();
+        }
+        List<Boolean> exists = shas.length == 0 ? Collections.emptyList() : node.scriptExists(shas);
+        int loaded = 0;
+        for (int i = 0; i < exists.size(); i++) {
+            if (!exists.get(i)) {
+                node.scriptLoad(all.get(i).getSource());
+                loaded++;
+            }
+        }
+        return loaded;
+    }
+}
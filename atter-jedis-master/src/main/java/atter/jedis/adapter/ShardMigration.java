@@ -0,0 +1,347 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atter.jedis.adapter;
+
+import redis.clients.jedis.*;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.util.Pool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Description:  ShardMigration
+ * 分片调整期间的key迁移：后台逐个旧分片SCAN，归属发生变化的key由旧分片以MIGRATE原子地搬到新分片，
+ * 同一个key同时只会有一方搬走，已搬走并在新分片上删除的key不会被迟到的迁移恢复。
+ * MIGRATE不覆盖新分片上已有的key，迁移开始后写入新分片的值总是优先。
+ * 旧分片须能直接连到新分片，新分片不能要求密码（Jedis 2.6.2的MIGRATE不支持AUTH选项）。
+ * 迁移期间读取先查新分片、未命中再查旧分片，写入前先迁移该key，由ShardedJedisAdapter负责
+ * Copyright:  2018 CSNT. All rights reserved.
+ * Company:CSNT
+ *
+ * @author wangling
+ * @version 1.0
+ */
+public class ShardMigration {
+
+    private final Pool<ShardedJedis> oldPool;
+
+    private final Pool<ShardedJedis> newPool;
+
+    private final ScanOptions options;
+
+    private final Runnable onComplete;
+
+    private final AtomicLong scannedKeys = new AtomicLong();
+
+    private final AtomicLong migratedKeys = new AtomicLong();
+
+    private final AtomicLong conflictKeys = new AtomicLong();
+
+    private final AtomicLong failedKeys = new AtomicLong();
+
+    private final AtomicInteger completedShards = new AtomicInteger();
+
+    /**
+     * 本次迁移结束（完成、失败或停止）时释放，重新开始时换成新的
+     */
+    private volatile CountDownLatch finished = new CountDownLatch(1);
+
+    private volatile boolean completed;
+
+    private volatile int shardCount;
+
+    private volatile RuntimeException failure;
+
+    /**
+     * 本次扫描中第一个迁移失败的key的异常
+     */
+    private volatile JedisDataException keyFailure;
+
+    private volatile boolean stopped;
+
+    private volatile long startNanos;
+
+    private Thread migrator;
+
+    ShardMigration(Pool<ShardedJedis> oldPool, Pool<ShardedJedis> newPool, ScanOptions options,
+                   Runnable onComplete) {
+        this.oldPool = oldPool;
+        this.newPool = newPool;
+        this.options = options;
+        this.onComplete = onComplete;
+    }
+
+    Pool<ShardedJedis> getOldPool() {
+        return oldPool;
+    }
+
+    Pool<ShardedJedis> getNewPool() {
+        return newPool;
+    }
+
+    /**
+     * 开始或在失败、停止后重新开始后台迁移
+     */
+    synchronized void start() {
+        if (migrator != null && migrator.isAlive()) {
+            if (!stopped && failure == null) {
+                return;
+            }
+            // 等待已停止或失败的迁移线程退出后再从头开始
+            try {
+                migrator.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        failure = null;
+        keyFailure = null;
+        stopped = false;
+        // 重新开始时从头扫描，限速按本次开始后的扫描数计算，失败的key重新计数
+        completedShards.set(0);
+        scannedKeys.set(0);
+        failedKeys.set(0);
+        startNanos = System.nanoTime();
+        CountDownLatch latch = finished.getCount() == 0 ? new CountDownLatch(1) : finished;
+        finished = latch;
+        migrator = new Thread(() -> migrate(latch), "jedis-shard-migration");
+        migrator.setDaemon(true);
+        migrator.start();
+    }
+
+    /**
+     * 停止后台迁移，适配器仍保持新旧分片并存的读写方式，可以再次调用reshard继续迁移
+     */
+    public synchronized void stop() {
+        stopped = true;
+        if (migrator != null) {
+            migrator.interrupt();
+        }
+    }
+
+    private void migrate(CountDownLatch latch) {
+        try (ShardedJedis source = oldPool.getResource(); ShardedJedis target = newPool.getResource()) {
+            List<Jedis> shards = new ArrayList<>(source.getAllShards());
+            shardCount = shards.size();
+            for (Jedis shard : shards) {
+                migrateShard(shard, target);
+                if (stopped) {
+                    return;
+                }
+                completedShards.incrementAndGet();
+            }
+            long failed = failedKeys.get();
+            if (failed > 0) {
+                // 失败的key仍只在旧分片上，不切换连接池，保留旧分片回退读取
+                failure = new JedisException(failed + " keys failed to migrate", keyFailure);
+                return;
+            }
+            onComplete.run();
+            completed = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            failure = e;
+        } finally {
+            latch.countDown();
+        }
+    }
+
+    private void migrateShard(Jedis shard, ShardedJedis target) throws InterruptedException {
+        ScanParams params = new ScanParams().match(options.getMatch()).count(options.getCount());
+        String cursor = ScanParams.SCAN_POINTER_START;
+        do {
+            ScanResult<String> result = shard.scan(cursor, params);
+            for (String key : result.getResult()) {
+                try {
+                    migrateKey(shard, target.getShard(key), key);
+                } catch (JedisDataException e) {
+                    if (failedKeys.getAndIncrement() == 0) {
+                        keyFailure = e;
+                    }
+                }
+            }
+            scannedKeys.addAndGet(result.getResult().size());
+            cursor = result.getStringCursor();
+            throttle();
+        } while (!stopped && !ScanParams.SCAN_POINTER_START.equals(cursor));
+    }
+
+    private void throttle() throws InterruptedException {
+        long pause = options.getPauseMillis();
+        long rate = options.getMaxKeysPerSecond();
+        if (rate > 0) {
+            long expectedNanos = TimeUnit.SECONDS.toNanos(scannedKeys.get()) / rate;
+            pause = Math.max(pause, TimeUnit.NANOSECONDS.toMillis(expectedNanos - (System.nanoTime() - startNanos)));
+        }
+        if (pause > 0) {
+            Thread.sleep(pause);
+        }
+    }
+
+    /**
+     * 写入新分片前迁移该key
+     *
+     * @param target 新分片的连接
+     * @param key    key
+     */
+    void migrateKey(ShardedJedis target, String key) {
+        try (ShardedJedis source = oldPool.getResource()) {
+            migrateKey(source.getShard(key), target.getShard(key), key);
+        }
+    }
+
+    /**
+     * 多key命令执行前迁移涉及的key
+     *
+     * @param target 新分片的连接
+     * @param keys   key及其后续参数
+     * @param step   每个key占用的参数个数，mset为2
+     */
+    void migrateKeys(ShardedJedis target, String[] keys, int step) {
+        try (ShardedJedis source = oldPool.getResource()) {
+            for (int i = 0; i < keys.length; i += step) {
+                migrateKey(source.getShard(keys[i]), target.getShard(keys[i]), keys[i]);
+            }
+        }
+    }
+
+    /**
+     * @return key的归属是否发生变化
+     */
+    boolean isMoved(ShardedJedis target, String key) {
+        try (ShardedJedis source = oldPool.getResource()) {
+            return !sameNode(source.getShard(key), target.getShard(key));
+        }
+    }
+
+    /**
+     * 在旧分片上读取
+     */
+    <T> T readOld(Function<ShardedJedis, T> fun) {
+        try (ShardedJedis source = oldPool.getResource()) {
+            return fun.apply(source);
+        }
+    }
+
+    /**
+     * MIGRATE在旧分片上一次完成传输与删除，连同剩余超时时间；key已被其他线程搬走时返回NOKEY
+     */
+    private void migrateKey(Jedis source, Jedis target, String key) {
+        if (sameNode(source, target)) {
+            return;
+        }
+        Client client = target.getClient();
+        try {
+            if (!"NOKEY".equals(source.migrate(client.getHost(), client.getPort(), key, client.getDB().intValue(),
+                    client.getTimeout()))) {
+                migratedKeys.incrementAndGet();
+            }
+        } catch (JedisDataException e) {
+            if (e.getMessage() == null || !e.getMessage().contains("BUSYKEY")) {
+                throw e;
+            }
+            // 新分片上已经有更新的值，旧值作废
+            conflictKeys.incrementAndGet();
+            source.del(key);
+        }
+    }
+
+    private boolean sameNode(Jedis source, Jedis target) {
+        Client a = source.getClient();
+        Client b = target.getClient();
+        return a.getPort() == b.getPort() && a.getHost().equals(b.getHost());
+    }
+
+    /**
+     * 等待迁移结束，失败或停止时也立即返回
+     *
+     * @return 是否已完成并切换到新连接池，失败时原因见getFailure
+     */
+    public boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+        return finished.await(timeout, unit) && completed;
+    }
+
+    /**
+     * @return 是否已完成并切换到新连接池
+     */
+    public boolean isDone() {
+        return completed;
+    }
+
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * @return 中断迁移的异常，有key迁移失败时也不切换连接池；未失败时为null，失败后可以再次调用reshard继续迁移
+     */
+    public RuntimeException getFailure() {
+        return failure;
+    }
+
+    /**
+     * @return 已扫描的key数
+     */
+    public long getScannedKeys() {
+        return scannedKeys.get();
+    }
+
+    /**
+     * @return 已迁移的key数，包括写入前迁移的
+     */
+    public long getMigratedKeys() {
+        return migratedKeys.get();
+    }
+
+    /**
+     * @return 新分片上已有更新值而未迁移的key数
+     */
+    public long getConflictKeys() {
+        return conflictKeys.get();
+    }
+
+    /**
+     * @return 本次扫描中迁移失败的key数，不为0时迁移以失败结束
+     */
+    public long getFailedKeys() {
+        return failedKeys.get();
+    }
+
+    public int getCompletedShards() {
+        return completedShards.get();
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * @return 迁移已进行的毫秒数
+     */
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+}
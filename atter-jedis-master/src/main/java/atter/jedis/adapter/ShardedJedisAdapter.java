@@ -16,10 +16,16 @@
  */
 package atter.jedis.adapter;
 
+import atter.jedis.breaker.CircuitBreaker;
 import redis.clients.jedis.*;
-
-import java.util.List;
-import java.util.Set;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.Pool;
+import redis.clients.util.SafeEncoder;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
@@ -33,104 +39,436 @@ import java.util.function.Function;
  */
 public class ShardedJedisAdapter extends AbstractJedisAdapter<ShardedJedis> {
 
-    public <T> T eval(Function<ShardedJedis, T> fun) {
-        try (ShardedJedis jedis = pool.getResource()) {
-            return fun.apply(jedis);
+    /**
+     * ShardedJedis的byte[]方法按原始key取分片，不识别keyTagPattern，
+     * 单key命令改为按字符串key取得分片连接后执行，与字符串适配器落在同一分片
+     */
+    private final BinaryJedisAdapter binary = new AbstractBinaryJedisAdapter<BinaryJedisCommands>() {
+
+        @Override
+        protected <T> T eval(String command, Object key, Object args, Function<BinaryJedisCommands, T> fun) {
+            return ShardedJedisAdapter.this.eval(command, key, args, jedis -> fun.apply(
+                    key instanceof byte[] ? jedis.getShard(SafeEncoder.encode((byte[]) key)) : jedis));
+        }
+
+        public Long del(byte[]... keys) {
+            return ShardedJedisAdapter.this.eval("del", keys, jedis -> {
+                LongAdder deleted = new LongAdder();
+                forEachGroup(groupByShard(jedis, keys, 1),
+                        (shard, positions) -> deleted.add(shard.del(select(keys, positions, 1))));
+                return deleted.sum();
+            });
+        }
+
+        public List<byte[]> mget(byte[]... keys) {
+            return ShardedJedisAdapter.this.eval("mget", keys, jedis -> {
+                byte[][] values = new byte[keys.length][];
+                forEachGroup(groupByShard(jedis, keys, 1), (shard, positions) -> {
+                    List<byte[]> shardValues = shard.mget(select(keys, positions, 1));
+                    for (int i = 0; i < positions.size(); i++) {
+                        values[positions.get(i)] = shardValues.get(i);
+                    }
+                });
+                return Arrays.asList(values);
+            });
+        }
+
+        public String mset(byte[]... keysvalues) {
+            return ShardedJedisAdapter.this.eval("mset", keysvalues, jedis -> {
+                forEachGroup(groupByShard(jedis, keysvalues, 2),
+                        (shard, positions) -> shard.mset(select(keysvalues, positions, 2)));
+                return "OK";
+            });
+        }
+    };
+
+    /**
+     * 按分片熔断的模板，为null时不按分片熔断
+     */
+    private volatile CircuitBreaker shardCircuitBreaker;
+
+    private final ConcurrentMap<String, CircuitBreaker> shardCircuitBreakers = new ConcurrentHashMap<>();
+
+    /**
+     * 每个分片使用一个与模板设置相同的熔断器，按命令往返耗时与连接失败判断是否熔断；
+     * 只作用于单key命令，跨分片的多key命令不经过分片熔断器
+     *
+     * @param shardCircuitBreaker 分片熔断器的模板
+     */
+    public void setShardCircuitBreaker(CircuitBreaker shardCircuitBreaker) {
+        this.shardCircuitBreaker = shardCircuitBreaker;
+        this.shardCircuitBreakers.clear();
+    }
+
+    /**
+     * @return 分片地址与已创建的分片熔断器
+     */
+    public Map<String, CircuitBreaker> getShardCircuitBreakers() {
+        return Collections.unmodifiableMap(shardCircuitBreakers);
+    }
+
+    /**
+     * 正在进行的分片调整，为null时没有迁移
+     */
+    private volatile ShardMigration migration;
+
+    /**
+     * 在线调整分片：命令立即改用新的分片配置，后台按旧分片SCAN，将归属变化的key以MIGRATE原子地迁到新分片。
+     * 迁移期间单key读取先查新分片，未命中且归属发生变化时再查旧分片；写入前先迁移该key；
+     * 多key命令先迁移涉及的全部key。迁移完成后切换为新连接池，旧连接池由调用方关闭
+     *
+     * @param newPool 新的分片连接池
+     * @param options 扫描条件与限速
+     * @return 迁移进度
+     * @throws IllegalStateException 已有迁移正在进行
+     */
+    public synchronized ShardMigration reshard(Pool<ShardedJedis> newPool, ScanOptions options) {
+        ShardMigration current = migration;
+        if (current != null) {
+            if ((current.getFailure() == null && !current.isStopped()) || current.getNewPool() != newPool) {
+                throw new IllegalStateException("shard migration already in progress");
+            }
+            // 上次迁移失败或被停止，从头重新扫描
+            current.start();
+            return current;
+        }
+        ShardMigration next = new ShardMigration(getPool(), newPool, options, () -> {
+            synchronized (this) {
+                setPool(newPool);
+                migration = null;
+            }
+        });
+        migration = next;
+        next.start();
+        return next;
+    }
+
+    /**
+     * @return 正在进行的分片调整，没有时为null
+     */
+    public ShardMigration getMigration() {
+        return migration;
+    }
+
+    /**
+     * 迁移期间借出新分片配置的连接
+     */
+    @Override
+    protected ShardedJedis borrow() {
+        ShardMigration current = migration;
+        return current != null ? current.getNewPool().getResource() : super.borrow();
+    }
+
+    @Override
+    protected <T> T eval(String command, Object key, Object args, Function<ShardedJedis, T> fun) {
+        ShardMigration current = migration;
+        if (current == null || key == null) {
+            return evalOnShard(command, key, args, fun);
+        }
+        if (key instanceof String || key instanceof byte[]) {
+            String name = key instanceof String ? (String) key : SafeEncoder.encode((byte[]) key);
+            if (READ_COMMANDS.contains(command)) {
+                return evalOnShard(command, key, args, jedis -> {
+                    T value = fun.apply(jedis);
+                    if (isMissing(value) && current.isMoved(jedis, name)) {
+                        return current.readOld(fun);
+                    }
+                    return value;
+                });
+            }
+            return evalOnShard(command, key, args, jedis -> {
+                current.migrateKey(jedis, name);
+                return fun.apply(jedis);
+            });
+        }
+        if (key instanceof String[] || key instanceof byte[][]) {
+            String[] keys = key instanceof String[] ? (String[]) key : encode((byte[][]) key);
+            int step = "mset".equals(command) || "msetnx".equals(command) ? 2 : 1;
+            return evalOnShard(command, key, args, jedis -> {
+                current.migrateKeys(jedis, keys, step);
+                return fun.apply(jedis);
+            });
+        }
+        return evalOnShard(command, key, args, fun);
+    }
+
+    /**
+     * 新分片上的结果是否表示key不存在
+     */
+    private static boolean isMissing(Object value) {
+        return value == null || Boolean.FALSE.equals(value) || "none".equals(value)
+                || Long.valueOf(0).equals(value) || Long.valueOf(-2).equals(value)
+                || value instanceof Collection && ((Collection<?>) value).isEmpty()
+                || value instanceof Map && ((Map<?, ?>) value).isEmpty();
+    }
+
+    private static String[] encode(byte[][] keys) {
+        String[] names = new String[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            names[i] = SafeEncoder.encode(keys[i]);
         }
+        return names;
     }
 
-    public void exec(Consumer<ShardedJedis> fun) {
-        try (ShardedJedis jedis = pool.getResource()) {
-            fun.accept(jedis);
+    private <T> T evalOnShard(String command, Object key, Object args, Function<ShardedJedis, T> fun) {
+        CircuitBreaker prototype = shardCircuitBreaker;
+        if (prototype == null || !(key instanceof String || key instanceof byte[])) {
+            return super.eval(command, key, args, fun);
+        }
+        return super.eval(command, key, args, jedis -> {
+            JedisShardInfo shard = key instanceof String
+                    ? jedis.getShardInfo((String) key) : jedis.getShardInfo(SafeEncoder.encode((byte[]) key));
+            String node = shard.getHost() + ":" + shard.getPort();
+            CircuitBreaker breaker = shardCircuitBreakers.get(node);
+            if (breaker == null) {
+                breaker = shardCircuitBreakers.computeIfAbsent(node, prototype::copy);
+            }
+            int probe = breaker.acquire();
+            long start = System.nanoTime();
+            RuntimeException error = null;
+            try {
+                return fun.apply(jedis);
+            } catch (RuntimeException e) {
+                error = e;
+                throw e;
+            } finally {
+                breaker.record(probe, System.nanoTime() - start, error);
+            }
+        });
+    }
+
+    /**
+     * 分片连接在首次使用时才建立，预热时逐个分片PING
+     */
+    @Override
+    protected void ping(ShardedJedis jedis) {
+        for (Jedis shard : jedis.getAllShards()) {
+            shard.ping();
         }
     }
 
+    /**
+     * 脚本与事务在key所在的分片上执行，key须位于同一分片
+     */
+    @Override
+    protected Jedis keyNode(ShardedJedis jedis, List<String> keys) {
+        if (keys.isEmpty()) {
+            throw new JedisDataException("ERR script or transaction without keys cannot be routed to a shard");
+        }
+        JedisShardInfo shardInfo = jedis.getShardInfo(keys.get(0));
+        for (String key : keys) {
+            if (jedis.getShardInfo(key) != shardInfo) {
+                throw new JedisDataException("CROSSSHARD keys " + keys.get(0) + " and " + key
+                        + " are on different shards, use a common {tag} to co-locate them");
+            }
+        }
+        return jedis.getShard(keys.get(0));
+    }
+
+    /**
+     * 各分片的命令分别进入对应分片连接的管道，结果按排队顺序返回
+     */
+    @Override
+    protected List<Object> pipelined(Consumer<RedisPipeline> commands, boolean returnAll) {
+        return eval("pipelined", jedis -> {
+            ShardedJedisPipeline pipeline = jedis.pipelined();
+            commands.accept(pipeline);
+            if (returnAll) {
+                return pipeline.syncAndReturnAll();
+            }
+            pipeline.sync();
+            return null;
+        });
+    }
+
+
+    /**
+     * 按key所在分片分组，记录每个key在参数中的位置
+     *
+     * @param jedis 分片连接
+     * @param keys  key及其后续参数
+     * @param step  每个key占用的参数个数，mset为2
+     * @return 分片与该分片上key的位置
+     */
+    private Map<Jedis, List<Integer>> groupByShard(ShardedJedis jedis, String[] keys, int step) {
+        Map<Jedis, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < keys.length; i += step) {
+            groups.computeIfAbsent(jedis.getShard(keys[i]), shard -> new ArrayList<>()).add(i);
+        }
+        return groups;
+    }
+
+    private Map<Jedis, List<Integer>> groupByShard(ShardedJedis jedis, byte[][] keys, int step) {
+        Map<Jedis, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < keys.length; i += step) {
+            groups.computeIfAbsent(jedis.getShard(SafeEncoder.encode(keys[i])), shard -> new ArrayList<>()).add(i);
+        }
+        return groups;
+    }
+
+    @Override
+    public BinaryJedisAdapter binary() {
+        return binary;
+    }
+
+    /**
+     * 借出一个分片连接，其中每个分片的连接各由一个线程扫描
+     */
+    @Override
+    public KeyScanner scanKeys(ScanOptions options) {
+        ShardedJedis jedis = borrow();
+        try {
+            return new KeyScanner(new ArrayList<>(jedis.getAllShards()), jedis, options);
+        } catch (RuntimeException e) {
+            jedis.close();
+            throw e;
+        }
+    }
 
     //////////////////
 
 
     public Long del(String... keys) {
-        throw new UnsupportedOperationException();
+        return eval("del", keys, jedis -> {
+            LongAdder deleted = new LongAdder();
+            forEachGroup(groupByShard(jedis, keys, 1),
+                    (shard, positions) -> deleted.add(shard.del(select(keys, positions, 1))));
+            return deleted.sum();
+        });
     }
 
     public List<String> blpop(int timeout, String... keys) {
-        throw new UnsupportedOperationException();
+        return sameShard("blpop", shard -> shard.blpop(timeout, keys), keys);
     }
 
     public List<String> brpop(int timeout, String... keys) {
-        throw new UnsupportedOperationException();
+        return sameShard("brpop", shard -> shard.brpop(timeout, keys), keys);
     }
 
     public List<String> blpop(String... args) {
-        throw new UnsupportedOperationException();
+        return sameShard("blpop", shard -> shard.blpop(args), Arrays.copyOf(args, args.length - 1));
     }
 
     public List<String> brpop(String... args) {
-        throw new UnsupportedOperationException();
+        return sameShard("brpop", shard -> shard.brpop(args), Arrays.copyOf(args, args.length - 1));
     }
 
     public Set<String> keys(String pattern) {
-        throw new UnsupportedOperationException();
+        return scanAll(pattern);
     }
 
     public List<String> mget(String... keys) {
-        throw new UnsupportedOperationException();
+        return eval("mget", keys, jedis -> {
+            String[] values = new String[keys.length];
+            forEachGroup(groupByShard(jedis, keys, 1), (shard, positions) -> {
+                List<String> shardValues = shard.mget(select(keys, positions, 1));
+                for (int i = 0; i < positions.size(); i++) {
+                    values[positions.get(i)] = shardValues.get(i);
+                }
+            });
+            return Arrays.asList(values);
+        });
     }
 
     public String mset(String... keysvalues) {
-        throw new UnsupportedOperationException();
+        return eval("mset", keysvalues, jedis -> {
+            forEachGroup(groupByShard(jedis, keysvalues, 2),
+                    (shard, positions) -> shard.mset(select(keysvalues, positions, 2)));
+            return "OK";
+        });
     }
 
+    /**
+     * msetnx要求全部key不存在时整体写入，只能在单个分片上保证
+     */
     public Long msetnx(String... keysvalues) {
-        throw new UnsupportedOperationException();
+        return eval("msetnx", keysvalues, jedis -> {
+            Map<Jedis, List<Integer>> groups = groupByShard(jedis, keysvalues, 2);
+            if (groups.size() > 1) {
+                throw new JedisDataException("MSETNX keys span " + groups.size() + " shards, atomicity cannot be guaranteed");
+            }
+            return groups.isEmpty() ? 0L : groups.keySet().iterator().next().msetnx(keysvalues);
+        });
+    }
+
+    /**
+     * 多key命令在key所在的分片上直接执行，key须位于同一分片，通常以相同的{tag}保证，
+     * 参见{@link TaggedShardedJedisPool}
+     *
+     * @param command 命令
+     * @param fun     在分片连接上执行的操作
+     * @param keys    命令涉及的全部key
+     * @throws JedisDataException key不在同一分片
+     */
+    private <T> T sameShard(String command, Function<Jedis, T> fun, String... keys) {
+        if (keys.length == 0) {
+            throw new JedisDataException("ERR wrong number of arguments for '" + command + "' command");
+        }
+        return eval(command, keys, jedis -> {
+            JedisShardInfo shardInfo = jedis.getShardInfo(keys[0]);
+            for (String key : keys) {
+                if (jedis.getShardInfo(key) != shardInfo) {
+                    throw new JedisDataException("CROSSSHARD " + command.toUpperCase() + " keys " + keys[0]
+                            + " and " + key + " are on different shards, use a common {tag} to co-locate them");
+                }
+            }
+            return fun.apply(jedis.getShard(keys[0]));
+        });
+    }
+
+    private String[] prepend(String first, String... rest) {
+        String[] keys = new String[rest.length + 1];
+        keys[0] = first;
+        System.arraycopy(rest, 0, keys, 1, rest.length);
+        return keys;
     }
 
     public String rename(String oldkey, String newkey) {
-        throw new UnsupportedOperationException();
+        return sameShard("rename", shard -> shard.rename(oldkey, newkey), oldkey, newkey);
     }
 
     public Long renamenx(String oldkey, String newkey) {
-        throw new UnsupportedOperationException();
+        return sameShard("renamenx", shard -> shard.renamenx(oldkey, newkey), oldkey, newkey);
     }
 
     public String rpoplpush(String srckey, String dstkey) {
-        throw new UnsupportedOperationException();
+        return sameShard("rpoplpush", shard -> shard.rpoplpush(srckey, dstkey), srckey, dstkey);
     }
 
     public Set<String> sdiff(String... keys) {
-        throw new UnsupportedOperationException();
+        return sameShard("sdiff", shard -> shard.sdiff(keys), keys);
     }
 
     public Long sdiffstore(String dstkey, String... keys) {
-        throw new UnsupportedOperationException();
+        return sameShard("sdiffstore", shard -> shard.sdiffstore(dstkey, keys), prepend(dstkey, keys));
     }
 
     public Set<String> sinter(String... keys) {
-        throw new UnsupportedOperationException();
+        return sameShard("sinter", shard -> shard.sinter(keys), keys);
     }
 
     public Long sinterstore(String dstkey, String... keys) {
-        throw new UnsupportedOperationException();
+        return sameShard("sinterstore", shard -> shard.sinterstore(dstkey, keys), prepend(dstkey, keys));
     }
 
     public Long smove(String srckey, String dstkey, String member) {
-        throw new UnsupportedOperationException();
+        return sameShard("smove", shard -> shard.smove(srckey, dstkey, member), srckey, dstkey);
     }
 
     public Long sort(String key, SortingParams sortingParameters, String dstkey) {
-        throw new UnsupportedOperationException();
+        return sameShard("sort", shard -> shard.sort(key, sortingParameters, dstkey), key, dstkey);
     }
 
     public Long sort(String key, String dstkey) {
-        throw new UnsupportedOperationException();
+        return sameShard("sort", shard -> shard.sort(key, dstkey), key, dstkey);
     }
 
     public Set<String> sunion(String... keys) {
-        throw new UnsupportedOperationException();
+        return sameShard("sunion", shard -> shard.sunion(keys), keys);
     }
 
     public Long sunionstore(String dstkey, String... keys) {
-        throw new UnsupportedOperationException();
+        return sameShard("sunionstore", shard -> shard.sunionstore(dstkey, keys), prepend(dstkey, keys));
     }
 
     public String watch(String... keys) {
@@ -142,35 +480,62 @@ public class ShardedJedisAdapter extends AbstractJedisAdapter<ShardedJedis> {
     }
 
     public Long zinterstore(String dstkey, String... sets) {
-        throw new UnsupportedOperationException();
+        return sameShard("zinterstore", shard -> shard.zinterstore(dstkey, sets), prepend(dstkey, sets));
     }
 
     public Long zinterstore(String dstkey, ZParams params, String... sets) {
-        throw new UnsupportedOperationException();
+        return sameShard("zinterstore", shard -> shard.zinterstore(dstkey, params, sets), prepend(dstkey, sets));
     }
 
     public Long zunionstore(String dstkey, String... sets) {
-        throw new UnsupportedOperationException();
+        return sameShard("zunionstore", shard -> shard.zunionstore(dstkey, sets), prepend(dstkey, sets));
     }
 
     public Long zunionstore(String dstkey, ZParams params, String... sets) {
-        throw new UnsupportedOperationException();
+        return sameShard("zunionstore", shard -> shard.zunionstore(dstkey, params, sets), prepend(dstkey, sets));
     }
 
     public String brpoplpush(String source, String destination, int timeout) {
-        throw new UnsupportedOperationException();
+        return sameShard("brpoplpush", shard -> shard.brpoplpush(source, destination, timeout), source, destination);
     }
 
+    /**
+     * 发布到频道名所在的分片，与SubscriptionManager使用同一分片列表时路由一致
+     */
     public Long publish(String channel, String message) {
-        throw new UnsupportedOperationException();
+        return eval("publish", channel, message, jedis -> jedis.getShard(channel).publish(channel, message));
     }
 
+    /**
+     * 在频道所在分片的专用连接上订阅，阻塞至退订，不占用连接池；
+     * 频道须位于同一分片，多频道多监听器的场景使用{@link atter.jedis.pubsub.SubscriptionManager}
+     */
     public void subscribe(JedisPubSub jedisPubSub, String... channels) {
-        throw new UnsupportedOperationException();
+        JedisShardInfo shardInfo = eval(jedis -> {
+            JedisShardInfo info = jedis.getShardInfo(channels[0]);
+            for (String channel : channels) {
+                if (jedis.getShardInfo(channel) != info) {
+                    throw new JedisDataException("channels are not on the same shard");
+                }
+            }
+            return info;
+        });
+        try (Jedis jedis = shardInfo.createResource()) {
+            jedis.subscribe(jedisPubSub, channels);
+        }
     }
 
+    /**
+     * 模式须在每个分片上订阅，仅单分片时支持，多分片使用{@link atter.jedis.pubsub.SubscriptionManager}
+     */
     public void psubscribe(JedisPubSub jedisPubSub, String... patterns) {
-        throw new UnsupportedOperationException();
+        Collection<JedisShardInfo> shards = eval(ShardedJedis::getAllShardInfo);
+        if (shards.size() != 1) {
+            throw new UnsupportedOperationException("psubscribe across shards, use SubscriptionManager");
+        }
+        try (Jedis jedis = shards.iterator().next().createResource()) {
+            jedis.psubscribe(jedisPubSub, patterns);
+        }
     }
 
     public String randomKey() {
@@ -178,7 +543,7 @@ public class ShardedJedisAdapter extends AbstractJedisAdapter<ShardedJedis> {
     }
 
     public Long bitop(BitOP op, String destKey, String... srcKeys) {
-        throw new UnsupportedOperationException();
+        return sameShard("bitop", shard -> shard.bitop(op, destKey, srcKeys), prepend(destKey, srcKeys));
     }
 
     public ScanResult<String> scan(int cursor) {
@@ -190,11 +555,11 @@ public class ShardedJedisAdapter extends AbstractJedisAdapter<ShardedJedis> {
     }
 
     public String pfmerge(String destkey, String... sourcekeys) {
-        throw new UnsupportedOperationException();
+        return sameShard("pfmerge", shard -> shard.pfmerge(destkey, sourcekeys), prepend(destkey, sourcekeys));
     }
 
     public long pfcount(String... keys) {
-        throw new UnsupportedOperationException();
+        return sameShard("pfcount", shard -> shard.pfcount(keys), keys);
     }
 
 }
@@ -16,12 +16,22 @@
  */
 package atter.jedis.adapter;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import redis.clients.jedis.*;
+import redis.clients.util.Pool;
 
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.IntFunction;
 
 /**
  * Description:  SingleJedisAdapter
@@ -32,184 +42,387 @@ import java.util.function.Function;
  * @version 1.0
  */
 public class SingleJedisAdapter extends AbstractJedisAdapter<Jedis> {
+
+    private static final Logger logger = LoggerFactory.getLogger(SingleJedisAdapter.class);
+
     private int database;
 
     /**
+     * 按库划分的连接池，每个连接池在创建时绑定到对应的库
+     */
+    private Map<Integer, Pool<Jedis>> databasePools = new HashMap<>();
+
+    private final ConcurrentMap<Integer, SingleJedisAdapter> databaseAdapters = new ConcurrentHashMap<>();
+
+    /**
+     * 为未配置连接池的库创建绑定该库的连接池
+     */
+    private IntFunction<Pool<Jedis>> databasePoolFactory;
+
+    /**
+     * 派生出当前适配器的适配器，其他库仍由它获取
+     */
+    private SingleJedisAdapter origin;
+
+    private final BinaryJedisAdapter binary = new AbstractBinaryJedisAdapter<Jedis>() {
+
+        @Override
+        protected <T> T eval(String command, Object key, Object args, Function<Jedis, T> fun) {
+            return SingleJedisAdapter.this.eval(command, key, args, fun);
+        }
+
+        public Long del(byte[]... keys) {
+            return eval("del", keys, jedis -> jedis.del(keys));
+        }
+
+        public List<byte[]> mget(byte[]... keys) {
+            return eval("mget", keys, jedis -> jedis.mget(keys));
+        }
+
+        public String mset(byte[]... keysvalues) {
+            return eval("mset", keysvalues, jedis -> jedis.mset(keysvalues));
+        }
+    };
+
+    /**
+     * 实际发出的SELECT次数，同一适配器派生出的各库适配器共用
+     */
+    private LongAdder selectCount = new LongAdder();
+
+    /**
+     * 是否已提示连接池所属的库与适配器的库不一致
+     */
+    private volatile boolean mismatchWarned;
+
+    /**
+     * 使用绑定库的连接池时库号须与连接池一致
+     *
      * @param database the database to set
+     * @throws IllegalArgumentException 与绑定库的连接池所属的库不一致
      */
     public void setDatabase(int database) {
+        Pool<Jedis> pool = getPool();
+        if (pool instanceof DatabaseJedisPool && ((DatabaseJedisPool) pool).getDatabase() != database) {
+            throw new IllegalArgumentException("pool is bound to database " + ((DatabaseJedisPool) pool).getDatabase()
+                    + ", cannot use database " + database);
+        }
         this.database = database;
     }
 
+    public int getDatabase() {
+        return database;
+    }
 
     /**
-     * 装饰器封装获取连接池对象，释放连接
+     * 绑定库的连接池会同时确定适配器使用的库
      *
-     * @param fun 在数据库上执行的操作
-     * @param <T> 操作的返回类型
-     * @return 操作的结果
+     * @param pool the pool to set
      */
-    public <T> T eval(Function<Jedis, T> fun) {
-        try (Jedis jedis = pool.getResource()) {
-            jedis.select(database);
-            return fun.apply(jedis);
+    @Override
+    public void setPool(Pool<Jedis> pool) {
+        super.setPool(pool);
+        if (pool instanceof DatabaseJedisPool) {
+            this.database = ((DatabaseJedisPool) pool).getDatabase();
+        }
+    }
+
+    /**
+     * @param databasePools 库号与绑定该库的连接池
+     */
+    public void setDatabasePools(Map<Integer, Pool<Jedis>> databasePools) {
+        this.databasePools = new HashMap<>(databasePools);
+        this.databaseAdapters.clear();
+    }
+
+    /**
+     * 未在databasePools中配置的库按需创建连接池，通常创建{@link DatabaseJedisPool}
+     *
+     * @param databasePoolFactory 库号到绑定该库的连接池
+     */
+    public void setDatabasePoolFactory(IntFunction<Pool<Jedis>> databasePoolFactory) {
+        this.databasePoolFactory = databasePoolFactory;
+        this.databaseAdapters.clear();
+    }
+
+    /**
+     * 获取指定库的适配器，使用绑定该库的连接池，连接已位于该库，不需要SELECT。
+     * 共用当前连接池会在每次借出时先被连接池切回其所属的库、再由适配器切换，因此不再共用：
+     * 该库的连接池取自databasePools，未配置时由databasePoolFactory创建
+     *
+     * @param database 库号
+     * @return 操作该库的适配器，与当前适配器的设置相同
+     * @throws IllegalStateException 该库没有连接池且未设置databasePoolFactory
+     */
+    public SingleJedisAdapter forDatabase(int database) {
+        if (origin != null) {
+            return database == this.database ? this : origin.forDatabase(database);
+        }
+        if (database == this.database && !databasePools.containsKey(database)) {
+            return this;
         }
+        return databaseAdapters.computeIfAbsent(database, db -> {
+            Pool<Jedis> pool = databasePools.get(db);
+            if (pool == null) {
+                if (databasePoolFactory == null) {
+                    throw new IllegalStateException("no pool for database " + db
+                            + ", configure databasePools or databasePoolFactory");
+                }
+                pool = databasePoolFactory.apply(db);
+            }
+            SingleJedisAdapter adapter = new SingleJedisAdapter();
+            copySettings(adapter);
+            adapter.selectCount = selectCount;
+            adapter.origin = this;
+            adapter.setPool(pool);
+            adapter.setDatabase(db);
+            return adapter;
+        });
+    }
+
+    @Override
+    public BinaryJedisAdapter binary() {
+        return binary;
+    }
+
+    /**
+     * @return 适配器实际发出的SELECT次数，不含普通连接池借出时切回其所属库的SELECT
+     */
+    public long getSelectCount() {
+        return selectCount.sum();
     }
 
-    public void exec(Consumer<Jedis> fun) {
-        try (Jedis jedis = pool.getResource()) {
+    /**
+     * 连接记录了当前所在的库，只有与目标库不一致时才发出SELECT。
+     * 借出的连接已被连接池切到其所属的库，不一致说明连接池所属的库与适配器不同，
+     * 每次借出都要先后SELECT两次，首次出现时提示改用绑定该库的{@link DatabaseJedisPool}
+     *
+     * @param jedis 连接
+     */
+    private void select(Jedis jedis) {
+        if (jedis.getDB() != database) {
+            if (!mismatchWarned) {
+                mismatchWarned = true;
+                logger.warn("pool hands out connections on database {} but adapter uses database {}, "
+                        + "every borrow issues SELECT twice; use a DatabaseJedisPool bound to database {}",
+                        jedis.getDB(), database, database);
+            }
             jedis.select(database);
-            fun.accept(jedis);
+            selectCount.increment();
         }
     }
 
 
+    /**
+     * 借出的连接切换到适配器使用的库
+     *
+     * @param jedis 连接
+     */
+    @Override
+    protected void prepare(Jedis jedis) {
+        select(jedis);
+    }
+
+    @Override
+    protected void ping(Jedis jedis) {
+        jedis.ping();
+    }
+
+    @Override
+    protected Jedis keyNode(Jedis jedis, List<String> keys) {
+        return jedis;
+    }
+
+    @Override
+    protected List<Object> pipelined(Consumer<RedisPipeline> commands, boolean returnAll) {
+        return eval("pipelined", jedis -> {
+            Pipeline pipeline = jedis.pipelined();
+            commands.accept(pipeline);
+            if (returnAll) {
+                return pipeline.syncAndReturnAll();
+            }
+            pipeline.sync();
+            return null;
+        });
+    }
+
+
+    @Override
+    public KeyScanner scanKeys(ScanOptions options) {
+        Jedis jedis = borrow();
+        try {
+            prepare(jedis);
+            return new KeyScanner(Collections.singletonList(jedis), jedis, options);
+        } catch (RuntimeException e) {
+            jedis.close();
+            throw e;
+        }
+    }
+
     public Long del(String... keys) {
-        return eval(jedis -> jedis.del(keys));
+        return eval("del", keys, jedis -> jedis.del(keys));
     }
 
     public List<String> blpop(int timeout, String... keys) {
-        return eval(jedis -> jedis.blpop(timeout, keys));
+        return eval("blpop", keys, jedis -> jedis.blpop(timeout, keys));
     }
 
     public List<String> brpop(int timeout, String... keys) {
-        return eval(jedis -> jedis.brpop(timeout, keys));
+        return eval("brpop", keys, jedis -> jedis.brpop(timeout, keys));
     }
 
     public List<String> blpop(String... args) {
-        return eval(jedis -> jedis.blpop(args));
+        return eval("blpop", args, jedis -> jedis.blpop(args));
     }
 
     public List<String> brpop(String... args) {
-        return eval(jedis -> jedis.brpop(args));
+        return eval("brpop", args, jedis -> jedis.brpop(args));
     }
 
     public Set<String> keys(String pattern) {
-        return eval(jedis -> jedis.keys(pattern));
+        return scanAll(pattern);
     }
 
     public List<String> mget(String... keys) {
-        return eval(jedis -> jedis.mget(keys));
+        return eval("mget", keys, jedis -> jedis.mget(keys));
     }
 
     public String mset(String... keysvalues) {
-        return eval(jedis -> jedis.mset(keysvalues));
+        return eval("mset", keysvalues, jedis -> jedis.mset(keysvalues));
     }
 
     public Long msetnx(String... keysvalues) {
-        return eval(jedis -> jedis.msetnx(keysvalues));
+        return eval("msetnx", keysvalues, jedis -> jedis.msetnx(keysvalues));
     }
 
     public String rename(String oldkey, String newkey) {
-        return eval(jedis -> jedis.rename(oldkey, newkey));
+        return eval("rename", oldkey, jedis -> jedis.rename(oldkey, newkey));
     }
 
     public Long renamenx(String oldkey, String newkey) {
-        return eval(jedis -> jedis.renamenx(oldkey, newkey));
+        return eval("renamenx", oldkey, jedis -> jedis.renamenx(oldkey, newkey));
     }
 
     public String rpoplpush(String srckey, String dstkey) {
-        return eval(jedis -> jedis.rpoplpush(srckey, dstkey));
+        return eval("rpoplpush", srckey, jedis -> jedis.rpoplpush(srckey, dstkey));
     }
 
     public Set<String> sdiff(String... keys) {
-        return eval(jedis -> jedis.sdiff(keys));
+        return eval("sdiff", keys, jedis -> jedis.sdiff(keys));
     }
 
     public Long sdiffstore(String dstkey, String... keys) {
-        return eval(jedis -> jedis.sdiffstore(dstkey, keys));
+        return eval("sdiffstore", dstkey, jedis -> jedis.sdiffstore(dstkey, keys));
     }
 
     public Set<String> sinter(String... keys) {
-        return eval(jedis -> jedis.sinter(keys));
+        return eval("sinter", keys, jedis -> jedis.sinter(keys));
     }
 
     public Long sinterstore(String dstkey, String... keys) {
-        return eval(jedis -> jedis.sinterstore(dstkey, keys));
+        return eval("sinterstore", dstkey, jedis -> jedis.sinterstore(dstkey, keys));
     }
 
     public Long smove(String srckey, String dstkey, String member) {
-        return eval(jedis -> jedis.smove(srckey, dstkey, member));
+        return eval("smove", srckey, member, jedis -> jedis.smove(srckey, dstkey, member));
     }
 
     public Long sort(String key, SortingParams sortingParameters, String dstkey) {
-        return eval(jedis -> jedis.sort(key, sortingParameters, dstkey));
+        return eval("sort", key, jedis -> jedis.sort(key, sortingParameters, dstkey));
     }
 
     public Long sort(String key, String dstkey) {
-        return eval(jedis -> jedis.sort(key, dstkey));
+        return eval("sort", key, jedis -> jedis.sort(key, dstkey));
     }
 
     public Set<String> sunion(String... keys) {
-        return eval(jedis -> jedis.sunion(keys));
+        return eval("sunion", keys, jedis -> jedis.sunion(keys));
     }
 
     public Long sunionstore(String dstkey, String... keys) {
-        return eval(jedis -> jedis.sunionstore(dstkey, keys));
+        return eval("sunionstore", dstkey, jedis -> jedis.sunionstore(dstkey, keys));
     }
 
+    /**
+     * 每次调用借出的连接不同，WATCH对之后的命令不起作用，乐观事务使用{@link #transaction}
+     */
     public String watch(String... keys) {
-        return eval(jedis -> jedis.watch(keys));
+        return eval("watch", keys, jedis -> jedis.watch(keys));
     }
 
     public String unwatch() {
-        return eval(jedis -> jedis.unwatch());
+        return eval("unwatch", jedis -> jedis.unwatch());
     }
 
     public Long zinterstore(String dstkey, String... sets) {
-        return eval(jedis -> jedis.zinterstore(dstkey, sets));
+        return eval("zinterstore", dstkey, jedis -> jedis.zinterstore(dstkey, sets));
     }
 
     public Long zinterstore(String dstkey, ZParams params, String... sets) {
-        return eval(jedis -> jedis.zinterstore(dstkey, params, sets));
+        return eval("zinterstore", dstkey, jedis -> jedis.zinterstore(dstkey, params, sets));
     }
 
     public Long zunionstore(String dstkey, String... sets) {
-        return eval(jedis -> jedis.zunionstore(dstkey, sets));
+        return eval("zunionstore", dstkey, jedis -> jedis.zunionstore(dstkey, sets));
     }
 
     public Long zunionstore(String dstkey, ZParams params, String... sets) {
-        return eval(jedis -> jedis.zunionstore(dstkey, params, sets));
+        return eval("zunionstore", dstkey, jedis -> jedis.zunionstore(dstkey, params, sets));
     }
 
     public String brpoplpush(String source, String destination, int timeout) {
-        return eval(jedis -> jedis.brpoplpush(source, destination, timeout));
+        return eval("brpoplpush", source, jedis -> jedis.brpoplpush(source, destination, timeout));
     }
 
     public Long publish(String channel, String message) {
-        return eval(jedis -> jedis.publish(channel, message));
+        return eval("publish", channel, message, jedis -> jedis.publish(channel, message));
     }
 
+    /**
+     * 订阅期间独占一个池连接并阻塞当前线程，长期或多个订阅使用{@link atter.jedis.pubsub.SubscriptionManager}
+     */
     public void subscribe(JedisPubSub jedisPubSub, String... channels) {
-        exec(jedis -> jedis.subscribe(jedisPubSub, channels));
+        subscribed(jedis -> jedis.subscribe(jedisPubSub, channels));
     }
 
     public void psubscribe(JedisPubSub jedisPubSub, String... patterns) {
-        exec(jedis -> jedis.psubscribe(jedisPubSub, patterns));
+        subscribed(jedis -> jedis.psubscribe(jedisPubSub, patterns));
+    }
+
+    /**
+     * 订阅可能持续整个进程生命周期，不经过熔断器与统计，不长期占用并发许可与进行中的命令数
+     */
+    private void subscribed(Consumer<Jedis> subscription) {
+        Jedis jedis = borrow();
+        try {
+            prepare(jedis);
+            subscription.accept(jedis);
+        } finally {
+            release(jedis);
+        }
     }
 
     public String randomKey() {
-        return eval(jedis -> jedis.randomKey());
+        return eval("randomKey", jedis -> jedis.randomKey());
     }
 
     public Long bitop(BitOP op, String destKey, String... srcKeys) {
-        return eval(jedis -> jedis.bitop(op, destKey, srcKeys));
+        return eval("bitop", destKey, jedis -> jedis.bitop(op, destKey, srcKeys));
     }
 
     public ScanResult<String> scan(int cursor) {
-        return eval(jedis -> jedis.scan(cursor));
+        return eval("scan", jedis -> jedis.scan(cursor));
     }
 
     public ScanResult<String> scan(String cursor) {
-        return eval(jedis -> jedis.scan(cursor));
+        return eval("scan", jedis -> jedis.scan(cursor));
     }
 
     public String pfmerge(String destkeyexecute, String... sourcekeys) {
-        return eval(jedis -> jedis.pfmerge(destkeyexecute, sourcekeys));
+        return eval("pfmerge", jedis -> jedis.pfmerge(destkeyexecute, sourcekeys));
     }
 
     public long pfcount(String... keys) {
-        return eval(jedis -> jedis.pfcount(keys));
+        return eval("pfcount", keys, jedis -> jedis.pfcount(keys));
     }
 
 
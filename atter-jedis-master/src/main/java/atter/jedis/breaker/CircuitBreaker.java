@@ -0,0 +1,357 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atter.jedis.breaker;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Description:  CircuitBreaker
+ * 熔断器与并发隔离。统计窗口内连接失败或慢调用的比例超过阈值时打开，打开期间立即拒绝调用；
+ * 经过打开时长后进入半开，放行少量探测调用，探测全部成功则关闭，任一失败则重新打开。
+ * 设置最大并发后，并发已满的调用同样立即拒绝，不再排队等待连接池
+ * Copyright:  2018 CSNT. All rights reserved.
+ * Company:CSNT
+ *
+ * @author wangling
+ * @version 1.0
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+
+    private final List<CircuitBreakerListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * 当前半开阶段的探测统计，每次进入半开时替换，上一阶段遗留的探测不再影响本阶段
+     */
+    private volatile Probes probes = new Probes(0);
+
+    private final LongAdder rejected = new LongAdder();
+
+    private volatile Bucket[] buckets;
+
+    private volatile long openedAt;
+
+    private double failureRateThreshold = 0.5;
+
+    private double slowCallRateThreshold = 0.5;
+
+    private long slowCallNanos = TimeUnit.MILLISECONDS.toNanos(200);
+
+    private int minimumCalls = 20;
+
+    private int windowSeconds = 10;
+
+    private long openNanos = TimeUnit.SECONDS.toNanos(5);
+
+    private int halfOpenProbes = 3;
+
+    private int maxConcurrent;
+
+    private volatile Semaphore bulkhead;
+
+    public CircuitBreaker(String name) {
+        this.name = name;
+        this.buckets = newBuckets(windowSeconds);
+    }
+
+    /**
+     * @param name 新熔断器的名称
+     * @return 设置与监听器相同、状态独立的熔断器，用于按分片各自熔断
+     */
+    public CircuitBreaker copy(String name) {
+        CircuitBreaker copy = new CircuitBreaker(name);
+        copy.failureRateThreshold = failureRateThreshold;
+        copy.slowCallRateThreshold = slowCallRateThreshold;
+        copy.slowCallNanos = slowCallNanos;
+        copy.minimumCalls = minimumCalls;
+        copy.setWindowSeconds(windowSeconds);
+        copy.openNanos = openNanos;
+        copy.halfOpenProbes = halfOpenProbes;
+        copy.setMaxConcurrent(maxConcurrent);
+        copy.listeners.addAll(listeners);
+        return copy;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    /**
+     * @return 被拒绝的调用次数
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * @param failureRateThreshold 连接失败比例的阈值，默认0.5
+     */
+    public void setFailureRateThreshold(double failureRateThreshold) {
+        this.failureRateThreshold = failureRateThreshold;
+    }
+
+    /**
+     * @param slowCallRateThreshold 慢调用比例的阈值，默认0.5
+     */
+    public void setSlowCallRateThreshold(double slowCallRateThreshold) {
+        this.slowCallRateThreshold = slowCallRateThreshold;
+    }
+
+    /**
+     * @param slowCallMillis 超过该耗时的调用计为慢调用，默认200毫秒；连接池上计等待连接的耗时，分片上计命令往返耗时
+     */
+    public void setSlowCallMillis(long slowCallMillis) {
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMillis);
+    }
+
+    /**
+     * @param minimumCalls 窗口内调用次数达到该值才计算比例，默认20
+     */
+    public void setMinimumCalls(int minimumCalls) {
+        this.minimumCalls = minimumCalls;
+    }
+
+    /**
+     * @param windowSeconds 统计窗口的秒数，默认10
+     */
+    public void setWindowSeconds(int windowSeconds) {
+        this.windowSeconds = windowSeconds;
+        this.buckets = newBuckets(windowSeconds);
+    }
+
+    /**
+     * @param openMillis 打开后进入半开前的时长，默认5秒
+     */
+    public void setOpenMillis(long openMillis) {
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+    }
+
+    /**
+     * @param halfOpenProbes 半开时放行的探测调用数，默认3
+     */
+    public void setHalfOpenProbes(int halfOpenProbes) {
+        this.halfOpenProbes = halfOpenProbes;
+    }
+
+    /**
+     * @param maxConcurrent 最大并发调用数，0表示不限
+     */
+    public void setMaxConcurrent(int maxConcurrent) {
+        this.maxConcurrent = maxConcurrent;
+        this.bulkhead = maxConcurrent > 0 ? new Semaphore(maxConcurrent) : null;
+    }
+
+    public void addListener(CircuitBreakerListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @param listeners 状态变化的监听器
+     */
+    public void setListeners(List<CircuitBreakerListener> listeners) {
+        this.listeners.clear();
+        this.listeners.addAll(listeners);
+    }
+
+    /**
+     * 调用前申请放行，每次放行都须以{@link #record(int, long, Throwable)}结束
+     *
+     * @return 半开状态的探测调用返回所属半开阶段的编号，否则返回0
+     * @throws CircuitBreakerOpenException 熔断打开、探测名额已满或并发已满
+     */
+    public int acquire() {
+        Probes probes = null;
+        State current = state.get();
+        if (current == State.OPEN) {
+            if (System.nanoTime() - openedAt < openNanos) {
+                rejected.increment();
+                throw new CircuitBreakerOpenException("circuit breaker " + name + " is open");
+            }
+            transition(State.OPEN, State.HALF_OPEN);
+            current = state.get();
+        }
+        if (current == State.HALF_OPEN) {
+            probes = this.probes;
+            if (probes.inFlight.incrementAndGet() > halfOpenProbes) {
+                probes.inFlight.decrementAndGet();
+                rejected.increment();
+                throw new CircuitBreakerOpenException("circuit breaker " + name + " is half open");
+            }
+        }
+        Semaphore bulkhead = this.bulkhead;
+        if (bulkhead != null && !bulkhead.tryAcquire()) {
+            if (probes != null) {
+                probes.inFlight.decrementAndGet();
+            }
+            rejected.increment();
+            throw new CircuitBreakerOpenException("circuit breaker " + name + " reached " + maxConcurrent
+                    + " concurrent calls");
+        }
+        return probes == null ? 0 : probes.generation;
+    }
+
+    /**
+     * 记录调用结果并归还并发名额
+     *
+     * @param probe {@link #acquire()}的返回值
+     * @param nanos 调用耗时
+     * @param error 调用失败的异常，成功时为null
+     */
+    public void record(int probe, long nanos, Throwable error) {
+        Semaphore bulkhead = this.bulkhead;
+        if (bulkhead != null) {
+            bulkhead.release();
+        }
+        boolean failure = error instanceof JedisConnectionException && !(error instanceof CircuitBreakerOpenException);
+        boolean slow = nanos >= slowCallNanos;
+        if (probe != 0) {
+            Probes probes = this.probes;
+            if (probes.generation != probe) {
+                // 上一半开阶段的探测，结果已不代表当前状态
+                return;
+            }
+            probes.inFlight.decrementAndGet();
+            if (failure || slow) {
+                transition(State.HALF_OPEN, State.OPEN);
+            } else if (probes.succeeded.incrementAndGet() >= halfOpenProbes) {
+                transition(State.HALF_OPEN, State.CLOSED);
+            }
+            return;
+        }
+        Bucket bucket = currentBucket();
+        bucket.calls.increment();
+        if (failure) {
+            bucket.failures.increment();
+        }
+        if (slow) {
+            bucket.slow.increment();
+        }
+        if ((failure || slow) && state.get() == State.CLOSED && exceedsThreshold()) {
+            transition(State.CLOSED, State.OPEN);
+        }
+    }
+
+    private boolean exceedsThreshold() {
+        long now = currentSecond();
+        long calls = 0;
+        long failures = 0;
+        long slow = 0;
+        for (Bucket bucket : buckets) {
+            if (now - bucket.second < buckets.length) {
+                calls += bucket.calls.sum();
+                failures += bucket.failures.sum();
+                slow += bucket.slow.sum();
+            }
+        }
+        return calls >= minimumCalls
+                && (failures >= calls * failureRateThreshold || slow >= calls * slowCallRateThreshold);
+    }
+
+    private void transition(State from, State to) {
+        if (!state.compareAndSet(from, to)) {
+            return;
+        }
+        if (to == State.OPEN) {
+            openedAt = System.nanoTime();
+        } else if (to == State.HALF_OPEN) {
+            probes = new Probes(probes.generation + 1);
+        } else {
+            this.buckets = newBuckets(buckets.length);
+        }
+        for (CircuitBreakerListener listener : listeners) {
+            listener.onStateChange(name, from, to);
+        }
+    }
+
+    private long currentSecond() {
+        return TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+    }
+
+    private Bucket currentBucket() {
+        long second = currentSecond();
+        Bucket[] buckets = this.buckets;
+        Bucket bucket = buckets[(int) (second % buckets.length)];
+        if (bucket.second != second) {
+            synchronized (bucket) {
+                if (bucket.second != second) {
+                    bucket.calls.reset();
+                    bucket.failures.reset();
+                    bucket.slow.reset();
+                    bucket.second = second;
+                }
+            }
+        }
+        return bucket;
+    }
+
+    private static Bucket[] newBuckets(int size) {
+        Bucket[] buckets = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            buckets[i] = new Bucket();
+        }
+        return buckets;
+    }
+
+    /**
+     * 一次半开阶段的探测统计，编号从1开始
+     */
+    private static final class Probes {
+
+        private final int generation;
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        private final AtomicInteger succeeded = new AtomicInteger();
+
+        private Probes(int generation) {
+            this.generation = generation;
+        }
+    }
+
+    /**
+     * 一秒内的调用统计
+     */
+    private static final class Bucket {
+
+        private volatile long second = Long.MIN_VALUE;
+
+        private final LongAdder calls = new LongAdder();
+
+        private final LongAdder failures = new LongAdder();
+
+        private final LongAdder slow = new LongAdder();
+    }
+}
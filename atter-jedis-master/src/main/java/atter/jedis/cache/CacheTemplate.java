@@ -48,16 +48,28 @@ public interface CacheTemplate {
 
     <T> void setex(String key, T value, int seconds);
 
+    /**
+     * @return 是否删除了key；在begin与commit之间缓冲时返回null，不能直接拆箱
+     */
     Boolean del(String key);
 
+    /**
+     * @return 1表示已设置超时，0表示key不存在；在begin与commit之间缓冲时返回null
+     */
     Long expire(String key, int seconds);
 
     String type(String key);
 
     Boolean exists(String key);
 
+    /**
+     * @return 递增后的值；在begin与commit之间缓冲时返回null，不能直接拆箱
+     */
     Long incr(String key);
 
+    /**
+     * @return 递减后的值；在begin与commit之间缓冲时返回null，不能直接拆箱
+     */
     Long decr(String key);
 
     void mset(String... keys);
@@ -104,10 +116,33 @@ public interface CacheTemplate {
 
     RedisSet getSortSet(String key);
 
+    /**
+     * 开始当前线程的事务，之后的写操作在本线程缓冲，commit时一次往返以MULTI/EXEC执行；
+     * 缓冲期间del、expire、incr、decr返回null，各命令的结果不会返回给调用方
+     *
+     * @return 是否开始，当前线程已有事务时返回false
+     */
     Boolean begin();
 
+    /**
+     * 记录key的当前值，提交时值已改变则放弃事务
+     *
+     * @param keys 字符串类型的key
+     */
+    void watch(String... keys);
+
+    /**
+     * 提交当前线程的事务
+     *
+     * @return 是否执行，没有事务或watch的key已被修改时返回false
+     */
     Boolean commit();
 
+    /**
+     * 丢弃当前线程缓冲的写操作
+     *
+     * @return 当前线程是否有事务
+     */
     Boolean rollback();
 
     /**
@@ -146,7 +181,7 @@ public interface CacheTemplate {
      * @param supplier      数据源处理表达式
      * @return
      */
-    List cacheQueryList(String key, Class clazz, Supplier<List> supplier);
+    <T> List<T> cacheQueryList(String key, Class<T> clazz, Supplier<List<T>> supplier);
 
     /**
      * 缓存勾搭数据源查询，混合使用方法
@@ -158,5 +193,5 @@ public interface CacheTemplate {
      * @param expireSeconds 超时时间
      * @return
      */
-    List cacheQueryList(String key, Class clazz, Supplier<List> supplier, int expireSeconds);
+    <T> List<T> cacheQueryList(String key, Class<T> clazz, Supplier<List<T>> supplier, int expireSeconds);
 }
@@ -0,0 +1,288 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atter.jedis.cache;
+
+import atter.jedis.adapter.JedisAdapter;
+import atter.jedis.pubsub.MessageListener;
+import atter.jedis.pubsub.SubscriptionManager;
+import atter.jedis.pubsub.SubscriptionStateListener;
+import com.alibaba.fastjson.JSON;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Description:  InvalidationBus
+ * 多个进程间同步一级缓存：本地写操作删除本地条目，并将key合并成批发布到频道，
+ * 其他进程收到后删除各自的条目。消息为JSON数组，首个元素为发布方节点标识，其后为key，
+ * 只有节点标识时表示清空。订阅连接断开期间的消息会丢失，断开与重连时清空本地缓存
+ * Copyright:  2018 CSNT. All rights reserved.
+ * Company:CSNT
+ *
+ * @author wangling
+ * @version 1.0
+ */
+public class InvalidationBus implements MessageListener, SubscriptionStateListener, AutoCloseable {
+
+    private final JedisAdapter jedisAdapter;
+
+    private final SubscriptionManager subscriptions;
+
+    private final NearCache nearCache;
+
+    private final String nodeId = UUID.randomUUID().toString().substring(0, 8);
+
+    private String channel = "near-cache-invalidation";
+
+    private long batchMillis = 5;
+
+    private int maxBatchSize = 512;
+
+    private final ScheduledExecutorService publisher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "jedis-invalidation");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Set<String> pending = new LinkedHashSet<>();
+
+    private boolean scheduled;
+
+    private final LongAdder publishedMessages = new LongAdder();
+
+    private final LongAdder publishedKeys = new LongAdder();
+
+    private final LongAdder publishFailures = new LongAdder();
+
+    private final LongAdder receivedMessages = new LongAdder();
+
+    private final LongAdder receivedKeys = new LongAdder();
+
+    private final LongAdder resyncs = new LongAdder();
+
+    /**
+     * 订阅未确认或已断开的节点，非空时停用本地缓存
+     */
+    private final Set<String> disconnected = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param jedisAdapter  发布消息使用的适配器
+     * @param subscriptions 订阅管理，与jedisAdapter指向相同的节点
+     * @param nearCache     本地一级缓存
+     */
+    public InvalidationBus(JedisAdapter jedisAdapter, SubscriptionManager subscriptions, NearCache nearCache) {
+        this.jedisAdapter = jedisAdapter;
+        this.subscriptions = subscriptions;
+        this.nearCache = nearCache;
+    }
+
+    /**
+     * @param channel 发布与订阅的频道，所有进程须一致
+     */
+    public void setChannel(String channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * @param batchMillis 首个key进入批次后等待合并的时间
+     */
+    public void setBatchMillis(long batchMillis) {
+        this.batchMillis = batchMillis;
+    }
+
+    /**
+     * @param maxBatchSize 每条消息最多包含的key数，攒满后立即发布
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * 订阅频道，开始接收其他进程的删除通知
+     */
+    public void start() {
+        disconnected.add(channel);
+        nearCache.setEnabled(false);
+        subscriptions.addStateListener(this);
+        subscriptions.subscribe(channel, this);
+    }
+
+    public NearCache getNearCache() {
+        return nearCache;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * 删除本地条目，并通知其他进程
+     *
+     * @param key 被修改的key
+     */
+    public void invalidate(String key) {
+        nearCache.invalidate(key);
+        boolean full;
+        synchronized (this) {
+            pending.add(key);
+            full = pending.size() >= maxBatchSize;
+            if (!full && scheduled) {
+                return;
+            }
+            scheduled = true;
+        }
+        if (full) {
+            publisher.execute(this::flush);
+        } else {
+            publisher.schedule(this::flush, batchMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 清空所有进程的本地缓存
+     */
+    public void invalidateAll() {
+        nearCache.invalidateAll();
+        publish(new ArrayList<>());
+    }
+
+    private void flush() {
+        Set<String> batch;
+        synchronized (this) {
+            batch = pending;
+            pending = new LinkedHashSet<>();
+            scheduled = false;
+        }
+        List<String> message = new ArrayList<>(Math.min(batch.size(), maxBatchSize));
+        for (String key : batch) {
+            message.add(key);
+            if (message.size() == maxBatchSize) {
+                publish(message);
+                message.clear();
+            }
+        }
+        if (!message.isEmpty()) {
+            publish(message);
+        }
+    }
+
+    private void publish(List<String> keys) {
+        List<String> message = new ArrayList<>(keys.size() + 1);
+        message.add(nodeId);
+        message.addAll(keys);
+        try {
+            jedisAdapter.publish(channel, JSON.toJSONString(message));
+            publishedMessages.increment();
+            publishedKeys.add(keys.size());
+        } catch (JedisException e) {
+            // 其他进程的条目最迟在maxStalenessMillis后过期
+            publishFailures.increment();
+        }
+    }
+
+    @Override
+    public void onMessage(String channel, String message) {
+        List<String> keys = JSON.parseArray(message, String.class);
+        if (keys == null || keys.isEmpty() || nodeId.equals(keys.get(0))) {
+            return;
+        }
+        receivedMessages.increment();
+        if (keys.size() == 1) {
+            nearCache.invalidateAll();
+            return;
+        }
+        for (int i = 1; i < keys.size(); i++) {
+            nearCache.invalidate(keys.get(i));
+        }
+        receivedKeys.add(keys.size() - 1);
+    }
+
+    /**
+     * 断开期间的通知已丢失，订阅恢复后清空本地缓存，所有节点恢复后重新启用
+     */
+    @Override
+    public synchronized void onConnected(String node) {
+        nearCache.invalidateAll();
+        resyncs.increment();
+        // 启动时的占位在首次确认订阅后移除
+        disconnected.remove(channel);
+        disconnected.remove(node);
+        nearCache.setEnabled(disconnected.isEmpty());
+    }
+
+    /**
+     * 断开期间无法收到通知，停用本地缓存，读取直接访问Redis
+     */
+    @Override
+    public synchronized void onDisconnected(String node, Throwable cause) {
+        disconnected.add(node);
+        nearCache.setEnabled(false);
+        nearCache.invalidateAll();
+    }
+
+    public long getPublishedMessages() {
+        return publishedMessages.sum();
+    }
+
+    public long getPublishedKeys() {
+        return publishedKeys.sum();
+    }
+
+    public long getPublishFailures() {
+        return publishFailures.sum();
+    }
+
+    public long getReceivedMessages() {
+        return receivedMessages.sum();
+    }
+
+    public long getReceivedKeys() {
+        return receivedKeys.sum();
+    }
+
+    /**
+     * @return 订阅恢复后清空本地缓存的次数
+     */
+    public long getResyncs() {
+        return resyncs.sum();
+    }
+
+    /**
+     * 发布尚未发出的批次，取消订阅
+     */
+    @Override
+    public void close() {
+        subscriptions.unsubscribe(channel, this);
+        subscriptions.removeStateListener(this);
+        publisher.execute(this::flush);
+        publisher.shutdown();
+        try {
+            publisher.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
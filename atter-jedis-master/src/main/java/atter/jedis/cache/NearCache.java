@@ -0,0 +1,468 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atter.jedis.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToIntBiFunction;
+
+/**
+ * Description:  NearCache
+ * 进程内一级缓存，保存反序列化后的对象，按key分段加锁以降低竞争。
+ * 每段使用分段LRU淘汰：新写入的条目进入试用区，再次命中后晋升到保护区，
+ * 一次性扫描的key只会挤出试用区，不会冲掉反复读取的热点key。
+ * 缓存的对象在多个线程间共享，调用方不应修改
+ * Copyright:  2018 CSNT. All rights reserved.
+ * Company:CSNT
+ *
+ * @author wangling
+ * @version 1.0
+ */
+public class NearCache {
+
+    /**
+     * 保护区占每段容量的比例
+     */
+    private static final double PROTECTED_RATIO = 0.8;
+
+    /**
+     * 每段保留的删除记录数，超出时丢弃最早的记录并提高该段的版本下限
+     */
+    private static final int MAX_TOMBSTONES = 1024;
+
+    private final Segment[] segments;
+
+    private final long maximumWeight;
+
+    private long ttlMillis = TimeUnit.MINUTES.toMillis(1);
+
+    private long maxStalenessMillis = TimeUnit.MINUTES.toMillis(5);
+
+    private ToIntBiFunction<String, Object> weigher = (key, value) -> 1;
+
+    private volatile boolean enabled = true;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    private final LongAdder expirations = new LongAdder();
+
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * @param maximumWeight 总权重上限，默认每个条目权重为1，即条目数上限
+     */
+    public NearCache(long maximumWeight) {
+        this(maximumWeight, Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    /**
+     * @param maximumWeight 总权重上限
+     * @param concurrency   预计并发访问的线程数，决定分段数
+     */
+    public NearCache(long maximumWeight, int concurrency) {
+        int count = 1;
+        while (count < concurrency && count < maximumWeight) {
+            count <<= 1;
+        }
+        this.maximumWeight = maximumWeight;
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(Math.max(1, maximumWeight / count));
+        }
+    }
+
+    /**
+     * @param ttlMillis 写入后的默认存活时间
+     */
+    public void setTtlMillis(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    /**
+     * 其他进程修改同一个key时本地不会收到通知，该值是本地条目可能过时的上限，
+     * 写入时指定的更长存活时间也不会超过它
+     *
+     * @param maxStalenessMillis 条目最长存活时间
+     */
+    public void setMaxStalenessMillis(long maxStalenessMillis) {
+        this.maxStalenessMillis = maxStalenessMillis;
+    }
+
+    /**
+     * @param weigher 条目的权重，与maximumWeight配合按内存占用限制大小
+     */
+    public void setWeigher(ToIntBiFunction<String, Object> weigher) {
+        this.weigher = weigher;
+    }
+
+    /**
+     * 停用时读取总是未命中且不写入，用于无法保证一致的期间，如失效通知中断
+     *
+     * @param enabled 是否启用
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    private Segment segmentFor(String key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        return segments[h & (segments.length - 1)];
+    }
+
+    /**
+     * @param key  key
+     * @param type 值的类型标记，与写入时不同视为未命中
+     * @return 缓存的值，未命中或已过期时为null
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key, Object type) {
+        if (!enabled) {
+            return null;
+        }
+        Object value = segmentFor(key).get(key, type, System.nanoTime());
+        if (value == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return (T) value;
+    }
+
+    /**
+     * 读取远端前取得的版本，远端读取期间同一个key被invalidate时put不生效，避免旧值回填；
+     * 其他key的invalidate不影响
+     */
+    public long stamp(String key) {
+        return segmentFor(key).sequence;
+    }
+
+    /**
+     * 使用默认存活时间写入
+     */
+    public void put(String key, Object type, Object value, long stamp) {
+        put(key, type, value, ttlMillis, stamp);
+    }
+
+    /**
+     * @param key       key
+     * @param type      值的类型标记
+     * @param value     反序列化后的值，null不缓存
+     * @param ttlMillis 存活时间，不超过maxStalenessMillis
+     * @param stamp     读取远端前{@link #stamp}的返回值
+     */
+    public void put(String key, Object type, Object value, long ttlMillis, long stamp) {
+        if (value == null || ttlMillis <= 0 || !enabled) {
+            return;
+        }
+        long ttl = TimeUnit.MILLISECONDS.toNanos(Math.min(ttlMillis, maxStalenessMillis));
+        int weight = weigher.applyAsInt(key, value);
+        segmentFor(key).put(new Entry(key, type, value, weight, System.nanoTime() + ttl), stamp);
+    }
+
+    /**
+     * 本地删除key，写操作后调用
+     */
+    public void invalidate(String key) {
+        if (segmentFor(key).remove(key)) {
+            invalidations.increment();
+        }
+    }
+
+    /**
+     * 清空本地缓存
+     */
+    public void invalidateAll() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return 命中率，没有访问时为0
+     */
+    public double getHitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    /**
+     * @return 因容量淘汰的条目数
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return 因超时删除的条目数
+     */
+    public long getExpirations() {
+        return expirations.sum();
+    }
+
+    /**
+     * @return 因写入或通知删除的条目数
+     */
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    public long getSize() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public long getWeight() {
+        long weight = 0;
+        for (Segment segment : segments) {
+            weight += segment.weight();
+        }
+        return weight;
+    }
+
+    public long getMaximumWeight() {
+        return maximumWeight;
+    }
+
+    @Override
+    public String toString() {
+        return "NearCache{size=" + getSize() + ", hits=" + getHits() + ", misses=" + getMisses()
+                + ", evictions=" + getEvictions() + ", expirations=" + getExpirations()
+                + ", invalidations=" + getInvalidations() + "}";
+    }
+
+    private static final class Entry {
+
+        final String key;
+
+        final Object type;
+
+        final Object value;
+
+        final int weight;
+
+        final long expireNanos;
+
+        boolean protectedEntry;
+
+        Entry(String key, Object type, Object value, int weight, long expireNanos) {
+            this.key = key;
+            this.type = type;
+            this.value = value;
+            this.weight = weight;
+            this.expireNanos = expireNanos;
+        }
+    }
+
+    /**
+     * 一段缓存，试用区与保护区均按插入顺序保存，表头为最久未访问
+     */
+    private final class Segment {
+
+        private final LinkedHashMap<String, Entry> probation = new LinkedHashMap<>();
+
+        private final LinkedHashMap<String, Entry> protectedEntries = new LinkedHashMap<>();
+
+        private final long maxWeight;
+
+        private final long maxProtectedWeight;
+
+        private long probationWeight;
+
+        private long protectedWeight;
+
+        /**
+         * 每次删除递增，读写均在锁内，读取版本不加锁
+         */
+        private volatile long sequence;
+
+        /**
+         * key最近一次删除时的版本，按删除顺序保存
+         */
+        private final LinkedHashMap<String, Long> tombstones = new LinkedHashMap<>();
+
+        /**
+         * 早于该版本的读取不能判断是否错过了删除，一律不回填
+         */
+        private long floor;
+
+        Segment(long maxWeight) {
+            this.maxWeight = maxWeight;
+            this.maxProtectedWeight = (long) (maxWeight * PROTECTED_RATIO);
+        }
+
+        synchronized Object get(String key, Object type, long now) {
+            Entry entry = protectedEntries.get(key);
+            if (entry == null) {
+                entry = probation.get(key);
+            }
+            if (entry == null) {
+                return null;
+            }
+            if (now - entry.expireNanos >= 0) {
+                unlink(entry);
+                expirations.increment();
+                return null;
+            }
+            if (!type.equals(entry.type)) {
+                return null;
+            }
+            if (entry.protectedEntry) {
+                protectedEntries.remove(key);
+                protectedEntries.put(key, entry);
+            } else {
+                probation.remove(key);
+                probationWeight -= entry.weight;
+                entry.protectedEntry = true;
+                protectedEntries.put(key, entry);
+                protectedWeight += entry.weight;
+                demote();
+            }
+            return entry.value;
+        }
+
+        synchronized void put(Entry entry, long stamp) {
+            if (stamp < floor || entry.weight > maxWeight) {
+                return;
+            }
+            Long removed = tombstones.get(entry.key);
+            if (removed != null && removed > stamp) {
+                return;
+            }
+            Entry old = protectedEntries.get(entry.key);
+            if (old == null) {
+                old = probation.get(entry.key);
+            }
+            if (old != null) {
+                unlink(old);
+            }
+            probation.put(entry.key, entry);
+            probationWeight += entry.weight;
+            evict();
+        }
+
+        synchronized boolean remove(String key) {
+            long removed = ++sequence;
+            tombstones.remove(key);
+            tombstones.put(key, removed);
+            if (tombstones.size() > MAX_TOMBSTONES) {
+                Iterator<Long> eldest = tombstones.values().iterator();
+                floor = eldest.next();
+                eldest.remove();
+            }
+            Entry entry = protectedEntries.get(key);
+            if (entry == null) {
+                entry = probation.get(key);
+            }
+            if (entry == null) {
+                return false;
+            }
+            unlink(entry);
+            return true;
+        }
+
+        synchronized void clear() {
+            floor = ++sequence;
+            tombstones.clear();
+            probation.clear();
+            protectedEntries.clear();
+            probationWeight = 0;
+            protectedWeight = 0;
+        }
+
+        synchronized int size() {
+            return probation.size() + protectedEntries.size();
+        }
+
+        synchronized long weight() {
+            return probationWeight + protectedWeight;
+        }
+
+        private void unlink(Entry entry) {
+            if (entry.protectedEntry) {
+                protectedEntries.remove(entry.key);
+                protectedWeight -= entry.weight;
+            } else {
+                probation.remove(entry.key);
+                probationWeight -= entry.weight;
+            }
+        }
+
+        /**
+         * 保护区超出比例时，最久未访问的条目降回试用区
+         */
+        private void demote() {
+            Iterator<Entry> it = protectedEntries.values().iterator();
+            while (protectedWeight > maxProtectedWeight && it.hasNext()) {
+                Entry entry = it.next();
+                it.remove();
+                protectedWeight -= entry.weight;
+                entry.protectedEntry = false;
+                probation.put(entry.key, entry);
+                probationWeight += entry.weight;
+            }
+        }
+
+        /**
+         * 超出容量时先淘汰试用区最久未访问的条目，试用区为空再淘汰保护区
+         */
+        private void evict() {
+            while (probationWeight + protectedWeight > maxWeight) {
+                LinkedHashMap<String, Entry> victims = probation.isEmpty() ? protectedEntries : probation;
+                Iterator<Entry> it = victims.values().iterator();
+                unlinkNext(it);
+                evictions.increment();
+            }
+        }
+
+        private void unlinkNext(Iterator<Entry> it) {
+            Entry entry = it.next();
+            it.remove();
+            if (entry.protectedEntry) {
+                protectedWeight -= entry.weight;
+            } else {
+                probationWeight -= entry.weight;
+            }
+        }
+    }
+}
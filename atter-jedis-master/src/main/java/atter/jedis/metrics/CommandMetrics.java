@@ -0,0 +1,238 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atter.jedis.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.ObjectName;
+import java.net.SocketTimeoutException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Description:  CommandMetrics
+ * 适配器按命令统计的调用次数、错误、超时及耗时，经JMX和MetricsReporter输出。
+ * 适配器未设置统计时不做任何记录
+ * Copyright:  2018 CSNT. All rights reserved.
+ * Company:CSNT
+ *
+ * @author wangling
+ * @version 1.0
+ */
+public class CommandMetrics implements CommandMetricsMXBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(CommandMetrics.class);
+
+    private final String name;
+
+    private final ConcurrentMap<String, CommandStats> commands = new ConcurrentHashMap<>();
+
+    private final LongAdder inFlight = new LongAdder();
+
+    private final List<MetricsReporter> reporters = new CopyOnWriteArrayList<>();
+
+    private ScheduledExecutorService reportExecutor;
+
+    private ObjectName objectName;
+
+    public CommandMetrics(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 连接已借出，命令开始执行
+     */
+    public void started() {
+        inFlight.increment();
+    }
+
+    /**
+     * 命令执行结束并归还连接
+     *
+     * @param command        命令
+     * @param borrowNanos    等待连接的耗时
+     * @param roundTripNanos 命令往返的耗时
+     * @param error          执行失败的异常，成功时为null
+     */
+    public void finished(String command, long borrowNanos, long roundTripNanos, Throwable error) {
+        inFlight.decrement();
+        record(command, borrowNanos, roundTripNanos, error);
+    }
+
+    /**
+     * 记录一次调用，未能借到连接时只记录等待耗时
+     */
+    public void record(String command, long borrowNanos, long roundTripNanos, Throwable error) {
+        CommandStats stats = commands.get(command);
+        if (stats == null) {
+            stats = commands.computeIfAbsent(command, CommandStats::new);
+        }
+        stats.record(borrowNanos, roundTripNanos, error != null, error != null && isTimeout(error));
+    }
+
+    /**
+     * 读取超时或等待连接超时
+     */
+    private boolean isTimeout(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SocketTimeoutException || cause instanceof NoSuchElementException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public CommandStats getStats(String command) {
+        return commands.get(command);
+    }
+
+    @Override
+    public Map<String, CommandSnapshot> getCommands() {
+        Map<String, CommandSnapshot> snapshot = new TreeMap<>();
+        for (CommandStats stats : commands.values()) {
+            snapshot.put(stats.getCommand(), stats.snapshot());
+        }
+        return snapshot;
+    }
+
+    @Override
+    public long getInFlight() {
+        return inFlight.sum();
+    }
+
+    @Override
+    public long getCalls() {
+        long calls = 0;
+        for (CommandStats stats : commands.values()) {
+            calls += stats.getCalls();
+        }
+        return calls;
+    }
+
+    @Override
+    public long getErrors() {
+        long errors = 0;
+        for (CommandStats stats : commands.values()) {
+            errors += stats.getErrors();
+        }
+        return errors;
+    }
+
+    @Override
+    public long getTimeouts() {
+        long timeouts = 0;
+        for (CommandStats stats : commands.values()) {
+            timeouts += stats.getTimeouts();
+        }
+        return timeouts;
+    }
+
+    @Override
+    public void reset() {
+        for (CommandStats stats : commands.values()) {
+            stats.reset();
+        }
+    }
+
+    /**
+     * 注册到平台MBeanServer，名称为atter.jedis:type=CommandMetrics,name={name}
+     */
+    public synchronized void registerMBean() {
+        if (objectName == null) {
+            objectName = MBeans.register(this, "CommandMetrics", name);
+        }
+    }
+
+    public synchronized void unregisterMBean() {
+        if (objectName != null) {
+            MBeans.unregister(objectName);
+            objectName = null;
+        }
+    }
+
+    public void addReporter(MetricsReporter reporter) {
+        reporters.add(reporter);
+    }
+
+    /**
+     * @param reporters 输出统计的扩展
+     */
+    public void setReporters(List<MetricsReporter> reporters) {
+        this.reporters.clear();
+        this.reporters.addAll(reporters);
+    }
+
+    /**
+     * 加入classpath中通过ServiceLoader注册的MetricsReporter
+     */
+    public void loadReporters() {
+        for (MetricsReporter reporter : ServiceLoader.load(MetricsReporter.class)) {
+            reporters.add(reporter);
+        }
+    }
+
+    /**
+     * 按固定周期将统计输出到各MetricsReporter
+     *
+     * @param periodSeconds 输出周期
+     */
+    public synchronized void startReporting(long periodSeconds) {
+        if (reportExecutor != null) {
+            return;
+        }
+        reportExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "jedis-metrics-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        reportExecutor.scheduleAtFixedRate(this::report, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    public synchronized void stopReporting() {
+        if (reportExecutor != null) {
+            reportExecutor.shutdown();
+            reportExecutor = null;
+        }
+    }
+
+    /**
+     * 立即输出一次统计
+     */
+    public void report() {
+        Map<String, CommandSnapshot> snapshot = getCommands();
+        long current = inFlight.sum();
+        for (MetricsReporter reporter : reporters) {
+            try {
+                reporter.report(name, snapshot, current);
+            } catch (RuntimeException e) {
+                // 单个输出失败不影响其他输出及后续周期
+                logger.error("metrics reporter {} failed for {}", reporter, name, e);
+            }
+        }
+    }
+}
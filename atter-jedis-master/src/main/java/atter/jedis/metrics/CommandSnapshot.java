@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atter.jedis.metrics;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Description:  CommandSnapshot
+ * 某一时刻单个命令的统计值，耗时单位为微秒，可经JMX读取
+ * Copyright:  2018 CSNT. All rights reserved.
+ * Company:CSNT
+ *
+ * @author wangling
+ * @version 1.0
+ */
+public class CommandSnapshot {
+
+    private final String command;
+
+    private final long calls;
+
+    private final long errors;
+
+    private final long timeouts;
+
+    private final long borrowMeanMicros;
+
+    private final long borrowP99Micros;
+
+    private final long borrowMaxMicros;
+
+    private final long roundTripMeanMicros;
+
+    private final long roundTripP50Micros;
+
+    private final long roundTripP99Micros;
+
+    private final long roundTripP999Micros;
+
+    private final long roundTripMaxMicros;
+
+    @ConstructorProperties({"command", "calls", "errors", "timeouts", "borrowMeanMicros", "borrowP99Micros", "borrowMaxMicros", "roundTripMeanMicros", "roundTripP50Micros", "roundTripP99Micros", "roundTripP999Micros", "roundTripMaxMicros"})
+    public CommandSnapshot(String command, long calls, long errors, long timeouts, long borrowMeanMicros, long borrowP99Micros, long borrowMaxMicros, long roundTripMeanMicros, long roundTripP50Micros, long roundTripP99Micros, long roundTripP999Micros, long roundTripMaxMicros) {
+        this.command = command;
+        this.calls = calls;
+        this.errors = errors;
+        this.timeouts = timeouts;
+        this.borrowMeanMicros = borrowMeanMicros;
+        this.borrowP99Micros = borrowP99Micros;
+        this.borrowMaxMicros = borrowMaxMicros;
+        this.roundTripMeanMicros = roundTripMeanMicros;
+        this.roundTripP50Micros = roundTripP50Micros;
+        this.roundTripP99Micros = roundTripP99Micros;
+        this.roundTripP999Micros = roundTripP999Micros;
+        this.roundTripMaxMicros = roundTripMaxMicros;
+    }
+
+    /**
+     * @return 命令
+     */
+    public String getCommand() {
+        return command;
+    }
+
+    /**
+     * @return 调用次数
+     */
+    public long getCalls() {
+        return calls;
+    }
+
+    /**
+     * @return 错误次数
+     */
+    public long getErrors() {
+        return errors;
+    }
+
+    /**
+     * @return 超时次数（等待连接或读取超时）
+     */
+    public long getTimeouts() {
+        return timeouts;
+    }
+
+    /**
+     * @return 等待连接的平均耗时
+     */
+    public long getBorrowMeanMicros() {
+        return borrowMeanMicros;
+    }
+
+    /**
+     * @return 等待连接耗时的99分位
+     */
+    public long getBorrowP99Micros() {
+        return borrowP99Micros;
+    }
+
+    /**
+     * @return 等待连接的最大耗时
+     */
+    public long getBorrowMaxMicros() {
+        return borrowMaxMicros;
+    }
+
+    /**
+     * @return 命令往返的平均耗时
+     */
+    public long getRoundTripMeanMicros() {
+        return roundTripMeanMicros;
+    }
+
+    /**
+     * @return 命令往返耗时的中位数
+     */
+    public long getRoundTripP50Micros() {
+        return roundTripP50Micros;
+    }
+
+    /**
+     * @return 命令往返耗时的99分位
+     */
+    public long getRoundTripP99Micros() {
+        return roundTripP99Micros;
+    }
+
+    /**
+     * @return 命令往返耗时的999分位
+     */
+    public long getRoundTripP999Micros() {
+        return roundTripP999Micros;
+    }
+
+    /**
+     * @return 命令往返的最大耗时
+     */
+    public long getRoundTripMaxMicros() {
+        return roundTripMaxMicros;
+    }
+
+    @Override
+    public String toString() {
+        return command + " calls=" + calls + " errors=" + errors + " timeouts=" + timeouts
+                + " borrow(mean/p99/max)=" + borrowMeanMicros + "/" + borrowP99Micros + "/" + borrowMaxMicros + "us"
+                + " rtt(mean/p50/p99/p999/max)=" + roundTripMeanMicros + "/" + roundTripP50Micros + "/"
+                + roundTripP99Micros + "/" + roundTripP999Micros + "/" + roundTripMaxMicros + "us";
+    }
+}
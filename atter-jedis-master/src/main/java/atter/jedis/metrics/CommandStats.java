@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atter.jedis.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Description:  CommandStats
+ * 单个命令的调用次数、错误与超时次数，以及等待连接和命令往返的耗时分布
+ * Copyright:  2018 CSNT. All rights reserved.
+ * Company:CSNT
+ *
+ * @author wangling
+ * @version 1.0
+ */
+public class CommandStats {
+
+    private final String command;
+
+    private final LongAdder calls = new LongAdder();
+
+    private final LongAdder errors = new LongAdder();
+
+    private final LongAdder timeouts = new LongAdder();
+
+    private final LatencyHistogram borrow = new LatencyHistogram();
+
+    private final LatencyHistogram roundTrip = new LatencyHistogram();
+
+    public CommandStats(String command) {
+        this.command = command;
+    }
+
+    void record(long borrowNanos, long roundTripNanos, boolean error, boolean timeout) {
+        calls.increment();
+        borrow.record(borrowNanos);
+        roundTrip.record(roundTripNanos);
+        if (error) {
+            errors.increment();
+        }
+        if (timeout) {
+            timeouts.increment();
+        }
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    public LatencyHistogram getBorrow() {
+        return borrow;
+    }
+
+    public LatencyHistogram getRoundTrip() {
+        return roundTrip;
+    }
+
+    public CommandSnapshot snapshot() {
+        return new CommandSnapshot(command, calls.sum(), errors.sum(), timeouts.sum(),
+                borrow.getMeanMicros(), borrow.getPercentileMicros(0.99), borrow.getMaxMicros(),
+                roundTrip.getMeanMicros(), roundTrip.getPercentileMicros(0.5),
+                roundTrip.getPercentileMicros(0.99), roundTrip.getPercentileMicros(0.999),
+                roundTrip.getMaxMicros());
+    }
+
+    void reset() {
+        calls.reset();
+        errors.reset();
+        timeouts.reset();
+        borrow.reset();
+        roundTrip.reset();
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atter.jedis.metrics;
+
+import java.util.Map;
+
+/**
+ * Description:  MetricsReporter
+ * 统计数据的输出扩展点，实现类可通过META-INF/services/atter.jedis.metrics.MetricsReporter注册，
+ * 由CommandMetrics按固定周期调用
+ * Copyright:  2018 CSNT. All rights reserved.
+ * Company:CSNT
+ *
+ * @author wangling
+ * @version 1.0
+ */
+public interface MetricsReporter {
+
+    /**
+     * @param name     统计名称，区分多个适配器
+     * @param commands 各命令的统计值
+     * @param inFlight 正在占用的连接数
+     */
+    void report(String name, Map<String, CommandSnapshot> commands, long inFlight);
+}
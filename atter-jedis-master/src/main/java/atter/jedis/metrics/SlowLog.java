@@ -0,0 +1,314 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atter.jedis.metrics;
+
+import redis.clients.util.SafeEncoder;
+
+import javax.management.ObjectName;
+import java.lang.reflect.Array;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Description:  SlowLog
+ * 客户端慢命令日志：耗时（等待连接加命令往返）超过阈值的调用写入有界环形缓冲，
+ * 另按比例采样记录带调用栈的完整调用，用于在生产环境定位大key与热点命令。
+ * 只有慢调用和被采样的调用才计算key、参数与应答大小
+ * Copyright:  2018 CSNT. All rights reserved.
+ * Company:CSNT
+ *
+ * @author wangling
+ * @version 1.0
+ */
+public class SlowLog implements SlowLogMXBean {
+
+    private static final int MAX_KEY_LENGTH = 128;
+
+    private final String name;
+
+    private final Ring entries;
+
+    private final Ring samples;
+
+    private final AtomicLong slowCount = new AtomicLong();
+
+    private volatile long thresholdNanos = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private volatile double sampleRate;
+
+    private ObjectName objectName;
+
+    public SlowLog(String name) {
+        this(name, 128);
+    }
+
+    /**
+     * @param name     日志名称，区分多个适配器
+     * @param capacity 慢日志与采样各自保留的条数
+     */
+    public SlowLog(String name, int capacity) {
+        this.name = name;
+        this.entries = new Ring(capacity);
+        this.samples = new Ring(capacity);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getThresholdMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(thresholdNanos);
+    }
+
+    /**
+     * @param thresholdMicros 慢调用的阈值，默认10毫秒
+     */
+    @Override
+    public void setThresholdMicros(long thresholdMicros) {
+        this.thresholdNanos = TimeUnit.MICROSECONDS.toNanos(thresholdMicros);
+    }
+
+    @Override
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * @param sampleRate 采样比例，0到1之间，默认0不采样
+     */
+    @Override
+    public void setSampleRate(double sampleRate) {
+        if (sampleRate < 0 || sampleRate > 1) {
+            throw new IllegalArgumentException("sampleRate must be between 0 and 1");
+        }
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * 记录一次调用，未超过阈值且未被采样时直接返回
+     *
+     * @param command        命令
+     * @param key            key或key数组
+     * @param args           参数，无参数时为null
+     * @param reply          应答
+     * @param borrowNanos    等待连接的耗时
+     * @param roundTripNanos 命令往返的耗时
+     * @param error          执行失败的异常，成功时为null
+     */
+    public void record(String command, Object key, Object args, Object reply, long borrowNanos,
+                       long roundTripNanos, Throwable error) {
+        boolean slow = borrowNanos + roundTripNanos >= thresholdNanos;
+        double rate = sampleRate;
+        boolean sampled = rate > 0 && ThreadLocalRandom.current().nextDouble() < rate;
+        if (!slow && !sampled) {
+            return;
+        }
+        String[] stackTrace = null;
+        if (sampled) {
+            StackTraceElement[] frames = new Throwable().getStackTrace();
+            stackTrace = new String[frames.length];
+            for (int i = 0; i < frames.length; i++) {
+                stackTrace[i] = frames[i].toString();
+            }
+        }
+        SlowLogEntry entry = new SlowLogEntry(System.currentTimeMillis(), command, formatKey(key),
+                args == null ? -1 : sizeOf(args), sizeOf(reply),
+                TimeUnit.NANOSECONDS.toMicros(borrowNanos), TimeUnit.NANOSECONDS.toMicros(roundTripNanos),
+                Thread.currentThread().getName(), error == null ? null : error.toString(), stackTrace);
+        if (slow) {
+            slowCount.incrementAndGet();
+            entries.add(entry);
+        }
+        if (sampled) {
+            samples.add(entry);
+        }
+    }
+
+    private String formatKey(Object key) {
+        if (key == null) {
+            return null;
+        }
+        String text;
+        if (key.getClass().isArray() && !(key instanceof byte[])) {
+            int length = Array.getLength(key);
+            text = length == 0 ? "" : formatKey(Array.get(key, 0)) + (length > 1 ? " (" + length + " keys)" : "");
+        } else if (key instanceof byte[]) {
+            text = SafeEncoder.encode((byte[]) key);
+        } else {
+            text = key.toString();
+        }
+        return text.length() > MAX_KEY_LENGTH ? text.substring(0, MAX_KEY_LENGTH) + "..." : text;
+    }
+
+    /**
+     * @return 字符串与字节数组为长度，数组与Map为各元素之和，集合为元素数
+     */
+    private long sizeOf(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof String) {
+            return ((String) value).length();
+        }
+        if (value instanceof byte[]) {
+            return ((byte[]) value).length;
+        }
+        if (value instanceof Object[]) {
+            long size = 0;
+            for (Object element : (Object[]) value) {
+                size += sizeOf(element);
+            }
+            return size;
+        }
+        if (value instanceof Map) {
+            long size = 0;
+            for (Map.Entry<?, ?> element : ((Map<?, ?>) value).entrySet()) {
+                size += sizeOf(element.getKey()) + sizeOf(element.getValue());
+            }
+            return size;
+        }
+        if (value instanceof Collection) {
+            return ((Collection<?>) value).size();
+        }
+        return 0;
+    }
+
+    /**
+     * @return 慢调用，最近的在前
+     */
+    @Override
+    public List<SlowLogEntry> getEntries() {
+        return entries.list();
+    }
+
+    /**
+     * @return 采样的调用，最近的在前
+     */
+    @Override
+    public List<SlowLogEntry> getSamples() {
+        return samples.list();
+    }
+
+    /**
+     * @return 累计的慢调用次数，包括已被覆盖的记录
+     */
+    @Override
+    public long getSlowCount() {
+        return slowCount.get();
+    }
+
+    /**
+     * @return 按命令汇总的慢调用次数，次数多的在前
+     */
+    public Map<String, Integer> getOffenders() {
+        Map<String, Integer> counts = new HashMap<>();
+        for (SlowLogEntry entry : entries.list()) {
+            counts.merge(entry.getCommand() + " " + entry.getKey(), 1, Integer::sum);
+        }
+        List<Map.Entry<String, Integer>> sorted = new ArrayList<>(counts.entrySet());
+        sorted.sort((a, b) -> b.getValue() - a.getValue());
+        Map<String, Integer> offenders = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> entry : sorted) {
+            offenders.put(entry.getKey(), entry.getValue());
+        }
+        return offenders;
+    }
+
+    /**
+     * @return 慢调用与采样调用的文本
+     */
+    @Override
+    public String dump() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("slow log ").append(name).append(", threshold ").append(getThresholdMicros())
+                .append("us, total ").append(slowCount.get()).append('\n');
+        for (SlowLogEntry entry : entries.list()) {
+            builder.append(entry).append('\n');
+        }
+        List<SlowLogEntry> sampledEntries = samples.list();
+        if (!sampledEntries.isEmpty()) {
+            builder.append("samples, rate ").append(sampleRate).append('\n');
+            for (SlowLogEntry entry : sampledEntries) {
+                builder.append(entry).append('\n');
+            }
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public void clear() {
+        entries.clear();
+        samples.clear();
+        slowCount.set(0);
+    }
+
+    /**
+     * 注册到平台MBeanServer，名称为atter.jedis:type=SlowLog,name={name}
+     */
+    public synchronized void registerMBean() {
+        if (objectName == null) {
+            objectName = MBeans.register(this, "SlowLog", name);
+        }
+    }
+
+    public synchronized void unregisterMBean() {
+        if (objectName != null) {
+            MBeans.unregister(objectName);
+            objectName = null;
+        }
+    }
+
+    /**
+     * 定长环形缓冲，写满后覆盖最早的记录
+     */
+    private static final class Ring {
+
+        private final AtomicReferenceArray<SlowLogEntry> slots;
+
+        private final AtomicLong sequence = new AtomicLong();
+
+        Ring(int capacity) {
+            this.slots = new AtomicReferenceArray<>(capacity);
+        }
+
+        void add(SlowLogEntry entry) {
+            slots.set((int) (sequence.getAndIncrement() % slots.length()), entry);
+        }
+
+        List<SlowLogEntry> list() {
+            long last = sequence.get();
+            List<SlowLogEntry> list = new ArrayList<>(slots.length());
+            for (long i = last - 1; i >= 0 && i >= last - slots.length(); i--) {
+                SlowLogEntry entry = slots.get((int) (i % slots.length()));
+                if (entry != null) {
+                    list.add(entry);
+                }
+            }
+            return list;
+        }
+
+        void clear() {
+            for (int i = 0; i < slots.length(); i++) {
+                slots.set(i, null);
+            }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atter.jedis.metrics;
+
+import java.beans.ConstructorProperties;
+import java.util.Date;
+
+/**
+ * Description:  SlowLogEntry
+ * 慢命令日志或采样调用的一条记录，耗时单位为微秒
+ * Copyright:  2018 CSNT. All rights reserved.
+ * Company:CSNT
+ *
+ * @author wangling
+ * @version 1.0
+ */
+public class SlowLogEntry {
+
+    private final long timestamp;
+
+    private final String command;
+
+    private final String key;
+
+    private final long argSize;
+
+    private final long replySize;
+
+    private final long borrowMicros;
+
+    private final long roundTripMicros;
+
+    private final String thread;
+
+    private final String error;
+
+    private final String[] stackTrace;
+
+    @ConstructorProperties({"timestamp", "command", "key", "argSize", "replySize", "borrowMicros", "roundTripMicros", "thread", "error", "stackTrace"})
+    public SlowLogEntry(long timestamp, String command, String key, long argSize, long replySize, long borrowMicros, long roundTripMicros, String thread, String error, String[] stackTrace) {
+        this.timestamp = timestamp;
+        this.command = command;
+        this.key = key;
+        this.argSize = argSize;
+        this.replySize = replySize;
+        this.borrowMicros = borrowMicros;
+        this.roundTripMicros = roundTripMicros;
+        this.thread = thread;
+        this.error = error;
+        this.stackTrace = stackTrace;
+    }
+
+    /**
+     * @return 发生时间（毫秒）
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return 命令
+     */
+    public String getCommand() {
+        return command;
+    }
+
+    /**
+     * @return key，多个key时只显示第一个及总数
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return 参数的字符或字节数，无参数时为-1
+     */
+    public long getArgSize() {
+        return argSize;
+    }
+
+    /**
+     * @return 应答的字符或字节数，集合应答为元素数
+     */
+    public long getReplySize() {
+        return replySize;
+    }
+
+    /**
+     * @return 等待连接的耗时
+     */
+    public long getBorrowMicros() {
+        return borrowMicros;
+    }
+
+    /**
+     * @return 命令往返的耗时
+     */
+    public long getRoundTripMicros() {
+        return roundTripMicros;
+    }
+
+    /**
+     * @return 调用线程
+     */
+    public String getThread() {
+        return thread;
+    }
+
+    /**
+     * @return 失败时的异常，成功时为null
+     */
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * @return 调用栈，仅采样的调用记录
+     */
+    public String[] getStackTrace() {
+        return stackTrace;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder()
+                .append(String.format("%tF %<tT.%<tL", new Date(timestamp)))
+                .append(' ').append(command).append(' ').append(key)
+                .append(" args=").append(argSize).append(" reply=").append(replySize)
+                .append(" borrow=").append(borrowMicros).append("us rtt=").append(roundTripMicros).append("us")
+                .append(" thread=").append(thread);
+        if (error != null) {
+            builder.append(" error=").append(error);
+        }
+        if (stackTrace != null) {
+            for (String frame : stackTrace) {
+                builder.append("\n\tat ").append(frame);
+            }
+        }
+        return builder.toString();
+    }
+}
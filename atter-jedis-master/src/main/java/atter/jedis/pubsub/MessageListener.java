@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atter.jedis.pubsub;
+
+/**
+ * Description:  MessageListener
+ * Copyright:  2018 CSNT. All rights reserved.
+ * Company:CSNT
+ *
+ * @author wangling
+ * @version 1.0
+ */
+public interface MessageListener {
+
+    /**
+     * 在频道所属的分发线程上调用，同一频道的消息按到达顺序处理
+     *
+     * @param channel 频道
+     * @param message 消息
+     */
+    void onMessage(String channel, String message);
+
+    /**
+     * 模式订阅收到的消息，在频道所属的分发线程上调用
+     *
+     * @param pattern 匹配的模式
+     * @param channel 频道
+     * @param message 消息
+     */
+    default void onPMessage(String pattern, String channel, String message) {
+        onMessage(channel, message);
+    }
+}
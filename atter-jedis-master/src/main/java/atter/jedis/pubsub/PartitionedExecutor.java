@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atter.jedis.pubsub;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Description:  PartitionedExecutor
+ * 按key分区的执行器，同一key的任务总在同一个线程上按提交顺序执行；
+ * 分区队列已满时提交的线程阻塞等待，订阅线程因此暂停读取，由连接向节点施加背压
+ * Copyright:  2018 CSNT. All rights reserved.
+ * Company:CSNT
+ *
+ * @author wangling
+ * @version 1.0
+ */
+public class PartitionedExecutor {
+
+    private final ExecutorService[] partitions;
+
+    public PartitionedExecutor(int partitions, String name) {
+        this(partitions, name, 10000);
+    }
+
+    /**
+     * @param partitions 分区数
+     * @param name       线程名前缀
+     * @param capacity   每个分区的队列容量
+     */
+    public PartitionedExecutor(int partitions, String name, int capacity) {
+        this.partitions = new ExecutorService[partitions];
+        for (int i = 0; i < partitions; i++) {
+            String threadName = name + "-" + i;
+            this.partitions[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(capacity), runnable -> {
+                Thread thread = new Thread(runnable, threadName);
+                thread.setDaemon(true);
+                return thread;
+            }, (task, executor) -> {
+                // 同一分区只有一个线程，排入队尾仍保持提交顺序
+                try {
+                    while (!executor.getQueue().offer(task, 100, TimeUnit.MILLISECONDS)) {
+                        if (executor.isShutdown()) {
+                            throw new RejectedExecutionException("partition " + threadName + " is shut down");
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RejectedExecutionException("interrupted while waiting for " + threadName, e);
+                }
+            });
+        }
+    }
+
+    public void execute(String key, Runnable task) {
+        partitions[(key.hashCode() & Integer.MAX_VALUE) % partitions.length].execute(task);
+    }
+
+    public void shutdown() {
+        for (ExecutorService partition : partitions) {
+            partition.shutdown();
+        }
+    }
+}
@@ -0,0 +1,435 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atter.jedis.pubsub;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.JedisShardInfo;
+import redis.clients.util.Sharded;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Description:  SubscriptionManager
+ * 每个节点一个专用的订阅连接，多个频道监听器复用该连接，不占用命令连接池，也不阻塞订阅方线程。
+ * 频道按与ShardedJedis相同的规则路由到节点，模式在所有节点上订阅；
+ * 消息经分区执行器分发，同一频道的消息按到达顺序处理。订阅可在运行时增减，连接断开后自动重连并恢复订阅。
+ * Copyright:  2018 CSNT. All rights reserved.
+ * Company:CSNT
+ *
+ * @author wangling
+ * @version 1.0
+ */
+public class SubscriptionManager implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SubscriptionManager.class);
+
+    private final Sharded<Jedis, JedisShardInfo> sharded;
+
+    private final Map<JedisShardInfo, NodeSubscriber> nodes = new IdentityHashMap<>();
+
+    private final ConcurrentMap<String, List<MessageListener>> channelListeners = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, List<MessageListener>> patternListeners = new ConcurrentHashMap<>();
+
+    private final List<SubscriptionStateListener> stateListeners = new CopyOnWriteArrayList<>();
+
+    private final PartitionedExecutor dispatcher;
+
+    private volatile long maxReconnectMillis = 30000;
+
+    private volatile boolean closed;
+
+    public SubscriptionManager(String host, int port) {
+        this(Collections.singletonList(new JedisShardInfo(host, port)), 1);
+    }
+
+    /**
+     * @param shards          节点列表，与ShardedJedisPool使用同一列表时频道路由一致
+     * @param dispatchThreads 分发线程数
+     */
+    public SubscriptionManager(List<JedisShardInfo> shards, int dispatchThreads) {
+        this(shards, dispatchThreads, 10000);
+    }
+
+    /**
+     * @param shards            节点列表，与ShardedJedisPool使用同一列表时频道路由一致
+     * @param dispatchThreads   分发线程数
+     * @param dispatchQueueSize 每个分发线程待处理消息的上限，达到上限时订阅连接暂停读取
+     */
+    public SubscriptionManager(List<JedisShardInfo> shards, int dispatchThreads, int dispatchQueueSize) {
+        this.sharded = new Sharded<>(shards);
+        this.dispatcher = new PartitionedExecutor(dispatchThreads, "jedis-subscription-dispatch", dispatchQueueSize);
+        for (JedisShardInfo shard : shards) {
+            nodes.put(shard, new NodeSubscriber(shard));
+        }
+    }
+
+    /**
+     * @param maxReconnectMillis 重连间隔的上限，间隔从100毫秒起逐次加倍
+     */
+    public void setMaxReconnectMillis(long maxReconnectMillis) {
+        this.maxReconnectMillis = maxReconnectMillis;
+    }
+
+    public void addStateListener(SubscriptionStateListener listener) {
+        stateListeners.add(listener);
+    }
+
+    public void removeStateListener(SubscriptionStateListener listener) {
+        stateListeners.remove(listener);
+    }
+
+    public void subscribe(String channel, MessageListener listener) {
+        checkOpen();
+        channelListeners.computeIfAbsent(channel, c -> new CopyOnWriteArrayList<>()).add(listener);
+        nodeOf(channel).add(channel, false);
+    }
+
+    public void unsubscribe(String channel, MessageListener listener) {
+        if (removeListener(channelListeners, channel, listener)) {
+            nodeOf(channel).remove(channel, false);
+        }
+    }
+
+    public void psubscribe(String pattern, MessageListener listener) {
+        checkOpen();
+        patternListeners.computeIfAbsent(pattern, p -> new CopyOnWriteArrayList<>()).add(listener);
+        for (NodeSubscriber node : nodes.values()) {
+            node.add(pattern, true);
+        }
+    }
+
+    public void punsubscribe(String pattern, MessageListener listener) {
+        if (removeListener(patternListeners, pattern, listener)) {
+            for (NodeSubscriber node : nodes.values()) {
+                node.remove(pattern, true);
+            }
+        }
+    }
+
+    /**
+     * @return 已订阅的频道
+     */
+    public Set<String> getChannels() {
+        return Collections.unmodifiableSet(channelListeners.keySet());
+    }
+
+    /**
+     * @return 已订阅的模式
+     */
+    public Set<String> getPatterns() {
+        return Collections.unmodifiableSet(patternListeners.keySet());
+    }
+
+    /**
+     * 关闭所有订阅连接及分发线程，已提交的消息仍会分发完
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (NodeSubscriber node : nodes.values()) {
+            node.shutdown();
+        }
+        dispatcher.shutdown();
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("subscription manager closed");
+        }
+    }
+
+    /**
+     * @return 移除后该频道上已没有监听器时返回true
+     */
+    private boolean removeListener(ConcurrentMap<String, List<MessageListener>> listeners, String key,
+                                   MessageListener listener) {
+        boolean[] empty = new boolean[1];
+        listeners.computeIfPresent(key, (k, list) -> {
+            list.remove(listener);
+            empty[0] = list.isEmpty();
+            return empty[0] ? null : list;
+        });
+        return empty[0];
+    }
+
+    private NodeSubscriber nodeOf(String channel) {
+        return nodes.get(sharded.getShardInfo(channel));
+    }
+
+    private void dispatch(String channel, List<MessageListener> listeners, Consumer<MessageListener> delivery) {
+        if (listeners == null) {
+            return;
+        }
+        dispatcher.execute(channel, () -> {
+            for (MessageListener listener : listeners) {
+                try {
+                    delivery.accept(listener);
+                } catch (RuntimeException e) {
+                    // 单个监听器出错不影响同一消息的其他监听器及后续消息
+                    logger.error("message listener {} failed on channel {}", listener, channel, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * 单个节点的订阅连接，由专用线程阻塞读取消息
+     */
+    private final class NodeSubscriber implements Runnable {
+
+        private final JedisShardInfo shardInfo;
+
+        private final String node;
+
+        private final Thread thread;
+
+        /**
+         * 期望订阅的频道与模式
+         */
+        private final Set<String> channels = new HashSet<>();
+
+        private final Set<String> patterns = new HashSet<>();
+
+        /**
+         * 已在当前连接上发出订阅的频道与模式
+         */
+        private final Set<String> sentChannels = new HashSet<>();
+
+        private final Set<String> sentPatterns = new HashSet<>();
+
+        private Jedis jedis;
+
+        private JedisPubSub pubSub;
+
+        private boolean started;
+
+        NodeSubscriber(JedisShardInfo shardInfo) {
+            this.shardInfo = shardInfo;
+            this.node = shardInfo.getHost() + ":" + shardInfo.getPort();
+            this.thread = new Thread(this, "jedis-subscriber-" + node);
+            this.thread.setDaemon(true);
+        }
+
+        synchronized void add(String name, boolean pattern) {
+            (pattern ? patterns : channels).add(name);
+            if (!started) {
+                started = true;
+                thread.start();
+            }
+            notifyAll();
+            sync();
+        }
+
+        synchronized void remove(String name, boolean pattern) {
+            (pattern ? patterns : channels).remove(name);
+            sync();
+        }
+
+        /**
+         * 将期望的订阅与连接上已发出的订阅对齐，须在订阅确认后才能在其他线程上发送
+         */
+        private synchronized void sync() {
+            if (pubSub == null || !pubSub.isSubscribed()) {
+                return;
+            }
+            String[] subscribe = difference(channels, sentChannels);
+            String[] unsubscribe = difference(sentChannels, channels);
+            String[] psubscribe = difference(patterns, sentPatterns);
+            String[] punsubscribe = difference(sentPatterns, patterns);
+            if (subscribe.length > 0) {
+                pubSub.subscribe(subscribe);
+            }
+            if (psubscribe.length > 0) {
+                pubSub.psubscribe(psubscribe);
+            }
+            // 先订阅后退订，避免订阅数先降为0使读取循环提前结束
+            if (unsubscribe.length > 0) {
+                pubSub.unsubscribe(unsubscribe);
+            }
+            if (punsubscribe.length > 0) {
+                pubSub.punsubscribe(punsubscribe);
+            }
+            sentChannels.clear();
+            sentChannels.addAll(channels);
+            sentPatterns.clear();
+            sentPatterns.addAll(patterns);
+        }
+
+        private String[] difference(Set<String> from, Set<String> exclude) {
+            List<String> result = new ArrayList<>();
+            for (String name : from) {
+                if (!exclude.contains(name)) {
+                    result.add(name);
+                }
+            }
+            return result.toArray(new String[result.size()]);
+        }
+
+        @Override
+        public void run() {
+            long backoff = 0;
+            while (!closed) {
+                String[] initialChannels;
+                String[] initialPatterns;
+                Jedis connection;
+                JedisPubSub current = new Dispatcher(this);
+                synchronized (this) {
+                    while (!closed && channels.isEmpty() && patterns.isEmpty()) {
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    if (closed) {
+                        return;
+                    }
+                    initialChannels = channels.toArray(new String[channels.size()]);
+                    initialPatterns = patterns.toArray(new String[patterns.size()]);
+                    // 连接时只发出频道或模式中的一种，另一种在首个订阅确认后由sync补发
+                    sentChannels.clear();
+                    sentPatterns.clear();
+                    if (initialChannels.length > 0) {
+                        sentChannels.addAll(channels);
+                    } else {
+                        sentPatterns.addAll(patterns);
+                    }
+                    connection = shardInfo.createResource();
+                    jedis = connection;
+                    pubSub = current;
+                }
+                try {
+                    connection.connect();
+                    backoff = 0;
+                    if (initialChannels.length > 0) {
+                        connection.subscribe(current, initialChannels);
+                    } else {
+                        connection.psubscribe(current, initialPatterns);
+                    }
+                } catch (RuntimeException e) {
+                    // 连接断开、认证失败（如故障切换后NOAUTH）等任何异常都按退避重连，不结束线程
+                    if (closed) {
+                        return;
+                    }
+                    for (SubscriptionStateListener listener : stateListeners) {
+                        try {
+                            listener.onDisconnected(node, e);
+                        } catch (RuntimeException le) {
+                            logger.error("state listener {} failed on disconnect of {}", listener, node, le);
+                        }
+                    }
+                    backoff = backoff == 0 ? 100 : Math.min(backoff * 2, maxReconnectMillis);
+                    try {
+                        Thread.sleep(backoff);
+                    } catch (InterruptedException ie) {
+                        return;
+                    }
+                } finally {
+                    synchronized (this) {
+                        jedis = null;
+                        pubSub = null;
+                    }
+                    // 订阅数降为0时读取循环结束，连接上可能仍有未读的回复，不再复用
+                    connection.close();
+                }
+            }
+        }
+
+        /**
+         * 重连后首个订阅确认时通知，此后发布的消息不会丢失
+         */
+        void connected() {
+            for (SubscriptionStateListener listener : stateListeners) {
+                try {
+                    listener.onConnected(node);
+                } catch (RuntimeException e) {
+                    logger.error("state listener {} failed on connect of {}", listener, node, e);
+                }
+            }
+        }
+
+        void shutdown() {
+            Jedis connection;
+            synchronized (this) {
+                notifyAll();
+                connection = jedis;
+            }
+            thread.interrupt();
+            if (connection != null) {
+                // 阻塞在读取上的线程只能通过断开连接唤醒
+                connection.disconnect();
+            }
+        }
+    }
+
+    private final class Dispatcher extends JedisPubSub {
+
+        private final NodeSubscriber subscriber;
+
+        private boolean confirmed;
+
+        Dispatcher(NodeSubscriber subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void onMessage(String channel, String message) {
+            dispatch(channel, channelListeners.get(channel), listener -> listener.onMessage(channel, message));
+        }
+
+        @Override
+        public void onPMessage(String pattern, String channel, String message) {
+            dispatch(channel, patternListeners.get(pattern),
+                    listener -> listener.onPMessage(pattern, channel, message));
+        }
+
+        @Override
+        public void onSubscribe(String channel, int subscribedChannels) {
+            confirm();
+            subscriber.sync();
+        }
+
+        @Override
+        public void onPSubscribe(String pattern, int subscribedChannels) {
+            confirm();
+            subscriber.sync();
+        }
+
+        private void confirm() {
+            if (!confirmed) {
+                confirmed = true;
+                subscriber.connected();
+            }
+        }
+
+        @Override
+        public void onUnsubscribe(String channel, int subscribedChannels) {
+        }
+
+        @Override
+        public void onPUnsubscribe(String pattern, int subscribedChannels) {
+        }
+    }
+}
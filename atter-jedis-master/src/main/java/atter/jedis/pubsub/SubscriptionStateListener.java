@@ -0,0 +1,44 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package atter.jedis.pubsub;
+
+/**
+ * Description:  SubscriptionStateListener
+ * 订阅连接建立与断开的通知，断开期间发布的消息会丢失
+ * Copyright:  2018 CSNT. All rights reserved.
+ * Company:CSNT
+ *
+ * @author wangling
+ * @version 1.0
+ */
+public interface SubscriptionStateListener {
+
+    /**
+     * 订阅连接建立或重连成功，首个订阅已被节点确认，此后发布的消息不会丢失
+     *
+     * @param node 节点地址
+     */
+    void onConnected(String node);
+
+    /**
+     * 订阅连接断开，之后会自动重连
+     *
+     * @param node  节点地址
+     * @param cause 断开原因
+     */
+    void onDisconnected(String node, Throwable cause);
+}
@@ -0,0 +1,79 @@
+package atter.jedis;
+
+import com.alibaba.fastjson.JSONObject;
+import org.junit.Test;
+
+import java.util.function.Function;
+
+import static org.junit.Assert.*;
+
+/**
+ * Description:  缓存封装格式的解析，以及XFetch按剩余时间与加载耗时提前刷新的概率
+ * Copyright:  2018 CSNT. All rights reserved.
+ * Company:CSNT
+ *
+ * @author wangling
+ * @version 1.0
+ */
+public class CacheEnvelopeTest {
+
+    private static final Function<JSONObject, String> STRING = object -> object.getString("v");
+
+    private static int refreshes(CacheEnvelope<?> envelope, long now, double beta, int trials) {
+        int count = 0;
+        for (int i = 0; i < trials; i++) {
+            if (envelope.shouldRefresh(now, beta)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void parsesWhatToJsonWrites() {
+        CacheEnvelope<String> envelope = CacheEnvelope.parse(CacheEnvelope.toJson("data", 1000L, 20L), STRING);
+        assertNotNull(envelope);
+        assertEquals("data", envelope.getValue());
+    }
+
+    @Test
+    public void nonEnvelopeValuesAreMisses() {
+        assertNull(CacheEnvelope.parse(null, STRING));
+        assertNull("legacy object", CacheEnvelope.parse("{\"v\":\"data\"}", STRING));
+        assertNull("legacy array", CacheEnvelope.parse("[1,2,3]", STRING));
+        assertNull("raw string", CacheEnvelope.parse("hello world", STRING));
+        assertNull("number", CacheEnvelope.parse("42", STRING));
+        assertNull("truncated", CacheEnvelope.parse("{\"v\":\"data\",\"e\":", STRING));
+    }
+
+    @Test
+    public void missingValueIsMiss() {
+        assertNull(CacheEnvelope.parse(CacheEnvelope.toJson(null, 1000L, 20L), STRING));
+    }
+
+    @Test
+    public void alwaysRefreshesAfterLogicalExpiry() {
+        CacheEnvelope<String> envelope = new CacheEnvelope<>("data", 1000L, 0L);
+        assertEquals(100, refreshes(envelope, 1000L, 1.0, 100));
+        assertEquals(100, refreshes(envelope, 5000L, 1.0, 100));
+    }
+
+    @Test
+    public void neverRefreshesEarlyWhenLoadIsFree() {
+        CacheEnvelope<String> envelope = new CacheEnvelope<>("data", 1000L, 0L);
+        assertEquals(0, refreshes(envelope, 999L, 1.0, 100));
+    }
+
+    @Test
+    public void refreshProbabilityGrowsNearExpiry() {
+        // 刷新概率为exp(-剩余时间/(耗时*beta))
+        CacheEnvelope<String> envelope = new CacheEnvelope<>("data", 100000L, 1000L);
+        assertEquals(0, refreshes(envelope, 0L, 1.0, 1000));
+        int near = refreshes(envelope, 100000L - 100L, 1.0, 1000);
+        assertTrue("about 90% expected, was " + near, near > 800);
+        int far = refreshes(envelope, 100000L - 3000L, 1.0, 1000);
+        assertTrue("about 5% expected, was " + far, far > 0 && far < 150);
+        int eager = refreshes(envelope, 100000L - 3000L, 3.0, 1000);
+        assertTrue("beta above 1 refreshes earlier", eager > far);
+    }
+}
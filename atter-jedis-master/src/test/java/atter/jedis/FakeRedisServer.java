@@ -0,0 +1,608 @@
+package atter.jedis;
+
+import atter.jedis.adapter.LuaScript;
+import atter.jedis.adapter.ScriptRegistry;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiFunction;
+import java.util.regex.Pattern;
+
+/**
+ * Description:  测试用的单线程语义内存Redis，以RESP协议应答适配器与模板用到的命令，
+ * 记录收到的命令以检查往返次数，可断开全部连接以模拟节点故障，CLUSTER NODES应答为持有全部槽的单节点集群。
+ * 脚本不解释Lua，只按SHA1识别{@link ScriptRegistry}中的内置脚本
+ * Copyright:  2018 CSNT. All rights reserved.
+ * Company:CSNT
+ *
+ * @author wangling
+ * @version 1.0
+ */
+public class FakeRedisServer implements AutoCloseable {
+
+    private final ServerSocket serverSocket;
+
+    private final Thread acceptor;
+
+    private final Map<String, Object> data = new HashMap<>();
+
+    private final Map<String, Long> expireAt = new HashMap<>();
+
+    /**
+     * 每次写入递增，EXEC时检查WATCH的key是否被修改
+     */
+    private final Map<String, Long> versions = new HashMap<>();
+
+    private final Set<String> loadedScripts = new HashSet<>();
+
+    private final Map<String, BiFunction<List<String>, List<String>, Object>> scripts = new HashMap<>();
+
+    private final List<Connection> connections = new CopyOnWriteArrayList<>();
+
+    private final List<String> commands = Collections.synchronizedList(new ArrayList<>());
+
+    private long version;
+
+    public FakeRedisServer() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        registerScript(ScriptRegistry.LOCK, (keys, args) -> {
+            if (data.containsKey(keys.get(0))) {
+                return 0L;
+            }
+            write(keys.get(0), args.get(0));
+            expireAt.put(keys.get(0), System.currentTimeMillis() + Long.parseLong(args.get(1)) * 1000);
+            return 1L;
+        });
+        registerScript(ScriptRegistry.COMPARE_AND_SET, (keys, args) -> {
+            if (!args.get(0).equals(data.get(keys.get(0)))) {
+                return 0L;
+            }
+            write(keys.get(0), args.get(1));
+            return 1L;
+        });
+        registerScript(ScriptRegistry.COMPARE_AND_DELETE, (keys, args) -> {
+            if (!args.get(0).equals(data.get(keys.get(0)))) {
+                return 0L;
+            }
+            return delete(keys.get(0)) ? 1L : 0L;
+        });
+        acceptor = new Thread(this::accept, "fake-redis-" + getPort());
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    private void registerScript(LuaScript script, BiFunction<List<String>, List<String>, Object> handler) {
+        scripts.put(script.getSha1(), handler);
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return 收到的命令名（小写），按到达顺序
+     */
+    public List<String> getCommands() {
+        synchronized (commands) {
+            return new ArrayList<>(commands);
+        }
+    }
+
+    /**
+     * @return 收到的某个命令的次数
+     */
+    public int count(String command) {
+        int count = 0;
+        for (String received : getCommands()) {
+            if (received.equals(command)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public void clearCommands() {
+        commands.clear();
+    }
+
+    public synchronized String getValue(String key) {
+        expire(key);
+        return (String) data.get(key);
+    }
+
+    public synchronized void setValue(String key, String value) {
+        write(key, value);
+    }
+
+    public synchronized boolean containsKey(String key) {
+        expire(key);
+        return data.containsKey(key);
+    }
+
+    /**
+     * @return 当前所有连接上订阅的频道
+     */
+    public Set<String> getChannels() {
+        Set<String> channels = new HashSet<>();
+        for (Connection connection : connections) {
+            channels.addAll(connection.channels);
+        }
+        return channels;
+    }
+
+    /**
+     * @return 当前所有连接上订阅的模式
+     */
+    public Set<String> getPatterns() {
+        Set<String> patterns = new HashSet<>();
+        for (Connection connection : connections) {
+            patterns.addAll(connection.patterns);
+        }
+        return patterns;
+    }
+
+    /**
+     * 断开全部客户端连接，服务端继续接受新连接
+     */
+    public void disconnectAll() {
+        for (Connection connection : connections) {
+            connection.close();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        disconnectAll();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Connection connection = new Connection(serverSocket.accept());
+                connections.add(connection);
+                Thread thread = new Thread(connection, "fake-redis-client");
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void expire(String key) {
+        Long at = expireAt.get(key);
+        if (at != null && at <= System.currentTimeMillis()) {
+            delete(key);
+        }
+    }
+
+    private void write(String key, Object value) {
+        data.put(key, value);
+        expireAt.remove(key);
+        versions.put(key, ++version);
+    }
+
+    private boolean delete(String key) {
+        expireAt.remove(key);
+        versions.put(key, ++version);
+        return data.remove(key) != null;
+    }
+
+    private long versionOf(String key) {
+        Long v = versions.get(key);
+        return v == null ? 0 : v;
+    }
+
+    /**
+     * 执行一条普通命令，调用方持有服务端的锁
+     */
+    private Object execute(Connection connection, List<String> cmd) {
+        String name = cmd.get(0).toLowerCase();
+        for (int i = 1; i < cmd.size() && !name.equals("eval") && !name.equals("evalsha"); i++) {
+            expire(cmd.get(i));
+        }
+        switch (name) {
+            case "ping":
+                return new Status("PONG");
+            case "select":
+            case "quit":
+                return Status.OK;
+            case "get":
+                return data.get(cmd.get(1));
+            case "set": {
+                String key = cmd.get(1);
+                boolean nx = false;
+                boolean xx = false;
+                long ttlMillis = 0;
+                for (int i = 3; i < cmd.size(); i++) {
+                    String option = cmd.get(i).toUpperCase();
+                    if (option.equals("NX")) {
+                        nx = true;
+                    } else if (option.equals("XX")) {
+                        xx = true;
+                    } else if (option.equals("EX")) {
+                        ttlMillis = Long.parseLong(cmd.get(++i)) * 1000;
+                    } else if (option.equals("PX")) {
+                        ttlMillis = Long.parseLong(cmd.get(++i));
+                    }
+                }
+                if ((nx && data.containsKey(key)) || (xx && !data.containsKey(key))) {
+                    return null;
+                }
+                write(key, cmd.get(2));
+                if (ttlMillis > 0) {
+                    expireAt.put(key, System.currentTimeMillis() + ttlMillis);
+                }
+                return Status.OK;
+            }
+            case "setex":
+                write(cmd.get(1), cmd.get(3));
+                expireAt.put(cmd.get(1), System.currentTimeMillis() + Long.parseLong(cmd.get(2)) * 1000);
+                return Status.OK;
+            case "setnx":
+                if (data.containsKey(cmd.get(1))) {
+                    return 0L;
+                }
+                write(cmd.get(1), cmd.get(2));
+                return 1L;
+            case "incr": {
+                Object current = data.get(cmd.get(1));
+                long value = current == null ? 1 : Long.parseLong((String) current) + 1;
+                Long ttl = expireAt.get(cmd.get(1));
+                write(cmd.get(1), String.valueOf(value));
+                if (ttl != null) {
+                    expireAt.put(cmd.get(1), ttl);
+                }
+                return value;
+            }
+            case "del": {
+                long deleted = 0;
+                for (int i = 1; i < cmd.size(); i++) {
+                    if (delete(cmd.get(i))) {
+                        deleted++;
+                    }
+                }
+                return deleted;
+            }
+            case "exists":
+                return data.containsKey(cmd.get(1)) ? 1L : 0L;
+            case "expire":
+                if (!data.containsKey(cmd.get(1))) {
+                    return 0L;
+                }
+                expireAt.put(cmd.get(1), System.currentTimeMillis() + Long.parseLong(cmd.get(2)) * 1000);
+                return 1L;
+            case "ttl": {
+                if (!data.containsKey(cmd.get(1))) {
+                    return -2L;
+                }
+                Long at = expireAt.get(cmd.get(1));
+                return at == null ? -1L : (at - System.currentTimeMillis() + 999) / 1000;
+            }
+            case "mget": {
+                List<Object> values = new ArrayList<>();
+                for (int i = 1; i < cmd.size(); i++) {
+                    values.add(data.get(cmd.get(i)));
+                }
+                return values;
+            }
+            case "mset":
+                for (int i = 1; i < cmd.size(); i += 2) {
+                    write(cmd.get(i), cmd.get(i + 1));
+                }
+                return Status.OK;
+            case "watch":
+                for (int i = 1; i < cmd.size(); i++) {
+                    connection.watched.put(cmd.get(i), versionOf(cmd.get(i)));
+                }
+                return Status.OK;
+            case "unwatch":
+                connection.watched.clear();
+                return Status.OK;
+            case "eval":
+            case "evalsha": {
+                String sha = name.equals("eval") ? new LuaScript("eval", cmd.get(1)).getSha1() : cmd.get(1);
+                if (name.equals("evalsha") && !loadedScripts.contains(sha)) {
+                    return new Error("NOSCRIPT No matching script. Please use EVAL.");
+                }
+                BiFunction<List<String>, List<String>, Object> script = scripts.get(sha);
+                if (script == null) {
+                    return new Error("ERR unknown script");
+                }
+                loadedScripts.add(sha);
+                int keyCount = Integer.parseInt(cmd.get(2));
+                List<String> keys = cmd.subList(3, 3 + keyCount);
+                for (String key : keys) {
+                    expire(key);
+                }
+                return script.apply(keys, cmd.subList(3 + keyCount, cmd.size()));
+            }
+            case "publish":
+                return publish(cmd.get(1), cmd.get(2));
+            case "cluster":
+                if (!cmd.get(1).equalsIgnoreCase("nodes")) {
+                    return new Error("ERR unknown subcommand '" + cmd.get(1) + "'");
+                }
+                return String.format("%040d 127.0.0.1:%d myself,master - 0 0 1 connected 0-16383\n", 0, getPort());
+            default:
+                return new Error("ERR unknown command '" + name + "'");
+        }
+    }
+
+    private long publish(String channel, String message) {
+        long receivers = 0;
+        for (Connection connection : connections) {
+            if (connection.channels.contains(channel)) {
+                connection.push(Arrays.<Object>asList("message", channel, message));
+                receivers++;
+            }
+            for (String pattern : connection.patterns) {
+                if (glob(pattern).matcher(channel).matches()) {
+                    connection.push(Arrays.<Object>asList("pmessage", pattern, channel, message));
+                    receivers++;
+                }
+            }
+        }
+        return receivers;
+    }
+
+    private static Pattern glob(String pattern) {
+        StringBuilder regex = new StringBuilder();
+        for (char c : pattern.toCharArray()) {
+            if (c == '*') {
+                regex.append(".*");
+            } else if (c == '?') {
+                regex.append('.');
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    private static final class Status {
+
+        static final Status OK = new Status("OK");
+
+        final String text;
+
+        Status(String text) {
+            this.text = text;
+        }
+    }
+
+    private static final class Error {
+
+        final String text;
+
+        Error(String text) {
+            this.text = text;
+        }
+    }
+
+    private final class Connection implements Runnable {
+
+        private final Socket socket;
+
+        private final InputStream in;
+
+        private final OutputStream out;
+
+        private final Map<String, Long> watched = new HashMap<>();
+
+        private final Set<String> channels = ConcurrentHashMap.newKeySet();
+
+        private final Set<String> patterns = ConcurrentHashMap.newKeySet();
+
+        private List<List<String>> queued;
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new BufferedInputStream(socket.getInputStream());
+            this.out = new BufferedOutputStream(socket.getOutputStream());
+        }
+
+        @Override
+        public void run() {
+            try {
+                List<String> cmd;
+                while ((cmd = readCommand()) != null) {
+                    commands.add(cmd.get(0).toLowerCase());
+                    Object reply = handle(cmd);
+                    synchronized (this) {
+                        if (reply instanceof Subscriptions) {
+                            for (List<Object> item : ((Subscriptions) reply).replies) {
+                                writeReply(item);
+                            }
+                        } else {
+                            writeReply(reply);
+                        }
+                        out.flush();
+                    }
+                    if ("quit".equalsIgnoreCase(cmd.get(0))) {
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                // 连接断开
+            } finally {
+                close();
+            }
+        }
+
+        private Object handle(List<String> cmd) {
+            String name = cmd.get(0).toLowerCase();
+            switch (name) {
+                case "subscribe":
+                case "psubscribe":
+                case "unsubscribe":
+                case "punsubscribe":
+                    return subscribe(name, cmd.subList(1, cmd.size()));
+                case "multi":
+                    queued = new ArrayList<>();
+                    return Status.OK;
+                case "exec":
+                    return exec();
+                case "discard":
+                    queued = null;
+                    watched.clear();
+                    return Status.OK;
+                default:
+                    if (queued != null) {
+                        queued.add(cmd);
+                        return new Status("QUEUED");
+                    }
+                    synchronized (FakeRedisServer.this) {
+                        return execute(this, cmd);
+                    }
+            }
+        }
+
+        private Object exec() {
+            List<List<String>> transaction = queued;
+            queued = null;
+            synchronized (FakeRedisServer.this) {
+                for (Map.Entry<String, Long> watch : watched.entrySet()) {
+                    if (versionOf(watch.getKey()) != watch.getValue()) {
+                        watched.clear();
+                        return NullArray.INSTANCE;
+                    }
+                }
+                watched.clear();
+                List<Object> results = new ArrayList<>();
+                for (List<String> cmd : transaction) {
+                    results.add(execute(this, cmd));
+                }
+                return results;
+            }
+        }
+
+        private Subscriptions subscribe(String name, List<String> names) {
+            boolean pattern = name.startsWith("p");
+            Set<String> target = pattern ? patterns : channels;
+            List<String> affected = new ArrayList<>(names);
+            if (affected.isEmpty() && name.contains("unsubscribe")) {
+                affected.addAll(target);
+            }
+            Subscriptions replies = new Subscriptions();
+            for (String channel : affected) {
+                if (name.contains("unsubscribe")) {
+                    target.remove(channel);
+                } else {
+                    target.add(channel);
+                }
+                replies.replies.add(Arrays.<Object>asList(name, channel, (long) (channels.size() + patterns.size())));
+            }
+            return replies;
+        }
+
+        synchronized void push(List<Object> message) {
+            try {
+                writeReply(message);
+                out.flush();
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        void close() {
+            connections.remove(this);
+            channels.clear();
+            patterns.clear();
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // 已关闭
+            }
+        }
+
+        private List<String> readCommand() throws IOException {
+            int type = in.read();
+            if (type == -1) {
+                return null;
+            }
+            if (type != '*') {
+                throw new IOException("inline commands are not supported");
+            }
+            int count = Integer.parseInt(readLine());
+            List<String> cmd = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                if (in.read() != '$') {
+                    throw new IOException("bulk string expected");
+                }
+                int length = Integer.parseInt(readLine());
+                byte[] bytes = new byte[length];
+                int read = 0;
+                while (read < length) {
+                    int n = in.read(bytes, read, length - read);
+                    if (n < 0) {
+                        throw new IOException("connection closed");
+                    }
+                    read += n;
+                }
+                in.read();
+                in.read();
+                cmd.add(new String(bytes, StandardCharsets.UTF_8));
+            }
+            return cmd;
+        }
+
+        private String readLine() throws IOException {
+            StringBuilder line = new StringBuilder();
+            int c;
+            while ((c = in.read()) != '\r') {
+                if (c == -1) {
+                    throw new IOException("connection closed");
+                }
+                line.append((char) c);
+            }
+            in.read();
+            return line.toString();
+        }
+
+        private void writeReply(Object reply) throws IOException {
+            if (reply == null) {
+                out.write("$-1\r\n".getBytes(StandardCharsets.UTF_8));
+            } else if (reply == NullArray.INSTANCE) {
+                out.write("*-1\r\n".getBytes(StandardCharsets.UTF_8));
+            } else if (reply instanceof Status) {
+                out.write(("+" + ((Status) reply).text + "\r\n").getBytes(StandardCharsets.UTF_8));
+            } else if (reply instanceof Error) {
+                out.write(("-" + ((Error) reply).text + "\r\n").getBytes(StandardCharsets.UTF_8));
+            } else if (reply instanceof Long) {
+                out.write((":" + reply + "\r\n").getBytes(StandardCharsets.UTF_8));
+            } else if (reply instanceof List) {
+                List<?> items = (List<?>) reply;
+                out.write(("*" + items.size() + "\r\n").getBytes(StandardCharsets.UTF_8));
+                for (Object item : items) {
+                    writeReply(item);
+                }
+            } else {
+                byte[] bytes = reply.toString().getBytes(StandardCharsets.UTF_8);
+                out.write(("$" + bytes.length + "\r\n").getBytes(StandardCharsets.UTF_8));
+                out.write(bytes);
+                out.write("\r\n".getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    private static final class Subscriptions {
+
+        final List<List<Object>> replies = new ArrayList<>();
+    }
+
+    private enum NullArray {
+        INSTANCE
+    }
+}
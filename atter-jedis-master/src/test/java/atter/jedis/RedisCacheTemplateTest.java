@@ -0,0 +1,127 @@
+package atter.jedis;
+
+import atter.jedis.adapter.AutoPipeliningJedisAdapter;
+import atter.jedis.adapter.SingleJedisAdapter;
+import atter.jedis.cache.NearCache;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+
+import static org.junit.Assert.*;
+
+/**
+ * Description:  模板在自动管道适配器上的锁、事务与加载租约，Redis以内存桩代替
+ * Copyright:  2018 CSNT. All rights reserved.
+ * Company:CSNT
+ *
+ * @author wangling
+ * @version 1.0
+ */
+public class RedisCacheTemplateTest {
+
+    private FakeRedisServer server;
+
+    private JedisPool pool;
+
+    private AutoPipeliningJedisAdapter adapter;
+
+    private RedisCacheTemplate template;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeRedisServer();
+        pool = new JedisPool(new JedisPoolConfig(), "127.0.0.1", server.getPort());
+        SingleJedisAdapter delegate = new SingleJedisAdapter();
+        delegate.setPool(pool);
+        adapter = new AutoPipeliningJedisAdapter();
+        adapter.setDelegate(delegate);
+        template = new RedisCacheTemplate();
+        template.setJedisAdapter(adapter);
+        template.setLockTimeout(10);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        adapter.shutdown();
+        pool.destroy();
+        server.close();
+    }
+
+    @Test
+    public void lockRunsScriptOnDelegate() {
+        assertTrue(template.lock("order", "pay", "1"));
+        assertFalse("second lock must fail", template.lock("order", "pay", "1"));
+        assertTrue(server.containsKey("orderpay1"));
+        assertTrue(template.unLock("order", "pay", "1"));
+        assertTrue(template.lock("order", "pay", "1"));
+    }
+
+    @Test
+    public void commitRunsTransactionOnDelegate() {
+        template.set("balance", "10");
+        assertTrue(template.begin());
+        template.watch("balance");
+        template.set("balance", "20");
+        template.set("history", "10->20");
+        assertNull("not written before commit", server.getValue("history"));
+        assertTrue(template.commit());
+        assertEquals("20", server.getValue("balance"));
+        assertEquals("10->20", server.getValue("history"));
+    }
+
+    @Test
+    public void commitFailsWhenWatchedValueChanged() {
+        template.set("balance", "10");
+        template.begin();
+        template.watch("balance");
+        template.set("balance", "20");
+        server.setValue("balance", "15");
+        assertFalse(template.commit());
+        assertEquals("15", server.getValue("balance"));
+    }
+
+    @Test
+    public void leaseIsReleasedAfterLoad() {
+        template.setLeaseMillis(5000);
+        assertEquals("loaded", template.cacheQuery("user", String.class, () -> "loaded", 60));
+        assertFalse("lease must be released by compareAndDelete", server.containsKey("user:lease"));
+        assertEquals("loaded", template.cacheQuery("user", String.class, () -> "reloaded", 60));
+    }
+
+    @Test
+    public void staleCopyIsDroppedOnlyWithDelete() {
+        template.setLeaseMillis(5000);
+        template.setStaleSeconds(60);
+        assertEquals("loaded", template.cacheQuery("user", String.class, () -> "loaded", 60));
+        assertTrue(server.containsKey("user:stale"));
+
+        server.clearCommands();
+        template.set("other", "1");
+        template.setex("other", "2", 60);
+        assertEquals("writes must not delete stale copies", 0, server.count("del"));
+
+        assertTrue(template.del("user"));
+        assertFalse(server.containsKey("user"));
+        assertFalse(server.containsKey("user:stale"));
+    }
+
+    @Test
+    public void nearCacheFillDoesNotQueryTtl() {
+        template.setNearCache(new NearCache(1024));
+        server.setValue("a", "1");
+        server.clearCommands();
+        assertEquals("1", template.get("a"));
+        assertEquals("1", template.get("a"));
+        assertEquals("second read must hit the near cache", 1, server.count("get"));
+        assertEquals(0, server.count("ttl"));
+    }
+
+    @Test
+    public void singleKeyCommandsArePipelined() {
+        template.set("a", "1");
+        assertEquals("1", template.get("a"));
+        assertEquals(Long.valueOf(2), template.incr("a"));
+    }
+}
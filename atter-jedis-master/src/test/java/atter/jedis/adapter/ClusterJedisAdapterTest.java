@@ -0,0 +1,85 @@
+package atter.jedis.adapter;
+
+import atter.jedis.FakeRedisServer;
+import atter.jedis.metrics.CommandMetrics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Description:  集群适配器：连接失败后只重试幂等命令，多key与管道命令记录统计，集群以单节点内存桩代替
+ * Copyright:  2018 CSNT. All rights reserved.
+ * Company:CSNT
+ *
+ * @author wangling
+ * @version 1.0
+ */
+public class ClusterJedisAdapterTest {
+
+    private FakeRedisServer server;
+
+    private ClusterJedisAdapter adapter;
+
+    private CommandMetrics metrics;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeRedisServer();
+        adapter = new ClusterJedisAdapter(Collections.singleton(new HostAndPort("127.0.0.1", server.getPort())),
+                new JedisPoolConfig());
+        metrics = new CommandMetrics("cluster-test");
+        adapter.setMetrics(metrics);
+        server.setValue("{a}1", "1");
+        server.setValue("{a}2", "2");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        adapter.close();
+        server.close();
+    }
+
+    @Test
+    public void idempotentCommandIsRetriedAfterConnectionFailure() {
+        assertEquals(Arrays.asList("1", "2"), adapter.mget("{a}1", "{a}2"));
+        server.disconnectAll();
+        assertEquals(Arrays.asList("1", "2"), adapter.mget("{a}1", "{a}2"));
+    }
+
+    @Test
+    public void nonIdempotentCommandIsNotRetriedAfterConnectionFailure() {
+        assertEquals(Arrays.asList("1", "2"), adapter.mget("{a}1", "{a}2"));
+        server.clearCommands();
+        server.disconnectAll();
+        try {
+            adapter.del("{a}1", "{a}2");
+            fail("del must not be retried on another connection");
+        } catch (JedisConnectionException expected) {
+            // 命令可能已经执行，由调用方决定是否重试
+        }
+        // 断开时的命令可能已送达，也可能没有，但不会再发送一次
+        assertTrue(server.getCommands().toString(), server.count("del") <= 1);
+        assertEquals(1, metrics.getStats("del").getErrors());
+    }
+
+    @Test
+    public void multiKeyAndPipelinedCommandsAreRecorded() {
+        adapter.mset("a", "2", "b", "3");
+        assertEquals(Arrays.asList("2", "3"), adapter.mget("a", "b"));
+        assertEquals(Long.valueOf(2), adapter.del("a", "b"));
+        adapter.pipelined(pipeline -> pipeline.set("c", "4"));
+        assertEquals(1, metrics.getStats("mset").getCalls());
+        assertEquals(1, metrics.getStats("mget").getCalls());
+        assertEquals(1, metrics.getStats("del").getCalls());
+        assertEquals(1, metrics.getStats("pipelined").getCalls());
+        assertEquals("4", server.getValue("c"));
+    }
+}
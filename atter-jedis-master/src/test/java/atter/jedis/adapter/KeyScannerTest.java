@@ -0,0 +1,154 @@
+package atter.jedis.adapter;
+
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Description:  多节点并行SCAN的合并、结束、失败传递与提前关闭，节点以不连接Redis的桩代替
+ * Copyright:  2018 CSNT. All rights reserved.
+ * Company:CSNT
+ *
+ * @author wangling
+ * @version 1.0
+ */
+public class KeyScannerTest {
+
+    /**
+     * 按页返回预置key的节点，游标即页号；pages为null时无限返回新key
+     */
+    private static class StubNode extends Jedis {
+
+        private final List<List<String>> pages;
+
+        private final int failAtPage;
+
+        private int generated;
+
+        StubNode(List<List<String>> pages, int failAtPage) {
+            super("localhost");
+            this.pages = pages;
+            this.failAtPage = failAtPage;
+        }
+
+        @Override
+        public ScanResult<String> scan(String cursor, ScanParams params) {
+            int page = Integer.parseInt(cursor);
+            if (page == failAtPage) {
+                throw new JedisConnectionException("node lost");
+            }
+            if (pages == null) {
+                return new ScanResult<>(String.valueOf(page + 1), Collections.singletonList("k" + generated++));
+            }
+            String next = page + 1 < pages.size() ? String.valueOf(page + 1) : ScanParams.SCAN_POINTER_START;
+            return new ScanResult<>(next, pages.get(page));
+        }
+    }
+
+    private static class Resource implements AutoCloseable {
+
+        private final CountDownLatch closed = new CountDownLatch(1);
+
+        @Override
+        public void close() {
+            closed.countDown();
+        }
+
+        boolean awaitClosed() throws InterruptedException {
+            return closed.await(1, TimeUnit.SECONDS);
+        }
+    }
+
+    private static Jedis node(String... pages) {
+        List<List<String>> keys = new ArrayList<>();
+        for (String page : pages) {
+            keys.add(page.isEmpty() ? Collections.<String>emptyList() : Arrays.asList(page.split(",")));
+        }
+        return new StubNode(keys, -1);
+    }
+
+    @Test
+    public void mergesKeysFromAllNodes() throws InterruptedException {
+        Resource resource = new Resource();
+        KeyScanner scanner = new KeyScanner(Arrays.asList(node("a,b", "", "c"), node("d", "e,f")),
+                resource, new ScanOptions().setBufferSize(1));
+        Set<String> keys = new HashSet<>();
+        while (scanner.hasNext()) {
+            keys.add(scanner.next());
+        }
+        assertEquals(new HashSet<>(Arrays.asList("a", "b", "c", "d", "e", "f")), keys);
+        assertFalse(scanner.hasNext());
+        assertTrue(resource.awaitClosed());
+        assertTrue(scanner.isDone());
+        assertEquals(6, scanner.getScannedKeys());
+        assertEquals(5, scanner.getScanCalls());
+        assertEquals(2, scanner.getCompletedNodes());
+    }
+
+    @Test
+    public void noNodesEndsImmediately() throws InterruptedException {
+        Resource resource = new Resource();
+        KeyScanner scanner = new KeyScanner(Collections.<Jedis>emptyList(), resource, new ScanOptions());
+        assertFalse(scanner.hasNext());
+        assertTrue(resource.awaitClosed());
+        assertTrue(scanner.isDone());
+    }
+
+    @Test
+    public void nodeFailureReachesConsumer() throws InterruptedException {
+        Resource resource = new Resource();
+        Jedis failing = new StubNode(Arrays.asList(Arrays.asList("x"), Arrays.asList("y")), 1);
+        KeyScanner scanner = new KeyScanner(Arrays.asList(node("a", "b"), failing), resource, new ScanOptions());
+        try {
+            while (scanner.hasNext()) {
+                scanner.next();
+            }
+            fail("the failed node must not look like a finished scan");
+        } catch (JedisConnectionException expected) {
+            assertEquals("node lost", expected.getMessage());
+        }
+        assertTrue(resource.awaitClosed());
+        assertFalse(scanner.isDone());
+    }
+
+    @Test
+    public void closeStopsScannersBlockedOnBuffer() throws InterruptedException {
+        Resource resource = new Resource();
+        KeyScanner scanner = new KeyScanner(Arrays.<Jedis>asList(new StubNode(null, -1), new StubNode(null, -1)),
+                resource, new ScanOptions().setBufferSize(2));
+        assertTrue(scanner.hasNext());
+        scanner.next();
+        scanner.close();
+        assertTrue("scanners must exit and release their connections", resource.awaitClosed());
+        assertFalse(scanner.hasNext());
+        assertFalse(scanner.isDone());
+    }
+
+    @Test
+    public void closingStreamStopsScan() throws InterruptedException {
+        Resource resource = new Resource();
+        KeyScanner scanner = new KeyScanner(Collections.<Jedis>singletonList(new StubNode(null, -1)),
+                resource, new ScanOptions().setBufferSize(4));
+        List<String> keys;
+        try (Stream<String> stream = scanner.stream()) {
+            keys = stream.limit(3).collect(Collectors.toList());
+        }
+        assertEquals(Arrays.asList("k0", "k1", "k2"), keys);
+        assertTrue(resource.awaitClosed());
+    }
+}
@@ -0,0 +1,352 @@
+package atter.jedis.adapter;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisShardInfo;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.ShardedJedis;
+import redis.clients.jedis.ShardedJedisPool;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.SafeEncoder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Description:  多key命令按分片拆分、并行执行后按调用方顺序合并，分片调整时迁移key，分片以内存中的桩代替
+ * Copyright:  2018 CSNT. All rights reserved.
+ * Company:CSNT
+ *
+ * @author wangling
+ * @version 1.0
+ */
+public class ShardedJedisAdapterTest {
+
+    /**
+     * 端口与分片数据，MIGRATE按目标端口找到新分片
+     */
+    private static final Map<Integer, Map<String, String>> NODES = new ConcurrentHashMap<>();
+
+    /**
+     * MIGRATE或MGET时失败的key
+     */
+    private static final Set<String> FAILING_KEYS = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 正在执行的MGET数，每次MGET返回前等待mgetDelayMillis
+     */
+    private static final AtomicInteger MGETS_IN_FLIGHT = new AtomicInteger();
+
+    private static volatile long mgetDelayMillis;
+
+    /**
+     * 只支持mget/mset/del/scan/migrate的内存分片，记录收到的key以检查路由
+     */
+    private static class StubShard extends Jedis {
+
+        private final Map<String, String> data;
+
+        StubShard(int port, Map<String, String> data) {
+            super("localhost", port);
+            this.data = data;
+        }
+
+        @Override
+        public ScanResult<String> scan(String cursor, ScanParams params) {
+            return new ScanResult<>(ScanParams.SCAN_POINTER_START, new ArrayList<>(data.keySet()));
+        }
+
+        @Override
+        public String migrate(String host, int port, String key, int destinationDb, int timeout) {
+            if (FAILING_KEYS.contains(key)) {
+                throw new JedisDataException("IOERR error or timeout writing to target instance");
+            }
+            String value = data.remove(key);
+            if (value == null) {
+                return "NOKEY";
+            }
+            NODES.get(port).put(key, value);
+            return "OK";
+        }
+
+        @Override
+        public List<String> mget(String... keys) {
+            MGETS_IN_FLIGHT.incrementAndGet();
+            try {
+                List<String> values = new ArrayList<>();
+                for (String key : keys) {
+                    if (FAILING_KEYS.contains(key)) {
+                        throw new JedisDataException("ERR failing key " + key);
+                    }
+                    values.add(data.get(key));
+                }
+                Thread.sleep(mgetDelayMillis);
+                return values;
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            } finally {
+                MGETS_IN_FLIGHT.decrementAndGet();
+            }
+        }
+
+        @Override
+        public List<byte[]> mget(byte[]... keys) {
+            List<byte[]> values = new ArrayList<>();
+            for (byte[] key : keys) {
+                String value = data.get(SafeEncoder.encode(key));
+                values.add(value == null ? null : SafeEncoder.encode(value));
+            }
+            return values;
+        }
+
+        @Override
+        public String mset(String... keysvalues) {
+            for (int i = 0; i < keysvalues.length; i += 2) {
+                data.put(keysvalues[i], keysvalues[i + 1]);
+            }
+            return "OK";
+        }
+
+        @Override
+        public Long del(String... keys) {
+            long deleted = 0;
+            for (String key : keys) {
+                if (data.remove(key) != null) {
+                    deleted++;
+                }
+            }
+            return deleted;
+        }
+    }
+
+    private static class StubShardInfo extends JedisShardInfo {
+
+        private final Map<String, String> data = new ConcurrentHashMap<>();
+
+        StubShardInfo(int port, String name) {
+            super("localhost", port, name);
+            NODES.put(port, data);
+        }
+
+        @Override
+        public Jedis createResource() {
+            return new StubShard(getPort(), data);
+        }
+    }
+
+    private final List<StubShardInfo> shards = new ArrayList<>();
+
+    private ShardedJedisPool pool;
+
+    private ShardedJedisAdapter adapter;
+
+    @Before
+    public void setUp() {
+        NODES.clear();
+        FAILING_KEYS.clear();
+        mgetDelayMillis = 0;
+        for (int i = 0; i < 3; i++) {
+            shards.add(new StubShardInfo(7000 + i, "shard" + i));
+        }
+        pool = new ShardedJedisPool(new GenericObjectPoolConfig(), new ArrayList<JedisShardInfo>(shards));
+        adapter = new ShardedJedisAdapter();
+        adapter.setPool(pool);
+    }
+
+    @After
+    public void tearDown() {
+        pool.destroy();
+    }
+
+    private static String[] keys(int count) {
+        String[] keys = new String[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = "key" + i;
+        }
+        return keys;
+    }
+
+    /**
+     * 检查每个key只写到其所属分片
+     */
+    private void assertRouted(String... keys) {
+        ShardedJedis jedis = pool.getResource();
+        try {
+            for (String key : keys) {
+                String shardName = jedis.getShardInfo(key).getName();
+                for (StubShardInfo shard : shards) {
+                    assertEquals(key + " on " + shard.getName(), shard.getName().equals(shardName),
+                            shard.data.containsKey(key));
+                }
+            }
+        } finally {
+            jedis.close();
+        }
+    }
+
+    @Test
+    public void msetSplitsPairsByShard() {
+        String[] keys = keys(50);
+        String[] keysvalues = new String[keys.length * 2];
+        for (int i = 0; i < keys.length; i++) {
+            keysvalues[2 * i] = keys[i];
+            keysvalues[2 * i + 1] = "value" + i;
+        }
+        assertEquals("OK", adapter.mset(keysvalues));
+        assertRouted(keys);
+        for (StubShardInfo shard : shards) {
+            assertFalse("50 keys should reach every shard", shard.data.isEmpty());
+            for (Map.Entry<String, String> entry : shard.data.entrySet()) {
+                assertEquals("value" + entry.getKey().substring(3), entry.getValue());
+            }
+        }
+    }
+
+    @Test
+    public void mgetKeepsCallerOrder() {
+        String[] keys = keys(50);
+        for (int i = 0; i < keys.length; i++) {
+            adapter.mset(keys[i], "value" + i);
+        }
+        List<String> request = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        for (int i = keys.length - 1; i >= 0; i -= 3) {
+            request.add(keys[i]);
+            expected.add("value" + i);
+            request.add("missing" + i);
+            expected.add(null);
+        }
+        assertEquals(expected, adapter.mget(request.toArray(new String[request.size()])));
+    }
+
+    @Test
+    public void binaryMgetKeepsCallerOrder() {
+        String[] keys = keys(20);
+        for (int i = 0; i < keys.length; i++) {
+            adapter.mset(keys[i], "value" + i);
+        }
+        byte[][] request = new byte[keys.length][];
+        for (int i = 0; i < keys.length; i++) {
+            request[i] = SafeEncoder.encode(keys[keys.length - 1 - i]);
+        }
+        List<byte[]> values = adapter.binary().mget(request);
+        assertEquals(keys.length, values.size());
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals("value" + (keys.length - 1 - i), SafeEncoder.encode(values.get(i)));
+        }
+    }
+
+    @Test
+    public void failedGroupWaitsForOtherShards() {
+        String[] keys = keys(50);
+        FAILING_KEYS.add(keys[0]);
+        mgetDelayMillis = 200;
+        try {
+            adapter.mget(keys);
+            fail("mget must fail on the shard of " + keys[0]);
+        } catch (JedisDataException expected) {
+            assertTrue(expected.getMessage().contains(keys[0]));
+        }
+        assertEquals("other shards must finish before mget returns", 0, MGETS_IN_FLIGHT.get());
+    }
+
+    @Test
+    public void delSumsAcrossShards() {
+        String[] keys = keys(30);
+        for (String key : keys) {
+            adapter.mset(key, "v");
+        }
+        String[] request = Arrays.copyOf(keys, keys.length + 1);
+        request[keys.length] = "missing";
+        assertEquals(Long.valueOf(30), adapter.del(request));
+        for (StubShardInfo shard : shards) {
+            assertTrue(shard.data.isEmpty());
+        }
+    }
+
+    @Test(expected = JedisDataException.class)
+    public void msetnxRejectsKeysOnDifferentShards() {
+        String[] keys = keys(50);
+        String[] keysvalues = new String[keys.length * 2];
+        for (int i = 0; i < keys.length; i++) {
+            keysvalues[2 * i] = keys[i];
+            keysvalues[2 * i + 1] = "v";
+        }
+        adapter.msetnx(keysvalues);
+    }
+
+    @Test
+    public void failedKeysKeepMigrationUntilRetried() throws InterruptedException {
+        String[] keys = keys(50);
+        for (String key : keys) {
+            adapter.mset(key, "v");
+        }
+        List<JedisShardInfo> grown = new ArrayList<JedisShardInfo>(shards);
+        grown.add(new StubShardInfo(7003, "shard3"));
+        ShardedJedisPool newPool = new ShardedJedisPool(new GenericObjectPoolConfig(), grown);
+        try {
+            String failing = movedKey(newPool, keys);
+            FAILING_KEYS.add(failing);
+            ShardMigration migration = adapter.reshard(newPool, new ScanOptions());
+            assertFalse(migration.awaitCompletion(5, TimeUnit.SECONDS));
+            assertNotNull(migration.getFailure());
+            assertEquals(1, migration.getFailedKeys());
+            assertSame("old shards stay readable", migration, adapter.getMigration());
+            assertTrue(NODES.get(oldPort(failing)).containsKey(failing));
+
+            FAILING_KEYS.clear();
+            assertSame(migration, adapter.reshard(newPool, new ScanOptions()));
+            assertTrue(migration.awaitCompletion(5, TimeUnit.SECONDS));
+            assertNull(adapter.getMigration());
+            assertSame(newPool, adapter.getPool());
+            ShardedJedis jedis = newPool.getResource();
+            try {
+                for (String key : keys) {
+                    assertTrue(key, NODES.get(jedis.getShardInfo(key).getPort()).containsKey(key));
+                }
+            } finally {
+                jedis.close();
+            }
+        } finally {
+            newPool.destroy();
+        }
+    }
+
+    /**
+     * @return 新分片配置下归属发生变化的一个key
+     */
+    private String movedKey(ShardedJedisPool newPool, String[] keys) {
+        ShardedJedis jedis = newPool.getResource();
+        try {
+            for (String key : keys) {
+                if (jedis.getShardInfo(key).getPort() != oldPort(key)) {
+                    return key;
+                }
+            }
+        } finally {
+            jedis.close();
+        }
+        throw new AssertionError("no key moves to the new shard");
+    }
+
+    private int oldPort(String key) {
+        ShardedJedis jedis = pool.getResource();
+        try {
+            return jedis.getShardInfo(key).getPort();
+        } finally {
+            jedis.close();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package atter.jedis.adapter;
+
+import atter.jedis.FakeRedisServer;
+import atter.jedis.breaker.CircuitBreaker;
+import atter.jedis.metrics.CommandMetrics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.JedisPubSub;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Description:  单节点适配器：订阅不占用熔断器的并发许可与统计，库与连接池不一致时的SELECT，Redis以内存桩代替
+ * Copyright:  2018 CSNT. All rights reserved.
+ * Company:CSNT
+ *
+ * @author wangling
+ * @version 1.0
+ */
+public class SingleJedisAdapterTest {
+
+    private FakeRedisServer server;
+
+    private JedisPool pool;
+
+    private SingleJedisAdapter adapter;
+
+    private CommandMetrics metrics;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeRedisServer();
+        pool = new JedisPool(new JedisPoolConfig(), "127.0.0.1", server.getPort());
+        adapter = new SingleJedisAdapter();
+        adapter.setPool(pool);
+        metrics = new CommandMetrics("single-test");
+        adapter.setMetrics(metrics);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pool.destroy();
+        server.close();
+    }
+
+    @Test
+    public void subscriptionDoesNotHoldBulkheadPermit() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker("single-test");
+        breaker.setMaxConcurrent(1);
+        adapter.setCircuitBreaker(breaker);
+        CountDownLatch subscribed = new CountDownLatch(1);
+        JedisPubSub pubSub = new JedisPubSub() {
+            @Override
+            public void onMessage(String channel, String message) {
+            }
+
+            @Override
+            public void onPMessage(String pattern, String channel, String message) {
+            }
+
+            @Override
+            public void onSubscribe(String channel, int subscribedChannels) {
+                subscribed.countDown();
+            }
+
+            @Override
+            public void onUnsubscribe(String channel, int subscribedChannels) {
+            }
+
+            @Override
+            public void onPUnsubscribe(String pattern, int subscribedChannels) {
+            }
+
+            @Override
+            public void onPSubscribe(String pattern, int subscribedChannels) {
+            }
+        };
+        Thread subscriber = new Thread(() -> adapter.subscribe(pubSub, "news"));
+        subscriber.start();
+        assertTrue(subscribed.await(5, TimeUnit.SECONDS));
+
+        assertEquals("OK", adapter.set("a", "1"));
+        assertEquals(0, metrics.getInFlight());
+        assertEquals(0, breaker.getRejected());
+
+        pubSub.unsubscribe();
+        subscriber.join(5000);
+        assertFalse(subscriber.isAlive());
+    }
+
+    @Test
+    public void boundPoolNeedsNoSelect() {
+        DatabaseJedisPool bound = new DatabaseJedisPool(new JedisPoolConfig(), "127.0.0.1", server.getPort(), 2);
+        try {
+            adapter.setPool(bound);
+            assertEquals(2, adapter.getDatabase());
+            adapter.set("a", "1");
+            adapter.set("a", "2");
+            assertEquals(0, adapter.getSelectCount());
+            assertEquals("only when the connection is created", 1, server.count("select"));
+        } finally {
+            bound.destroy();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void boundPoolRejectsOtherDatabase() {
+        DatabaseJedisPool bound = new DatabaseJedisPool(new JedisPoolConfig(), "127.0.0.1", server.getPort(), 2);
+        try {
+            adapter.setPool(bound);
+            adapter.setDatabase(3);
+        } finally {
+            bound.destroy();
+        }
+    }
+
+    @Test
+    public void plainPoolOnOtherDatabaseSelectsOnEveryBorrow() {
+        adapter.setDatabase(1);
+        adapter.set("a", "1");
+        adapter.set("a", "2");
+        assertEquals(2, adapter.getSelectCount());
+        // 第二次借出时连接池先切回0库
+        assertEquals(3, server.count("select"));
+    }
+}
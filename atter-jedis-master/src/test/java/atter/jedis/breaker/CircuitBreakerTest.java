@@ -0,0 +1,155 @@
+package atter.jedis.breaker;
+
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Description:  熔断器状态机：关闭→打开→半开→关闭/打开，半开阶段编号与并发隔离
+ * Copyright:  2018 CSNT. All rights reserved.
+ * Company:CSNT
+ *
+ * @author wangling
+ * @version 1.0
+ */
+public class CircuitBreakerTest {
+
+    private static final long SLOW = TimeUnit.SECONDS.toNanos(1);
+
+    private CircuitBreaker breaker;
+
+    private final List<String> transitions = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        breaker = new CircuitBreaker("test");
+        breaker.setMinimumCalls(4);
+        breaker.setOpenMillis(50);
+        breaker.setHalfOpenProbes(2);
+        breaker.addListener((name, from, to) -> transitions.add(from + "->" + to));
+    }
+
+    private void failCalls(int times) {
+        for (int i = 0; i < times; i++) {
+            breaker.record(breaker.acquire(), 0, new JedisConnectionException("down"));
+        }
+    }
+
+    private void open() throws InterruptedException {
+        failCalls(4);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        Thread.sleep(80);
+    }
+
+    @Test
+    public void opensWhenFailureRateExceeded() {
+        failCalls(3);
+        assertEquals("below minimumCalls", CircuitBreaker.State.CLOSED, breaker.getState());
+        failCalls(1);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        try {
+            breaker.acquire();
+            fail("open breaker must reject");
+        } catch (CircuitBreakerOpenException expected) {
+            assertEquals(1, breaker.getRejected());
+        }
+        assertEquals(1, transitions.size());
+        assertEquals("CLOSED->OPEN", transitions.get(0));
+    }
+
+    @Test
+    public void dataErrorsAreNotFailures() {
+        for (int i = 0; i < 10; i++) {
+            breaker.record(breaker.acquire(), 0, new JedisDataException("WRONGTYPE"));
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void opensWhenSlowRateExceeded() {
+        for (int i = 0; i < 4; i++) {
+            breaker.record(breaker.acquire(), SLOW, null);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void closesAfterProbesSucceed() throws InterruptedException {
+        open();
+        int first = breaker.acquire();
+        int second = breaker.acquire();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(first > 0);
+        assertEquals(first, second);
+        try {
+            breaker.acquire();
+            fail("only halfOpenProbes calls may pass");
+        } catch (CircuitBreakerOpenException expected) {
+        }
+        breaker.record(first, 0, null);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.record(second, 0, null);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.acquire());
+    }
+
+    @Test
+    public void reopensWhenProbeFails() throws InterruptedException {
+        open();
+        int probe = breaker.acquire();
+        breaker.record(probe, 0, new JedisConnectionException("still down"));
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals("HALF_OPEN->OPEN", transitions.get(transitions.size() - 1));
+    }
+
+    @Test
+    public void ignoresProbesFromEarlierHalfOpen() throws InterruptedException {
+        open();
+        int late = breaker.acquire();
+        breaker.record(breaker.acquire(), 0, new JedisConnectionException("still down"));
+        Thread.sleep(80);
+        int current = breaker.acquire();
+        assertTrue(current > late);
+
+        // 上一阶段的探测晚到，既不占用本阶段名额，也不计入成功数
+        breaker.record(late, 0, null);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        int another = breaker.acquire();
+        breaker.record(current, 0, null);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.record(another, 0, null);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void limitsConcurrentCalls() {
+        breaker.setMaxConcurrent(1);
+        int probe = breaker.acquire();
+        try {
+            breaker.acquire();
+            fail("bulkhead is full");
+        } catch (CircuitBreakerOpenException expected) {
+        }
+        breaker.record(probe, 0, null);
+        breaker.record(breaker.acquire(), 0, null);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void copyKeepsSettingsButNotState() {
+        failCalls(4);
+        CircuitBreaker copy = breaker.copy("copy");
+        assertEquals(CircuitBreaker.State.CLOSED, copy.getState());
+        for (int i = 0; i < 4; i++) {
+            copy.record(copy.acquire(), 0, new JedisConnectionException("down"));
+        }
+        assertEquals(CircuitBreaker.State.OPEN, copy.getState());
+    }
+}
@@ -0,0 +1,155 @@
+package atter.jedis.cache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Description:  本地缓存：分段LRU淘汰、存活时间与按key版本拒绝旧值回填
+ * Copyright:  2018 CSNT. All rights reserved.
+ * Company:CSNT
+ *
+ * @author wangling
+ * @version 1.0
+ */
+public class NearCacheTest {
+
+    private static final Object TYPE = String.class;
+
+    private static void put(NearCache cache, String key) {
+        cache.put(key, TYPE, "v-" + key, cache.stamp(key));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        NearCache cache = new NearCache(3, 1);
+        put(cache, "a");
+        put(cache, "b");
+        put(cache, "c");
+        put(cache, "d");
+        assertNull(cache.get("a", TYPE));
+        assertEquals("v-d", cache.get("d", TYPE));
+        assertEquals(1, cache.getEvictions());
+        assertEquals(3, cache.getSize());
+    }
+
+    @Test
+    public void scanDoesNotFlushHotKeys() {
+        NearCache cache = new NearCache(10, 1);
+        for (int i = 0; i < 5; i++) {
+            put(cache, "hot" + i);
+            cache.get("hot" + i, TYPE);
+        }
+        for (int i = 0; i < 100; i++) {
+            put(cache, "scan" + i);
+        }
+        for (int i = 0; i < 5; i++) {
+            assertEquals("v-hot" + i, cache.get("hot" + i, TYPE));
+        }
+        assertEquals(10, cache.getSize());
+    }
+
+    @Test
+    public void typeMismatchIsMiss() {
+        NearCache cache = new NearCache(10, 1);
+        put(cache, "a");
+        assertNull(cache.get("a", Integer.class));
+        assertEquals(1, cache.getMisses());
+        assertEquals("v-a", cache.get("a", TYPE));
+        assertEquals(0.5, cache.getHitRate(), 0.0001);
+    }
+
+    @Test
+    public void expiresAfterTtl() throws InterruptedException {
+        NearCache cache = new NearCache(10, 1);
+        cache.put("a", TYPE, "v", 50, cache.stamp("a"));
+        assertEquals("v", cache.get("a", TYPE));
+        Thread.sleep(80);
+        assertNull(cache.get("a", TYPE));
+        assertEquals(1, cache.getExpirations());
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void ttlIsCappedByMaxStaleness() throws InterruptedException {
+        NearCache cache = new NearCache(10, 1);
+        cache.setMaxStalenessMillis(50);
+        cache.put("a", TYPE, "v", 60000, cache.stamp("a"));
+        Thread.sleep(80);
+        assertNull(cache.get("a", TYPE));
+    }
+
+    @Test
+    public void rejectsFillAfterInvalidateOfSameKey() {
+        NearCache cache = new NearCache(10, 1);
+        long stamp = cache.stamp("a");
+        cache.invalidate("a");
+        cache.put("a", TYPE, "old", stamp);
+        assertNull(cache.get("a", TYPE));
+
+        put(cache, "a");
+        assertEquals("v-a", cache.get("a", TYPE));
+    }
+
+    @Test
+    public void invalidateOfOtherKeyDoesNotRejectFill() {
+        NearCache cache = new NearCache(10, 1);
+        long stamp = cache.stamp("a");
+        cache.invalidate("b");
+        cache.put("a", TYPE, "v", stamp);
+        assertEquals("v", cache.get("a", TYPE));
+    }
+
+    @Test
+    public void tombstoneOverflowRejectsOlderStamps() {
+        NearCache cache = new NearCache(10, 1);
+        long stamp = cache.stamp("a");
+        for (int i = 0; i <= 1024; i++) {
+            cache.invalidate("other" + i);
+        }
+        cache.put("a", TYPE, "old", stamp);
+        assertNull(cache.get("a", TYPE));
+
+        put(cache, "a");
+        assertEquals("v-a", cache.get("a", TYPE));
+    }
+
+    @Test
+    public void invalidateAllRejectsEarlierStamps() {
+        NearCache cache = new NearCache(10, 1);
+        put(cache, "a");
+        long stamp = cache.stamp("b");
+        cache.invalidateAll();
+        assertNull(cache.get("a", TYPE));
+        cache.put("b", TYPE, "old", stamp);
+        assertNull(cache.get("b", TYPE));
+
+        put(cache, "b");
+        assertEquals("v-b", cache.get("b", TYPE));
+    }
+
+    @Test
+    public void disabledCacheNeitherReadsNorWrites() {
+        NearCache cache = new NearCache(10, 1);
+        put(cache, "a");
+        cache.setEnabled(false);
+        assertNull(cache.get("a", TYPE));
+        put(cache, "b");
+        cache.setEnabled(true);
+        assertEquals("v-a", cache.get("a", TYPE));
+        assertNull(cache.get("b", TYPE));
+    }
+
+    @Test
+    public void weigherLimitsTotalWeight() {
+        NearCache cache = new NearCache(10, 1);
+        cache.setWeigher((key, value) -> ((String) value).length());
+        cache.put("big", TYPE, "01234567890", cache.stamp("big"));
+        assertNull("heavier than the whole cache", cache.get("big", TYPE));
+        cache.put("a", TYPE, "0123", cache.stamp("a"));
+        cache.put("b", TYPE, "0123", cache.stamp("b"));
+        cache.put("c", TYPE, "0123", cache.stamp("c"));
+        assertEquals(8, cache.getWeight());
+        assertNull(cache.get("a", TYPE));
+    }
+}
@@ -0,0 +1,135 @@
+package atter.jedis.cache;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Description:  同一key的并发加载合并为一次，加载失败传给等待方，等待超时后自行加载
+ * Copyright:  2018 CSNT. All rights reserved.
+ * Company:CSNT
+ *
+ * @author wangling
+ * @version 1.0
+ */
+public class SingleFlightTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 加载方阻塞到release打开，waiters个调用方在加载期间进入
+     */
+    private List<Future<String>> concurrent(SingleFlight flight, String key, int waiters, AtomicInteger calls,
+                                            CountDownLatch release, RuntimeException failure) throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        List<Future<String>> results = new ArrayList<>();
+        results.add(executor.submit(() -> flight.execute(key, () -> {
+            calls.incrementAndGet();
+            loading.countDown();
+            await(release);
+            if (failure != null) {
+                throw failure;
+            }
+            return "value";
+        })));
+        assertTrue(loading.await(1, TimeUnit.SECONDS));
+        for (int i = 0; i < waiters; i++) {
+            results.add(executor.submit(() -> flight.execute(key, () -> {
+                calls.incrementAndGet();
+                return "own";
+            })));
+        }
+        long deadline = System.currentTimeMillis() + 1000;
+        while (flight.getCoalesced() < waiters && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        return results;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    public void coalescesConcurrentLoads() throws Exception {
+        SingleFlight flight = new SingleFlight();
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        List<Future<String>> results = concurrent(flight, "k", 8, calls, release, null);
+        assertEquals(1, flight.getInFlight());
+        release.countDown();
+        for (Future<String> result : results) {
+            assertEquals("value", result.get(1, TimeUnit.SECONDS));
+        }
+        assertEquals(1, calls.get());
+        assertEquals(1, flight.getLoads());
+        assertEquals(8, flight.getCoalesced());
+        assertEquals(0, flight.getInFlight());
+    }
+
+    @Test
+    public void differentKeysLoadIndependently() {
+        SingleFlight flight = new SingleFlight();
+        // 加载a期间加载b，不同key不互相等待
+        assertEquals("b", flight.execute("a", () -> flight.execute("b", () -> "b")));
+        assertEquals(2, flight.getLoads());
+        assertEquals(0, flight.getCoalesced());
+    }
+
+    @Test
+    public void failureIsSharedWithWaiters() throws Exception {
+        SingleFlight flight = new SingleFlight();
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        IllegalStateException failure = new IllegalStateException("load failed");
+        List<Future<String>> results = concurrent(flight, "k", 3, calls, release, failure);
+        release.countDown();
+        for (Future<String> result : results) {
+            try {
+                result.get(1, TimeUnit.SECONDS);
+                fail("load failure must reach every caller");
+            } catch (ExecutionException e) {
+                assertSame(failure, e.getCause());
+            }
+        }
+        assertEquals(1, calls.get());
+        assertEquals(0, flight.getInFlight());
+
+        assertEquals("again", flight.execute("k", () -> "again"));
+    }
+
+    @Test
+    public void waiterLoadsItselfAfterTimeout() throws Exception {
+        SingleFlight flight = new SingleFlight();
+        flight.setTimeoutMillis(50);
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        List<Future<String>> results = concurrent(flight, "k", 1, calls, release, null);
+        assertEquals("own", results.get(1).get(1, TimeUnit.SECONDS));
+        assertEquals(1, flight.getTimeouts());
+        assertFalse(results.get(0).isDone());
+        release.countDown();
+        assertEquals("value", results.get(0).get(1, TimeUnit.SECONDS));
+        assertEquals(2, calls.get());
+    }
+}
@@ -0,0 +1,92 @@
+package atter.jedis.metrics;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Description:  耗时直方图的计数、均值、最大值与分位数误差
+ * Copyright:  2018 CSNT. All rights reserved.
+ * Company:CSNT
+ *
+ * @author wangling
+ * @version 1.0
+ */
+public class LatencyHistogramTest {
+
+    private static long micros(long micros) {
+        return TimeUnit.MICROSECONDS.toNanos(micros);
+    }
+
+    private static void assertWithinBucket(long exact, long reported) {
+        assertTrue("expected about " + exact + " but was " + reported, reported >= exact && reported <= 2 * exact);
+    }
+
+    @Test
+    public void emptyHistogramReportsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMeanMicros());
+        assertEquals(0, histogram.getMaxMicros());
+        assertEquals(0, histogram.getPercentileMicros(0.99));
+    }
+
+    @Test
+    public void percentilesAreBucketUpperBounds() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(micros(i));
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500, histogram.getMeanMicros());
+        assertEquals(1000, histogram.getMaxMicros());
+        assertWithinBucket(500, histogram.getPercentileMicros(0.5));
+        assertWithinBucket(900, histogram.getPercentileMicros(0.9));
+        assertEquals("capped at the maximum", 1000, histogram.getPercentileMicros(0.99));
+        assertEquals(1000, histogram.getPercentileMicros(1.0));
+    }
+
+    @Test
+    public void subMicrosecondAndHugeValuesAreCounted() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(100);
+        assertEquals(0, histogram.getPercentileMicros(0.5));
+        histogram.record(TimeUnit.DAYS.toNanos(365));
+        assertEquals(2, histogram.getCount());
+        assertEquals(1L << 31, histogram.getPercentileMicros(1.0));
+    }
+
+    @Test
+    public void resetClearsEverything() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(micros(300));
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMaxMicros());
+        assertEquals(0, histogram.getPercentileMicros(0.5));
+    }
+
+    @Test
+    public void concurrentRecordsAreNotLost() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    histogram.record(micros(i % 64));
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(40000, histogram.getCount());
+        assertEquals(63, histogram.getMaxMicros());
+    }
+}
@@ -0,0 +1,95 @@
+package atter.jedis.pubsub;
+
+import atter.jedis.FakeRedisServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * Description:  订阅管理：同一连接上同时订阅频道与模式，断线重连后两者都恢复，Redis以内存桩代替
+ * Copyright:  2018 CSNT. All rights reserved.
+ * Company:CSNT
+ *
+ * @author wangling
+ * @version 1.0
+ */
+public class SubscriptionManagerTest {
+
+    private FakeRedisServer server;
+
+    private SubscriptionManager manager;
+
+    private final BlockingQueue<String> received = new LinkedBlockingQueue<>();
+
+    private final MessageListener listener = new MessageListener() {
+        @Override
+        public void onMessage(String channel, String message) {
+            received.add(channel + "=" + message);
+        }
+
+        @Override
+        public void onPMessage(String pattern, String channel, String message) {
+            received.add(pattern + ":" + channel + "=" + message);
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeRedisServer();
+        manager = new SubscriptionManager("127.0.0.1", server.getPort());
+        manager.setMaxReconnectMillis(100);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        manager.close();
+        server.close();
+    }
+
+    private static void await(String what, BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("timed out waiting for " + what, System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private void assertSubscribed() throws InterruptedException {
+        await("channel", () -> server.getChannels().contains("news"));
+        await("pattern", () -> server.getPatterns().contains("user.*"));
+        try (Jedis publisher = new Jedis("127.0.0.1", server.getPort())) {
+            publisher.publish("news", "a");
+            publisher.publish("user.1", "b");
+        }
+        assertEquals(new HashSet<>(Arrays.asList("news=a", "user.*:user.1=b")),
+                new HashSet<>(Arrays.asList(received.poll(5, TimeUnit.SECONDS), received.poll(5, TimeUnit.SECONDS))));
+    }
+
+    @Test
+    public void channelsAndPatternsAreSubscribedTogether() throws InterruptedException {
+        manager.subscribe("news", listener);
+        manager.psubscribe("user.*", listener);
+        assertSubscribed();
+    }
+
+    @Test
+    public void channelsAndPatternsAreRestoredAfterReconnect() throws InterruptedException {
+        manager.subscribe("news", listener);
+        manager.psubscribe("user.*", listener);
+        assertSubscribed();
+
+        server.disconnectAll();
+        await("disconnect", () -> server.getChannels().isEmpty());
+        assertSubscribed();
+    }
+}